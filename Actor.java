@@ -45,8 +45,11 @@ public class Actor extends Occupant {
      */
     @Override
     public boolean canMove(Direction dir) {
-        Cell next = cell.getCell(dir);
-        return (next != null) && (next.isEmpty() || next.canMove(dir));
+        Board board = cell.getPuzzle().getBoard();
+        int   next  = board.neighbour(cell.getIndex(), dir);
+        if ((next < 0) || board.isWall(next))
+            return false;
+        return !board.hasBox(next) || board.canPush(next, dir);
     }
 
     /**
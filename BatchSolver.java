@@ -0,0 +1,460 @@
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Headless batch solving of whole level directories and collection files.
+ *
+ * Every level is a separate task for a work-stealing pool of a fixed number of
+ * threads, so idle threads take the next level as soon as they finish one and
+ * a slow level holds up only its own thread. Each level gets its own Solver
+ * with a time limit, running its feature search by default or, if asked for,
+ * its push-optimal A* search with an optional fixed-size off-heap node table.
+ * That table budget bounds the search nodes and their open list only: the
+ * heuristic tables and pattern store come on top of it, so it is not a cap on
+ * total memory. Macro pushes are made and one pattern store is shared by every
+ * level unless the batch is told otherwise.
+ * A result line (CSV, or one JSON object per line) is written and flushed as
+ * soon as each level finishes, so results arrive in finishing order.
+ *
+ * Input is a directory, whose files are read in natural name order, or a
+ * single file. Any file may hold several levels in the usual collection
+ * format: a level is a block of lines of screen characters, and other lines
+ * (blank lines, "; title" comments and the like) separate them. A level is
+ * named by its file, then by the comment before it or its number in the file.
+ *
+ * With a PortfolioSolver, each level is raced by several strategies instead of
+ * one Solver, and the strategies' wins over the batch can be saved so the
+ * next batch starts the usual winners first.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class BatchSolver {
+    /** The formats results can be written in */
+    public enum Format { CSV, JSON }
+
+    /**
+     * Constructor
+     *
+     * @param threads the number of levels to solve at once (at least 1)
+     */
+    public BatchSolver(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1");
+        this.threads = threads;
+    }
+
+    /**
+     * Limit the time spent on each level
+     *
+     * @param timeLimit the maximum time in milliseconds (0 for no limit)
+     */
+    public void setTimeLimit(long timeLimit) {
+        if (timeLimit < 0)
+            throw new IllegalArgumentException("timeLimit cannot be negative");
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * Limit the number of nodes expanded for each level
+     *
+     * @param nodeLimit the maximum number of nodes (0 for no limit)
+     */
+    public void setNodeLimit(long nodeLimit) {
+        if (nodeLimit < 0)
+            throw new IllegalArgumentException("nodeLimit cannot be negative");
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Search for push-optimal solutions with A* rather than the feature search (see Solver.setOptimal)
+     *
+     * @param optimal use A*?
+     */
+    public void setOptimal(boolean optimal) {
+        this.optimal = optimal;
+    }
+
+    /**
+     * Limit the off-heap table for each level's A* search nodes (see Solver.setTableBudget).
+     * This is a table budget, not a cap on the level's total memory.
+     *
+     * @param memoryBudget the number of bytes per level (0 to keep nodes on the heap, unbounded)
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget < 0)
+            throw new IllegalArgumentException("memoryBudget cannot be negative");
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Use macro pushes in every search (see Solver.setMacroPushes; on by default)
+     *
+     * @param macroPushes use macro pushes?
+     */
+    public void setMacroPushes(boolean macroPushes) {
+        this.macroPushes = macroPushes;
+    }
+
+    /**
+     * Share a deadlock pattern store between all the searches (by default the batch
+     * has a store of its own)
+     *
+     * @param patterns the pattern store (null for none)
+     */
+    public void setDeadlockPatterns(DeadlockPatterns patterns) {
+        this.patterns = patterns;
+    }
+
+    /**
+     * Race a portfolio of strategies on each level instead of running one Solver.
+     * The batch's limits, memory budget, macro pushes and patterns are passed on
+     * to it when the batch runs.
+     *
+     * @param portfolio the portfolio (null for a single Solver)
+     */
+    public void setPortfolio(PortfolioSolver portfolio) {
+        this.portfolio = portfolio;
+    }
+
+    /**
+     * Set the format of the results
+     *
+     * @param format CSV or JSON (cannot be null)
+     */
+    public void setFormat(Format format) {
+        if (format == null)
+            throw new IllegalArgumentException("format cannot be null");
+        this.format = format;
+    }
+
+    /**
+     * Read the levels of a directory or file
+     *
+     * @param input a directory of level files, or one level or collection file
+     * @return the levels, in order
+     */
+    public static List<Screen> read(File input) {
+        if (input == null)
+            throw new IllegalArgumentException("input cannot be null");
+        ArrayList<Screen> screens = new ArrayList<>();
+        if (input.isDirectory()) {
+            File[] files = input.listFiles();
+            if (files == null)
+                throw new SokobanException("cannot list "+input);
+            Arrays.sort(files, (a, b) -> naturalCompare(a.getName(), b.getName()));
+            for (File f : files)
+                if (f.isFile())
+                    screens.addAll(parse(f.getName(), Sokoban.fileAsString(f)));
+        } else
+            screens.addAll(parse(input.getName(), Sokoban.fileAsString(input)));
+        return screens;
+    }
+
+    /**
+     * Split the text of a level or collection file into levels
+     *
+     * @param name the name of the file
+     * @param text its contents
+     * @return the levels in it
+     */
+    static List<Screen> parse(String name, String text) {
+        ArrayList<Screen> screens = new ArrayList<>();
+        StringBuilder     level   = new StringBuilder();
+        String            title   = null;
+        ArrayList<String> titles  = new ArrayList<>();
+        ArrayList<String> levels  = new ArrayList<>();
+        Scanner scnr = new Scanner(text);
+        while (true) {
+            String  line    = scnr.hasNextLine() ? scnr.nextLine() : null;
+            boolean isLevel = (line != null) && isScreenLine(line);
+            if (isLevel)
+                level.append(line).append('\n');
+            else if (level.length() > 0) {
+                levels.add(level.toString());
+                titles.add(title);
+                level.setLength(0);
+                title = null;
+            }
+            if (line == null)
+                break;
+            if (!isLevel && line.trim().startsWith(";"))
+                title = line.trim().substring(1).trim();
+        }
+        scnr.close();
+        for (int i=0; i<levels.size(); i++) {
+            String id = name;
+            if (titles.get(i) != null && titles.get(i).length() > 0)
+                id += " " + titles.get(i);
+            else if (levels.size() > 1)
+                id += " #" + (i+1);
+            screens.add(new Screen(id, levels.get(i)));
+        }
+        return screens;
+    }
+
+    /**
+     * Solve every level, writing a result line for each as it finishes
+     *
+     * @param screens the levels
+     * @param out where to write the results
+     * @return the number of levels solved
+     */
+    public int run(List<Screen> screens, PrintStream out) throws InterruptedException {
+        if ((screens == null) || (out == null))
+            throw new IllegalArgumentException("screens and out cannot be null");
+        if (portfolio != null) {
+            portfolio.setTimeLimit(timeLimit);
+            portfolio.setNodeLimit(nodeLimit);
+            portfolio.setTableBudget(memoryBudget);
+            portfolio.setMacroPushes(macroPushes);
+            portfolio.setDeadlockPatterns(patterns);
+        }
+        if (format == Format.CSV)
+            out.println("level,status,solved,pushes,moves,nodes,ms,error");
+        out.flush();
+        AtomicInteger solved = new AtomicInteger();
+        ForkJoinPool  pool   = new ForkJoinPool(threads);
+        try {
+            ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (Screen screen : screens)
+                tasks.add(pool.submit(() -> {
+                    Solution solution = null;
+                    String   error    = null;
+                    try {
+                        solution = solve(new Board(screen.text));
+                    }
+                    catch (RuntimeException e) {
+                        error = ""+e;
+                    }
+                    if ((solution != null) && solution.isSolved())
+                        solved.incrementAndGet();
+                    String line = (format == Format.CSV) ? csv(screen.name, solution, error) : json(screen.name, solution, error);
+                    synchronized (out) {
+                        out.println(line);
+                        out.flush();
+                    }
+                }));
+            for (ForkJoinTask<?> task : tasks)
+                task.join();
+        }
+        finally {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        return solved.get();
+    }
+
+    /**
+     * Solve one level with this batch's limits
+     */
+    private Solution solve(Board board) {
+        if (portfolio != null)
+            return portfolio.solve(board);
+        Solver solver = new Solver();
+        solver.setOptimal(optimal);
+        solver.setTimeLimit(timeLimit);
+        solver.setNodeLimit(nodeLimit);
+        solver.setTableBudget(memoryBudget);
+        solver.setMacroPushes(macroPushes);
+        solver.setDeadlockPatterns(patterns);
+        return solver.solve(board);
+    }
+
+    private static String csv(String name, Solution s, String error) {
+        String status = (s != null) ? s.getStatus().toString() : "ERROR";
+        if (s == null)
+            return csvQuote(name)+","+status+",false,,,,,"+csvQuote(error);
+        return csvQuote(name)+","+status+","+s.isSolved()+","+s.getNumPushes()+","+s.getNumMoves()+","+s.getNodes()+","+s.getMillis()+",";
+    }
+
+    private static String csvQuote(String s) {
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String json(String name, Solution s, String error) {
+        StringBuilder sb = new StringBuilder("{\"level\":").append(quote(name));
+        if (s == null)
+            return sb.append(",\"status\":\"ERROR\",\"solved\":false,\"error\":").append(quote(error)).append('}').toString();
+        return sb.append(",\"status\":\"").append(s.getStatus()).append('"')
+                 .append(",\"solved\":").append(s.isSolved())
+                 .append(",\"pushes\":").append(s.getNumPushes())
+                 .append(",\"moves\":").append(s.getNumMoves())
+                 .append(",\"nodes\":").append(s.getNodes())
+                 .append(",\"ms\":").append(s.getMillis())
+                 .append('}').toString();
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if ((c == '"') || (c == '\\'))
+                sb.append('\\').append(c);
+            else if (c < ' ')
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Is a line part of a screen (only screen characters, and at least one wall)?
+     */
+    private static boolean isScreenLine(String line) {
+        if (line.indexOf(Sokoban.WALL) < 0)
+            return false;
+        for (char c : line.toCharArray())
+            if (SCREEN_CHARS.indexOf(c) < 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Compare names with runs of digits taken as numbers, so screen.2 comes before screen.10
+     */
+    static int naturalCompare(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while ((i < a.length()) && (j < b.length())) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(j);
+            if (Character.isDigit(ca) && Character.isDigit(cb)) {
+                int si = i;
+                int sj = j;
+                while ((i < a.length()) && Character.isDigit(a.charAt(i)))
+                    i++;
+                while ((j < b.length()) && Character.isDigit(b.charAt(j)))
+                    j++;
+                int c = new java.math.BigInteger(a.substring(si, i)).compareTo(new java.math.BigInteger(b.substring(sj, j)));
+                if (c != 0)
+                    return c;
+            } else {
+                if (ca != cb)
+                    return Character.compare(ca, cb);
+                i++;
+                j++;
+            }
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    /**
+     * Parse a byte count with an optional k, m or g suffix
+     */
+    private static long bytes(String s) {
+        char last = Character.toLowerCase(s.charAt(s.length()-1));
+        int  shift = (last == 'k') ? 10 : (last == 'm') ? 20 : (last == 'g') ? 30 : 0;
+        return Long.parseLong((shift == 0) ? s : s.substring(0, s.length()-1)) << shift;
+    }
+
+    /**
+     * A level to solve: its name and screen text
+     */
+    public static class Screen {
+        /**
+         * Constructor
+         *
+         * @param name the name to report it by
+         * @param text the screen
+         */
+        public Screen(String name, String text) {
+            this.name = name;
+            this.text = text;
+        }
+
+        final String name;
+        final String text;
+    }
+
+    /**
+     * Solve a directory or collection of levels
+     *
+     * @param args the directory or file, then any of
+     *             -threads n (default: the number of processors), -seconds s (per level, default 60),
+     *             -nodes n, -optimal (A* rather than the feature search),
+     *             -memory bytes (off-heap A* node table per level, with k, m or g; default on the heap),
+     *             -json, -nomacros, -patterns file (loaded if present, saved at the end),
+     *             -portfolio file (race every strategy on each level; wins loaded if present, saved at the end)
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.out.println("usage: java BatchSolver directory-or-file [-threads n] [-seconds s] [-nodes n]"+
+                               " [-optimal] [-memory bytes] [-json] [-nomacros] [-patterns file] [-portfolio file]");
+            return;
+        }
+        int         threads  = Runtime.getRuntime().availableProcessors();
+        long        seconds  = 60;
+        long        nodes    = 0;
+        long        memory   = 0;
+        boolean     json     = false;
+        boolean     optimal  = false;
+        boolean     macros   = true;
+        File        patterns = null;
+        File        wins     = null;
+        for (int i=1; i<args.length; i++) {
+            switch (args[i]) {
+            case "-threads":  threads  = Integer.parseInt(args[++i]); break;
+            case "-seconds":  seconds  = Long.parseLong(args[++i]);   break;
+            case "-nodes":    nodes    = Long.parseLong(args[++i]);   break;
+            case "-optimal":  optimal  = true;                        break;
+            case "-memory":   memory   = bytes(args[++i]);            break;
+            case "-json":     json     = true;                        break;
+            case "-macros":   macros   = true;                        break;   // the default, still accepted
+            case "-nomacros": macros   = false;                       break;
+            case "-patterns": patterns = new File(args[++i]);         break;
+            case "-portfolio": wins    = new File(args[++i]);         break;
+            default:
+                throw new IllegalArgumentException("unknown option "+args[i]);
+            }
+        }
+        BatchSolver batch = new BatchSolver(threads);
+        batch.setTimeLimit(seconds*1000);
+        batch.setNodeLimit(nodes);
+        batch.setOptimal(optimal);
+        batch.setMemoryBudget(memory);
+        batch.setMacroPushes(macros);
+        batch.setFormat(json ? Format.JSON : Format.CSV);
+        DeadlockPatterns store = null;
+        if (patterns != null) {
+            store = new DeadlockPatterns();
+            if (patterns.exists())
+                store.load(patterns);
+            batch.setDeadlockPatterns(store);
+        }
+        PortfolioSolver portfolio = null;
+        if (wins != null) {
+            portfolio = new PortfolioSolver();
+            if (wins.exists())
+                portfolio.load(wins);
+            batch.setPortfolio(portfolio);
+        }
+        List<Screen> screens = read(new File(args[0]));
+        long started = System.currentTimeMillis();
+        int  solved  = batch.run(screens, System.out);
+        System.err.println("solved "+solved+" of "+screens.size()+" levels in "+(System.currentTimeMillis() - started)+
+                           " ms with "+threads+" threads");
+        if (store != null)
+            store.save(patterns);
+        if (portfolio != null) {
+            portfolio.save(wins);
+            System.err.println("portfolio ranking: "+portfolio.getRanking());
+        }
+    }
+
+    private static final String SCREEN_CHARS = "" + Sokoban.WALL + Sokoban.BOX + Sokoban.ACTOR + Sokoban.TARGET +
+                                               Sokoban.EMPTY + Sokoban.TARGET_BOX + Sokoban.TARGET_ACTOR;
+
+    private final int        threads;
+    private long             timeLimit    = 0;
+    private long             nodeLimit    = 0;
+    private long             memoryBudget = 0;
+    private boolean          optimal      = false;
+    private boolean          macroPushes  = true;
+    private DeadlockPatterns patterns     = new DeadlockPatterns();
+    private PortfolioSolver  portfolio    = null;
+    private Format           format       = Format.CSV;
+}
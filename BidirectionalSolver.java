@@ -0,0 +1,255 @@
+
+import java.util.*;
+
+/**
+ * A bidirectional push-level solver: one A* search pushes boxes forwards from
+ * the starting position while another pulls them backwards from the solved
+ * positions, and the solution is found where the two meet.
+ *
+ * The backward search starts from every solved position (all boxes on
+ * targets, with the actor in each region beside a box) and only makes pulls
+ * whose undoing push the game allows (Board.canPullFrom), so every backward
+ * path can be replayed as forward pushes. Both searches normalise the actor
+ * the same way, so a position reached from either side has the same Zobrist
+ * hash, and each new position is looked up in the other side's table. The side
+ * with the smaller open list is expanded next, so on a long level neither has
+ * to search much more than half the depth.
+ *
+ * The forward side is guided by a MatchingHeuristic to the targets and the
+ * backward side by one back to the starting box squares. The first meeting is
+ * returned, so the solutions are not guaranteed to be push-optimal.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class BidirectionalSolver {
+    /**
+     * Limit the number of nodes expanded by each search (both sides together)
+     *
+     * @param nodeLimit the maximum number of nodes (0 for no limit)
+     */
+    public void setNodeLimit(long nodeLimit) {
+        if (nodeLimit < 0)
+            throw new IllegalArgumentException("nodeLimit cannot be negative");
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Limit the time taken by each search
+     *
+     * @param timeLimit the maximum time in milliseconds (0 for no limit)
+     */
+    public void setTimeLimit(long timeLimit) {
+        if (timeLimit < 0)
+            throw new IllegalArgumentException("timeLimit cannot be negative");
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * Ask a running search (on any thread) to stop as soon as possible (a search
+     * that has not started yet stops as soon as it starts)
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Solve a Sokoban puzzle from its current position (the puzzle is not changed)
+     *
+     * @param puzzle the puzzle (cannot be null)
+     * @return the solution
+     */
+    public Solution solve(Sokoban puzzle) {
+        if (puzzle == null)
+            throw new IllegalArgumentException("puzzle cannot be null");
+        return solve(puzzle.fork());
+    }
+
+    /**
+     * Solve a board from its current position (the board is not changed)
+     *
+     * @param start the board (cannot be null)
+     * @return the solution
+     */
+    public Solution solve(Board start) {
+        if (start == null)
+            throw new IllegalArgumentException("start cannot be null");
+        try {
+            return search(start);
+        } finally {
+            cancelled = false;
+        }
+    }
+
+    /**
+     * The two searches of solve()
+     *
+     * @param start the board (not changed)
+     * @return the solution
+     */
+    private Solution search(Board start) {
+        long started  = System.currentTimeMillis();
+        long deadline = (timeLimit > 0) ? started + timeLimit : Long.MAX_VALUE;
+        if (start.onTarget())
+            return new Solution(Solution.Status.SOLVED, null, 0, 0, 0);
+
+        Side forward  = new Side(start, false);
+        Side backward = new Side(start, true);
+        Board root = start.fork();
+        root.normalize();
+        forward.add(root, null, -1, 0);
+        for (Board goal : start.goalPositions())
+            backward.add(goal, null, -1, 0);
+        meeting = null;
+        if (backward.table.get(root.exactHash()) >= 0)
+            meeting = new Node[] { forward.nodes.get(0), backward.nodes.get(backward.table.get(root.exactHash())) };
+
+        long expanded = 0;
+        Solution.Status status = Solution.Status.UNSOLVABLE;
+        while ((meeting == null) && !forward.open.isEmpty()) {
+            if ((expanded & 1023) == 0) {
+                if (cancelled) {
+                    status = Solution.Status.CANCELLED;
+                    break;
+                }
+                if (((nodeLimit > 0) && (expanded >= nodeLimit)) || (System.currentTimeMillis() > deadline)) {
+                    status = Solution.Status.LIMIT;
+                    break;
+                }
+            }
+            // the forward side alone decides solvability, so it carries on if the backward side runs dry
+            boolean back = !backward.open.isEmpty() && (backward.open.size() < forward.open.size());
+            if (back)
+                backward.expand(forward);
+            else
+                forward.expand(backward);
+            expanded++;
+        }
+        long millis = System.currentTimeMillis() - started;
+        if (meeting == null)
+            return new Solution(status, null, 0, expanded, millis);
+
+        // the forward path to the meeting point, then the backward path from it (already in push order)
+        ArrayList<Integer> pushes = new ArrayList<>();
+        for (Node n = meeting[0]; n.parent != null; n = n.parent)
+            pushes.add(0, n.push);
+        for (Node n = meeting[1]; n.parent != null; n = n.parent)
+            pushes.add(n.push);
+        int[]       boxes = new int[pushes.size()];
+        Direction[] dirs  = new Direction[pushes.size()];
+        for (int i=0; i<boxes.length; i++) {
+            boxes[i] = pushes.get(i) >> 2;
+            dirs[i]  = DIRECTIONS[pushes.get(i) & 3];
+        }
+        Sokoban.trace("bidirectional: forward "+forward.nodes.size()+" nodes, backward "+backward.nodes.size()+
+                      " nodes, met at "+meeting[0].g+" + "+meeting[1].g+" pushes");
+        return new Solution(Solution.Status.SOLVED, Solver.steps(start, boxes, dirs), boxes.length, expanded, millis);
+    }
+
+    /**
+     * One direction of the search, with its own table, open list and heuristic
+     */
+    private class Side {
+        Side(Board start, boolean reverse) {
+            this.reverse    = reverse;
+            this.heuristic  = new MatchingHeuristic(start, reverse);
+            this.board      = start.fork();
+            this.candidates = new int[start.numBoxes()*4];
+        }
+
+        /**
+         * Store the board's position as a node if it is new or reached in fewer pushes
+         *
+         * @return the node (or null if it was not stored)
+         */
+        Node add(Board position, Node parent, int push, int g) {
+            long key   = position.exactHash();
+            int  other = table.get(key);
+            if ((other >= 0) && (nodes.get(other).g <= g))
+                return null;
+            int h = heuristic.estimate(position);
+            if (h == Heuristic.DEADLOCK)
+                return null;
+            Node node = new Node(position.snapshot(), parent, push, g, h);
+            table.put(key, nodes.size());
+            nodes.add(node);
+            open.add(node);
+            return node;
+        }
+
+        /**
+         * Expand the best open node, recording a meeting with the other side if there is one
+         */
+        void expand(Side other) {
+            Node node = open.poll();
+            board.restore(node.state);
+            if (nodes.get(table.get(board.exactHash())) != node)
+                return; // superseded by a cheaper path to the same position
+            int numMoves = 0;
+            for (int b = board.nextBox(0); b >= 0; b = board.nextBox(b+1))
+                for (Direction dir : DIRECTIONS)
+                    if (reverse ? board.canPullFrom(b, dir) : board.canPushFrom(b, dir))
+                        candidates[numMoves++] = b*4 + dir.ordinal();
+            for (int i=0; i<numMoves; i++) {
+                int       b    = candidates[i] >> 2;
+                Direction dir  = DIRECTIONS[candidates[i] & 3];
+                int       push = candidates[i];
+                if (reverse) {
+                    // a pull, recorded as the push that undoes it
+                    int to = board.neighbour(b, dir);
+                    board.relocate(board.getActor(), board.neighbour(to, dir));
+                    board.relocate(b, to);
+                    board.normalize();
+                    push = to*4 + dir.reverse().ordinal();
+                } else
+                    Solver.makePush(board, push);
+                Node child = add(board, node, push, node.g+1);
+                if (child != null) {
+                    int met = other.table.get(board.exactHash());
+                    if (met >= 0) {
+                        Node there = other.nodes.get(met);
+                        meeting = reverse ? new Node[] { there, child } : new Node[] { child, there };
+                        return;
+                    }
+                }
+                board.restore(node.state);
+            }
+        }
+
+        final boolean            reverse;
+        final Heuristic          heuristic;
+        final Board              board;
+        final int[]              candidates;
+        final TranspositionTable table = new TranspositionTable();
+        final ArrayList<Node>    nodes = new ArrayList<>();
+        final PriorityQueue<Node> open = new PriorityQueue<>(
+            (a, b) -> (a.g + a.h != b.g + b.h) ? Integer.compare(a.g + a.h, b.g + b.h) : Integer.compare(b.g, a.g));
+    }
+
+    /**
+     * A search node on either side: the position, and the push linking it to its parent
+     * (for the backward side, the push from this position that leads to the parent)
+     */
+    private static class Node {
+        Node(long[] state, Node parent, int push, int g, int h) {
+            this.state  = state;
+            this.parent = parent;
+            this.push   = push;
+            this.g      = g;
+            this.h      = h;
+        }
+
+        final long[] state;
+        final Node   parent;
+        final int    push;    // box square * 4 + direction ordinal
+        final int    g;
+        final int    h;
+    }
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private long             nodeLimit = 0;
+    private long             timeLimit = 0;
+    private volatile boolean cancelled = false;
+    private Node[]           meeting   = null;   // the forward and backward nodes of the same position
+}
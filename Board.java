@@ -0,0 +1,1080 @@
+
+import java.util.*;
+
+/**
+ * The game state of a Sokoban puzzle held as packed bitsets.
+ *
+ * Squares are numbered row by row (row*numCols + col). Walls, targets and boxes
+ * are each a long[] with one bit per square, and the actor is a single square
+ * index. All the move rules are answered from these arrays without allocating,
+ * so a Board can be used directly for headless play and search, while Sokoban
+ * keeps its Cell grid in step for display.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class Board {
+    /**
+     * Construct a board from a standard Sokoban screen file passed as a String
+     *
+     * @param screen the screen file as a String
+     */
+    public Board(String screen) {
+        if (screen == null)
+            throw new IllegalArgumentException("screen cannot be null");
+        ArrayList<String> lines = new ArrayList<>();
+        Scanner scnr = new Scanner(screen);
+        int rows = 0;
+        int cols = 0;
+        while (scnr.hasNextLine()) {
+            String line = scnr.nextLine();
+            if (line.length() > 0) {
+                lines.add(line);
+                rows++;
+                if (line.length() > cols)
+                    cols = line.length();
+            }
+        }
+        scnr.close();
+        numRows    = rows;
+        numCols    = cols;
+        numSquares = rows*cols;
+        int words  = (numSquares + 63) >>> 6;
+        walls      = new long[words];
+        targets    = new long[words];
+        boxes      = new long[words];
+        startBoxes = new long[words];
+        for (int row=0; row<numRows; row++) {
+            String line = lines.get(row);
+            for (int col=0; col<numCols; col++) {
+                char display = (col < line.length()) ? line.charAt(col) : Sokoban.EMPTY;
+                int  sq      = row*numCols + col;
+                switch (display) {
+                case Sokoban.WALL:
+                    set(walls, sq);
+                    break;
+                case Sokoban.BOX:
+                    set(boxes, sq);
+                    break;
+                case Sokoban.TARGET_BOX:
+                    set(targets, sq);
+                    set(boxes, sq);
+                    break;
+                case Sokoban.TARGET:
+                    set(targets, sq);
+                    break;
+                case Sokoban.TARGET_ACTOR:
+                    set(targets, sq);
+                    actor = sq;
+                    numActors++;
+                    break;
+                case Sokoban.ACTOR:
+                    actor = sq;
+                    numActors++;
+                    break;
+                case Sokoban.EMPTY:
+                    break;
+                default:
+                    throw new IllegalArgumentException("invalid display character '"+display+"'");
+                }
+            }
+        }
+        if (actor < 0)
+            throw new SokobanException("screen has no actor");
+        neighbours = new int[numSquares*DIRECTIONS.length];
+        for (int sq=0; sq<numSquares; sq++) {
+            int row = sq / numCols;
+            int col = sq % numCols;
+            neighbours[sq*4 + Direction.NORTH.ordinal()] = (row > 0)         ? sq - numCols : -1;
+            neighbours[sq*4 + Direction.SOUTH.ordinal()] = (row < numRows-1) ? sq + numCols : -1;
+            neighbours[sq*4 + Direction.EAST.ordinal()]  = (col < numCols-1) ? sq + 1       : -1;
+            neighbours[sq*4 + Direction.WEST.ordinal()]  = (col > 0)         ? sq - 1       : -1;
+        }
+        System.arraycopy(boxes, 0, startBoxes, 0, words);
+        startActor = actor;
+        int boxCount    = 0;
+        int targetCount = 0;
+        int onCount     = 0;
+        for (int i=0; i<words; i++) {
+            boxCount    += Long.bitCount(boxes[i]);
+            targetCount += Long.bitCount(targets[i]);
+            onCount     += Long.bitCount(boxes[i] & targets[i]);
+        }
+        numBoxes      = boxCount;
+        numTargets    = targetCount;
+        startOnTarget = onCount;
+        numOnTarget   = onCount;
+        boxKeys       = Zobrist.table(numSquares, true);
+        actorKeys     = Zobrist.table(numSquares, false);
+        long h = 0L;
+        for (int sq=0; sq<numSquares; sq++)
+            if (get(boxes, sq))
+                h ^= boxKeys[sq];
+        startBoxHash  = h;
+        boxHash       = h;
+        dead          = findDeadSquares();
+    }
+
+    /**
+     * Copy constructor for fork(): shares the immutable layout (walls, targets,
+     * neighbours, dead squares and keys) and copies only the boxes and actor
+     *
+     * @param other the board to copy
+     */
+    private Board(Board other) {
+        numRows       = other.numRows;
+        numCols       = other.numCols;
+        numSquares    = other.numSquares;
+        walls         = other.walls;
+        targets       = other.targets;
+        neighbours    = other.neighbours;
+        dead          = other.dead;
+        startBoxes    = other.startBoxes;
+        startActor    = other.startActor;
+        startOnTarget = other.startOnTarget;
+        numBoxes      = other.numBoxes;
+        numTargets    = other.numTargets;
+        numActors     = other.numActors;
+        boxKeys       = other.boxKeys;
+        actorKeys     = other.actorKeys;
+        startBoxHash  = other.startBoxHash;
+        boxes         = other.boxes.clone();
+        actor         = other.actor;
+        numOnTarget   = other.numOnTarget;
+        boxHash       = other.boxHash;
+    }
+
+    /**
+     * Static analysis of the wall layout: which squares can a box never be pushed
+     * from onto a target, whatever the other boxes do? Works backwards from every
+     * target, pulling a box one square at a time (the square it moves into and the
+     * square the actor steps back into must both be free of walls). Squares never
+     * reached are dead: corners, dead-end corridors and the squares along a wall
+     * with no target and no way off it.
+     *
+     * @return the dead squares (walls included) as a bitset
+     */
+    private long[] findDeadSquares() {
+        long[] live  = new long[walls.length];
+        int[]  queue = new int[numSquares];
+        int    head  = 0;
+        int    tail  = 0;
+        for (int sq=0; sq<numSquares; sq++) {
+            if (get(targets, sq) && !get(walls, sq)) {
+                set(live, sq);
+                queue[tail++] = sq;
+            }
+        }
+        while (head < tail) {
+            int box = queue[head++];
+            for (int i=0; i<4; i++) {
+                int to = neighbours[box*4 + i];
+                if ((to < 0) || get(walls, to) || get(live, to))
+                    continue;
+                int actorTo = neighbours[to*4 + i];
+                if ((actorTo < 0) || get(walls, actorTo))
+                    continue;
+                set(live, to);
+                queue[tail++] = to;
+            }
+        }
+        long[] deadSquares = new long[walls.length];
+        for (int i=0; i<walls.length; i++)
+            deadSquares[i] = ~live[i];
+        return deadSquares;
+    }
+
+    /**
+     * Gets the number of rows
+     *
+     * @return the number of rows
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Gets the number of columns
+     *
+     * @return the number of columns
+     */
+    public int getNumCols() {
+        return numCols;
+    }
+
+    /**
+     * Gets the number of squares (rows*columns)
+     *
+     * @return the number of squares
+     */
+    public int getNumSquares() {
+        return numSquares;
+    }
+
+    /**
+     * Gets the square index for a row and column
+     *
+     * @param row row number (starts from 0)
+     * @param col column number (starts from 0)
+     * @return the square index (or -1 if off the grid)
+     */
+    public int index(int row, int col) {
+        if ((row < 0) || (row >= numRows) || (col < 0) || (col >= numCols))
+            return -1;
+        return row*numCols + col;
+    }
+
+    /**
+     * Gets the row of a square
+     *
+     * @param sq the square index
+     * @return the row
+     */
+    public int getRow(int sq) {
+        return sq / numCols;
+    }
+
+    /**
+     * Gets the column of a square
+     *
+     * @param sq the square index
+     * @return the column
+     */
+    public int getCol(int sq) {
+        return sq % numCols;
+    }
+
+    /**
+     * Get the next square in a given direction
+     *
+     * @param sq the square index
+     * @param dir the direction
+     * @return the next square in the given direction (or -1 if off the grid)
+     */
+    public int neighbour(int sq, Direction dir) {
+        return neighbours[sq*4 + dir.ordinal()];
+    }
+
+    /**
+     * Gets the direction from a square to an adjacent square
+     *
+     * @param from the first square
+     * @param to the adjacent square
+     * @return the direction from the first square to the second (or null if they are not adjacent)
+     */
+    public Direction direction(int from, int to) {
+        for (Direction dir : DIRECTIONS)
+            if (neighbours[from*4 + dir.ordinal()] == to)
+                return dir;
+        return null;
+    }
+
+    /**
+     * Checks if a square is a wall
+     *
+     * @param sq the square index
+     * @return is the square a wall?
+     */
+    public boolean isWall(int sq) {
+        return get(walls, sq);
+    }
+
+    /**
+     * Checks if a square is a target
+     *
+     * @param sq the square index
+     * @return is the square a target?
+     */
+    public boolean isTarget(int sq) {
+        return get(targets, sq);
+    }
+
+    /**
+     * Checks if a square holds a box
+     *
+     * @param sq the square index
+     * @return does the square hold a box?
+     */
+    public boolean hasBox(int sq) {
+        return get(boxes, sq);
+    }
+
+    /**
+     * Copy the box bitset into an array of the same length
+     *
+     * @param dst the array to copy the box bits into
+     */
+    public void copyBoxes(long[] dst) {
+        System.arraycopy(boxes, 0, dst, 0, boxes.length);
+    }
+
+    /**
+     * Gets the boxes on a run of consecutive squares as bits, the first square in bit 0
+     *
+     * @param sq the first square of the run
+     * @param count the number of squares (at most 32, all on the grid)
+     * @return the box bits of the run
+     */
+    public int boxBits(int sq, int count) {
+        if ((count < 0) || (count > 32) || (sq < 0) || (sq + count > numSquares))
+            throw new IllegalArgumentException("run must be on the grid and at most 32 squares");
+        int  w    = sq >>> 6;
+        int  off  = sq & 63;
+        long bits = boxes[w] >>> off;
+        if ((off + count > 64) && (w+1 < boxes.length))
+            bits |= boxes[w+1] << (64 - off);
+        return (int) (bits & ((1L << count) - 1));
+    }
+
+    /**
+     * Find the next square holding a box, for iterating over the boxes:
+     * for (int b = board.nextBox(0); b >= 0; b = board.nextBox(b+1)) ...
+     *
+     * @param sq the square to start looking from
+     * @return the first box square at or after sq (or -1 if there are no more)
+     */
+    public int nextBox(int sq) {
+        if (sq >= numSquares)
+            return -1;
+        int  w    = sq >>> 6;
+        long bits = boxes[w] & (-1L << sq);
+        while (bits == 0L) {
+            if (++w == boxes.length)
+                return -1;
+            bits = boxes[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Gets the number of words in each bitset
+     *
+     * @return the number of longs used for one bit per square
+     */
+    public int getNumWords() {
+        return boxes.length;
+    }
+
+    /**
+     * Gets the actor square
+     *
+     * @return the actor square
+     */
+    public int getActor() {
+        return actor;
+    }
+
+    /**
+     * Gets the number of boxes
+     *
+     * @return the number of boxes
+     */
+    public int numBoxes() {
+        return numBoxes;
+    }
+
+    /**
+     * Gets the number of targets
+     *
+     * @return the number of targets
+     */
+    public int numTargets() {
+        return numTargets;
+    }
+
+    /**
+     * Gets the number of actors found in the screen (should be one)
+     *
+     * @return the number of actors
+     */
+    public int numActors() {
+        return numActors;
+    }
+
+    /**
+     * Gets the number of boxes on targets
+     *
+     * @return the number of boxes on targets
+     */
+    public int numOnTarget() {
+        return numOnTarget;
+    }
+
+    /**
+     * Checks if a square is empty (no wall, box or actor)
+     *
+     * @param sq the square index
+     * @return is the square empty?
+     */
+    public boolean isEmpty(int sq) {
+        return !get(walls, sq) && !get(boxes, sq) && (sq != actor);
+    }
+
+    /**
+     * Gets the display character for a square
+     *
+     * @param sq the square index
+     * @return the character to use for display purposes for the square
+     */
+    public char getDisplay(int sq) {
+        if (get(walls, sq))
+            return Sokoban.WALL;
+        boolean target = get(targets, sq);
+        if (get(boxes, sq))
+            return target ? Sokoban.TARGET_BOX : Sokoban.BOX;
+        if (sq == actor)
+            return target ? Sokoban.TARGET_ACTOR : Sokoban.ACTOR;
+        return target ? Sokoban.TARGET : Sokoban.EMPTY;
+    }
+
+    /**
+     * Count the number of adjacent squares that are walls
+     *
+     * @param sq the square index
+     * @return the number of adjacent walls
+     */
+    public int numAdjacentWalls(int sq) {
+        int num = 0;
+        for (int i=sq*4; i<sq*4+4; i++)
+            if (wallAt(neighbours[i]))
+                num++;
+        return num;
+    }
+
+    /**
+     * If this square was empty, would it be safe to push a box into it?
+     * (Could a box on it still be pushed to a target, going by the walls alone?)
+     *
+     * @param sq the square index
+     * @return if this square was empty, would it be safe to push a box into it?
+     */
+    public boolean isWallSafe(int sq) {
+        return !get(dead, sq);
+    }
+
+    /**
+     * Is it safe (from getting stuck to another box) to move the box on a square in the given direction?
+     *
+     * @param box the square holding the box
+     * @param dir the direction to check
+     * @return is it safe (from getting stuck to another box) to move the box in the given direction?
+     */
+    public boolean isStuckSafe(int box, Direction dir) {
+        int next = neighbour(box, dir);
+        if (next < 0)
+            throw new SokobanException("next cannot be off the grid");
+        if (!isEmpty(next))
+            throw new SokobanException("next must be empty");
+        if (!isWallSafe(next))
+            throw new SokobanException("next must be wall safe");
+        if (get(targets, next)) // okay to get stuck on a target
+            return true;
+        int nextAhead = neighbour(next, dir);
+        int nextLeft  = neighbour(next, dir.left());
+        int nextRight = neighbour(next, dir.right());
+        // might get stuck if we move next to a box
+        boolean stuckSafe = !(boxAt(nextAhead) || boxAt(nextLeft) || boxAt(nextRight));
+        // ... but not if the box ahead can be moved, or we still can
+        if (boxAt(nextAhead) && (isMoveableBoxLocation(next, box, dir) || isMoveableBoxLocation(nextAhead, box, next, dir)))
+            stuckSafe = true;
+        // ... but not if the box on the left can be moved, or we still can
+        if (boxAt(nextLeft) && (isMoveableBoxLocation(next, box, dir.left()) || isMoveableBoxLocation(nextLeft, box, next, dir.left())))
+            stuckSafe = true;
+        // ... but not if the box on the right can be moved, or we still can
+        if (boxAt(nextRight) && (isMoveableBoxLocation(next, box, dir.right()) || isMoveableBoxLocation(nextRight, box, next, dir.right())))
+            stuckSafe = true;
+        return stuckSafe;
+    }
+
+    /**
+     * Could a box at this location move perpendicular to the indicated direction?
+     * (see Cell.isMoveableBoxLocation)
+     *
+     * @param loc the square to check
+     * @param origin where the original box will move from (treated as empty)
+     * @param dir the direction to check
+     * @return if a box at this location could move perpendicular to the indicated direction?
+     */
+    public boolean isMoveableBoxLocation(int loc, int origin, Direction dir) {
+        return freezeDetector().isMoveableBoxLocation(loc, origin, -1, dir);
+    }
+
+    /**
+     * Could a box at this location move perpendicular to the indicated direction,
+     * assuming the taboo square has already been visited?
+     * (see Cell.isMoveableBoxLocation)
+     *
+     * @param loc the square to check
+     * @param origin where the original box will move from (treated as empty)
+     * @param taboo a square that is already assumed to have been visited
+     * @param dir the direction to check
+     * @return if a box at this location could move perpendicular to the indicated direction?
+     */
+    public boolean isMoveableBoxLocation(int loc, int origin, int taboo, Direction dir) {
+        if (taboo == loc)
+            throw new IllegalArgumentException("taboo cannot be this square");
+        return freezeDetector().isMoveableBoxLocation(loc, origin, taboo, dir);
+    }
+
+    /**
+     * Checks if the box on a square can be pushed to the next square in a given direction
+     *
+     * @param box the square holding the box
+     * @param dir the direction to check
+     * @return can the box be pushed to the next square in the given direction?
+     */
+    public boolean canPush(int box, Direction dir) {
+        int next = neighbour(box, dir);
+        return (next >= 0) && isEmpty(next) && isWallSafe(next) && isStuckSafe(box, dir);
+    }
+
+    /**
+     * Checks if the actor can move to the next square in a given direction
+     *
+     * @param dir the direction to check
+     * @return can the actor move to the next square in a given direction?
+     */
+    public boolean canMove(Direction dir) {
+        int next = neighbour(actor, dir);
+        if ((next < 0) || get(walls, next))
+            return false;
+        return !get(boxes, next) || canPush(next, dir);
+    }
+
+    /**
+     * In which directions can the actor move?
+     *
+     * @return a mask of the directions, bit d set for the Direction with ordinal d
+     */
+    public int getMoves() {
+        int mask = 0;
+        for (int d=0; d<4; d++)
+            if (canMove(DIRECTIONS[d]))
+                mask |= 1 << d;
+        return mask;
+    }
+
+    /**
+     * If it is safe, move the actor to the next square in a given direction
+     *
+     * @param dir the direction to move
+     * @return was a box pushed?
+     */
+    public boolean move(Direction dir) {
+        if (!canMove(dir))
+            throw new IllegalArgumentException("cannot move "+dir);
+        int next = neighbour(actor, dir);
+        boolean pushed = get(boxes, next);
+        if (pushed)
+            moveBox(next, neighbour(next, dir));
+        actor = next;
+        return pushed;
+    }
+
+    /**
+     * Checks if the actor can walk round to a box and push it in a given direction
+     *
+     * @param box the square holding the box
+     * @param dir the direction to push
+     * @return can the box be pushed from where the actor can reach?
+     */
+    public boolean canPushFrom(int box, Direction dir) {
+        int behind = neighbour(box, dir.reverse());
+        if ((behind < 0) || !get(boxes, box) || !isReachable(behind))
+            return false;
+        // judge the push with the actor behind the box, where it will be, not where it stands now
+        // (moving it inside its own region leaves the region as it is)
+        int at = actor;
+        actor = behind;
+        boolean ok = canPush(box, dir);
+        actor = at;
+        return ok;
+    }
+
+    /**
+     * If it is safe, walk the actor round to a box and push it in a given direction.
+     * The actor ends up where the box was.
+     *
+     * @param box the square holding the box
+     * @param dir the direction to push
+     */
+    public void push(int box, Direction dir) {
+        if (!canPushFrom(box, dir))
+            throw new IllegalArgumentException("cannot push "+box+" "+dir);
+        moveBox(box, neighbour(box, dir));
+        actor = box;
+    }
+
+    /**
+     * For searching backwards from a solved position: checks if the actor can walk
+     * round to a box and pull it one square in a given direction (stepping back one
+     * square itself), and if the push that undoes the pull would be allowed by the
+     * forward rules, so that a sequence of pulls can always be replayed as pushes
+     *
+     * @param box the square holding the box
+     * @param dir the direction to pull
+     * @return can the box be pulled from where the actor can reach?
+     */
+    public boolean canPullFrom(int box, Direction dir) {
+        int to     = neighbour(box, dir);
+        int beyond = (to < 0) ? -1 : neighbour(to, dir);
+        if ((beyond < 0) || !get(boxes, box) || !isReachable(to) || get(walls, beyond) || get(boxes, beyond))
+            return false;
+        // make the pull in the bitset alone (the actor's region is unaffected once it is undone)
+        int at = actor;
+        clear(boxes, box);
+        set(boxes, to);
+        actor = beyond;
+        boolean ok = isWallSafe(box) && isStuckSafe(to, dir.reverse());
+        clear(boxes, to);
+        set(boxes, box);
+        actor = at;
+        return ok;
+    }
+
+    /**
+     * If it is allowed, walk the actor round to a box and pull it in a given direction.
+     * The actor ends up one square beyond where the box is pulled to.
+     *
+     * @param box the square holding the box
+     * @param dir the direction to pull
+     */
+    public void pull(int box, Direction dir) {
+        if (!canPullFrom(box, dir))
+            throw new IllegalArgumentException("cannot pull "+box+" "+dir);
+        int to = neighbour(box, dir);
+        actor  = neighbour(to, dir);
+        moveBox(box, to);
+    }
+
+    /**
+     * A shortest walk for the actor to a square, without pushing any box
+     *
+     * @param sq the square to walk to
+     * @return the steps to take (or null if the square cannot be reached)
+     */
+    public List<Direction> pathTo(int sq) {
+        if (!isReachable(sq))
+            return null;
+        int[] from  = new int[numSquares];
+        int[] queue = new int[numSquares];
+        Arrays.fill(from, -1);
+        int head = 0;
+        int tail = 0;
+        from[actor]   = actor;
+        queue[tail++] = actor;
+        while ((head < tail) && (from[sq] < 0)) {
+            int at = queue[head++];
+            for (int i=at*4; i<at*4+4; i++) {
+                int next = neighbours[i];
+                if ((next >= 0) && (from[next] < 0) && !get(walls, next) && !get(boxes, next)) {
+                    from[next]    = at;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        LinkedList<Direction> path = new LinkedList<>();
+        for (int at = sq; at != actor; at = from[at])
+            path.addFirst(direction(from[at], at));
+        return path;
+    }
+
+    /**
+     * Move whatever occupies one square (box or actor) to another, without any rule checks.
+     * Used to keep the board in step when occupants are moved through the Cell view.
+     *
+     * @param from the occupied square
+     * @param to the square to move it to
+     */
+    void relocate(int from, int to) {
+        if (get(boxes, from))
+            moveBox(from, to);
+        else if (from == actor) {
+            actor = to;
+            regionDirty = true;
+        }
+    }
+
+    /**
+     * Move a box between squares, keeping the on-target count up to date
+     *
+     * @param from the square holding the box
+     * @param to the square to move it to
+     */
+    private void moveBox(int from, int to) {
+        clear(boxes, from);
+        set(boxes, to);
+        boxHash ^= boxKeys[from] ^ boxKeys[to];
+        regionDirty = true;
+        if (get(targets, from))
+            numOnTarget--;
+        if (get(targets, to))
+            numOnTarget++;
+    }
+
+    /**
+     * Are all the boxes on targets?
+     *
+     * @return are all the boxes on targets?
+     */
+    public boolean onTarget() {
+        return numOnTarget == numTargets;
+    }
+
+    /**
+     * Reset to the starting state
+     */
+    public void reset() {
+        System.arraycopy(startBoxes, 0, boxes, 0, boxes.length);
+        actor       = startActor;
+        numOnTarget = startOnTarget;
+        boxHash     = startBoxHash;
+        regionDirty = true;
+    }
+
+    /**
+     * The Zobrist hash of the box positions only (always up to date)
+     *
+     * @return the box hash
+     */
+    public long boxHash() {
+        return boxHash;
+    }
+
+    /**
+     * The Zobrist hash of the position: the boxes plus the actor normalised to
+     * the top-left square of the region it can reach. Two positions that differ
+     * only in where the actor stands inside the same region hash the same.
+     * The box part is updated on every push; the region is refilled lazily on
+     * the first call after a push, so steps that push nothing cost nothing.
+     *
+     * This is O(1) except on that first call after a push or relocate, which
+     * costs one flood fill of the actor's region: the normalised actor cannot
+     * be kept up to date incrementally, since one push can join or split
+     * regions. Callers that do not need positions to match across actor
+     * squares should use exactHash(), which is always O(1).
+     *
+     * @return the position hash
+     */
+    public long hash() {
+        return boxHash ^ actorKeys[normalizedActor()];
+    }
+
+    /**
+     * The Zobrist hash of the exact position: the boxes plus the actor on its own square.
+     * Unlike hash() this distinguishes every actor square and is always O(1).
+     *
+     * @return the exact position hash
+     */
+    public long exactHash() {
+        return boxHash ^ actorKeys[actor];
+    }
+
+    /**
+     * The top-left (lowest index) square the actor can reach without pushing a box
+     *
+     * @return the normalised actor square
+     */
+    public int normalizedActor() {
+        if (regionDirty)
+            fillRegion();
+        return normalActor;
+    }
+
+    /**
+     * Move the actor to its normalised square, so that positions differing only in
+     * where the actor stands inside the same region become identical (and so do
+     * their snapshots and exact hashes)
+     */
+    public void normalize() {
+        actor = normalizedActor();
+    }
+
+    /**
+     * Can the actor walk to a square without pushing a box?
+     *
+     * @param sq the square index
+     * @return is the square reachable by the actor?
+     */
+    public boolean isReachable(int sq) {
+        if (regionDirty)
+            fillRegion();
+        return reachStamp[sq] == reachGen;
+    }
+
+    /**
+     * Flood fill the actor's region, stamping each reachable square with a fresh generation
+     */
+    private void fillRegion() {
+        if (reachStamp == null) {
+            reachStamp = new int[numSquares];
+            reachStack = new int[numSquares];
+        }
+        if (++reachGen == 0) {
+            Arrays.fill(reachStamp, 0);
+            reachGen = 1;
+        }
+        int top   = 0;
+        int least = actor;
+        reachStamp[actor]   = reachGen;
+        reachStack[top++]   = actor;
+        while (top > 0) {
+            int sq = reachStack[--top];
+            if (sq < least)
+                least = sq;
+            for (int i=sq*4; i<sq*4+4; i++) {
+                int next = neighbours[i];
+                if ((next >= 0) && (reachStamp[next] != reachGen) && !get(walls, next) && !get(boxes, next)) {
+                    reachStamp[next]  = reachGen;
+                    reachStack[top++] = next;
+                }
+            }
+        }
+        normalActor = least;
+        regionDirty = false;
+    }
+
+    /**
+     * A String representation of the board
+     *
+     * @return the String representation
+     */
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder(numSquares + numRows);
+        for (int sq=0; sq<numSquares; sq++) {
+            b.append(getDisplay(sq));
+            if ((sq+1) % numCols == 0)
+                b.append('\n');
+        }
+        return b.toString();
+    }
+
+    /**
+     * A copy of this board sharing the immutable layout. Only the box bitset
+     * and a few ints are copied; scratch space is allocated on first use.
+     *
+     * @return the new board
+     */
+    public Board fork() {
+        return new Board(this);
+    }
+
+    /**
+     * The solved positions of this layout, for searching backwards: every target
+     * holding a box, with the actor (normalised) in each region of the remaining
+     * squares that borders a box, since the last push must leave it beside one.
+     * There are none unless there are as many boxes as targets.
+     *
+     * @return a new board for each solved position
+     */
+    public List<Board> goalPositions() {
+        ArrayList<Board> goals = new ArrayList<>();
+        if (numBoxes != numTargets)
+            return goals;
+        Board solved = fork();
+        long  h      = 0L;
+        for (int sq=0; sq<numSquares; sq++)
+            if (get(targets, sq))
+                h ^= boxKeys[sq];
+        System.arraycopy(targets, 0, solved.boxes, 0, boxes.length);
+        solved.boxHash     = h;
+        solved.numOnTarget = numTargets;
+        long[] seen = new long[boxes.length];
+        for (int sq=0; sq<numSquares; sq++) {
+            if (get(walls, sq) || get(targets, sq) || get(seen, sq))
+                continue;
+            solved.actor       = sq;
+            solved.regionDirty = true;
+            boolean bordersBox = false;
+            for (int r=sq; r<numSquares; r++) {
+                if (solved.isReachable(r)) {
+                    set(seen, r);
+                    for (int i=r*4; i<r*4+4; i++)
+                        if ((neighbours[i] >= 0) && get(targets, neighbours[i]))
+                            bordersBox = true;
+                }
+            }
+            if (bordersBox) {
+                Board goal = solved.fork();
+                goal.normalize();
+                goals.add(goal);
+            }
+        }
+        return goals;
+    }
+
+    /**
+     * Gets the length of a snapshot array
+     *
+     * @return the number of longs in a snapshot
+     */
+    public int getSnapshotLength() {
+        return boxes.length + 2;
+    }
+
+    /**
+     * Take a snapshot of the mutable state (boxes and actor)
+     *
+     * @return the snapshot
+     */
+    public long[] snapshot() {
+        return snapshot(new long[getSnapshotLength()]);
+    }
+
+    /**
+     * Take a snapshot of the mutable state into an existing array
+     *
+     * @param dst an array of getSnapshotLength() longs
+     * @return dst
+     */
+    public long[] snapshot(long[] dst) {
+        if ((dst == null) || (dst.length != getSnapshotLength()))
+            throw new IllegalArgumentException("snapshot must have "+getSnapshotLength()+" longs");
+        snapshot(dst, 0);
+        return dst;
+    }
+
+    /**
+     * Take a snapshot of the mutable state into part of a larger array
+     * (so that many snapshots can share one array)
+     *
+     * @param dst the array
+     * @param offset where the getSnapshotLength() longs of the snapshot start
+     */
+    public void snapshot(long[] dst, int offset) {
+        System.arraycopy(boxes, 0, dst, offset, boxes.length);
+        dst[offset+boxes.length]   = ((long) numOnTarget << 32) | actor;
+        dst[offset+boxes.length+1] = boxHash;
+    }
+
+    /**
+     * Restore the mutable state from a snapshot of this board (or a fork of it)
+     *
+     * @param snapshot the snapshot
+     */
+    public void restore(long[] snapshot) {
+        if ((snapshot == null) || (snapshot.length != getSnapshotLength()))
+            throw new IllegalArgumentException("snapshot must have "+getSnapshotLength()+" longs");
+        restore(snapshot, 0);
+    }
+
+    /**
+     * Restore the mutable state from a snapshot held in part of a larger array
+     *
+     * @param src the array
+     * @param offset where the getSnapshotLength() longs of the snapshot start
+     */
+    public void restore(long[] src, int offset) {
+        System.arraycopy(src, offset, boxes, 0, boxes.length);
+        actor       = (int) src[offset+boxes.length];
+        numOnTarget = (int) (src[offset+boxes.length] >>> 32);
+        boxHash     = src[offset+boxes.length+1];
+        regionDirty = true;
+    }
+
+    /**
+     * Gets the length of a packed position, the most compact form of the mutable
+     * state: the box bitset and the actor square only (the rest can be recomputed)
+     *
+     * @return the number of longs in a packed position
+     */
+    public int getPackedLength() {
+        return boxes.length + 1;
+    }
+
+    /**
+     * Pack the position into part of a larger array. Packed positions of the same
+     * layout compare equal exactly when the positions are equal.
+     *
+     * @param dst the array
+     * @param offset where the getPackedLength() longs start
+     */
+    public void pack(long[] dst, int offset) {
+        System.arraycopy(boxes, 0, dst, offset, boxes.length);
+        dst[offset+boxes.length] = actor;
+    }
+
+    /**
+     * Set the position from a packed position, recomputing the counts and box hash
+     *
+     * @param src the array
+     * @param offset where the getPackedLength() longs start
+     */
+    public void unpack(long[] src, int offset) {
+        System.arraycopy(src, offset, boxes, 0, boxes.length);
+        actor       = (int) src[offset+boxes.length];
+        numOnTarget = 0;
+        boxHash     = 0L;
+        for (int i=0; i<boxes.length; i++) {
+            numOnTarget += Long.bitCount(boxes[i] & targets[i]);
+            for (long bits = boxes[i]; bits != 0L; bits &= bits - 1)
+                boxHash ^= boxKeys[(i << 6) + Long.numberOfTrailingZeros(bits)];
+        }
+        regionDirty = true;
+    }
+
+    /**
+     * Gets the freeze detector, creating it on first use
+     */
+    private FreezeDetector freezeDetector() {
+        if (freeze == null)
+            freeze = new FreezeDetector(this);
+        return freeze;
+    }
+
+    /**
+     * Is a square (which may be off the grid) a wall?
+     */
+    private boolean wallAt(int sq) {
+        return (sq >= 0) && get(walls, sq);
+    }
+
+    /**
+     * Does a square (which may be off the grid) hold a box?
+     */
+    private boolean boxAt(int sq) {
+        return (sq >= 0) && get(boxes, sq);
+    }
+
+    static boolean get(long[] bits, int sq) {
+        return (bits[sq >>> 6] & (1L << sq)) != 0L;
+    }
+
+    static void set(long[] bits, int sq) {
+        bits[sq >>> 6] |= 1L << sq;
+    }
+
+    static void clear(long[] bits, int sq) {
+        bits[sq >>> 6] &= ~(1L << sq);
+    }
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final int    numRows;
+    private final int    numCols;
+    private final int    numSquares;
+    private final long[] walls;
+    private final long[] targets;
+    private final int[]  neighbours;   // four per square, indexed by Direction ordinal (-1 if off the grid)
+    private final long[] dead;         // squares from which no box can reach a target (walls included)
+    private final long[] startBoxes;
+    private final int    startActor;
+    private final int    startOnTarget;
+    private final int    numBoxes;
+    private final int    numTargets;
+    private int          numActors   = 0;   // set once at load
+    private final long[] boxes;
+    private int          actor       = -1;
+    private int          numOnTarget = 0;
+    private FreezeDetector freeze    = null;  // scratch, created on first use
+    private final long[] boxKeys;
+    private final long[] actorKeys;
+    private final long   startBoxHash;
+    private long         boxHash;
+    private int[]        reachStamp  = null;  // reachGen marks the squares in the actor's region
+    private int[]        reachStack  = null;
+    private int          reachGen    = 0;
+    private int          normalActor = -1;
+    private boolean      regionDirty = true;
+}
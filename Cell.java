@@ -28,6 +28,7 @@ public class Cell implements Comparable<Cell> {
         this.puzzle = puzzle;
         this.row    = row;
         this.col    = col;
+        this.index  = row*puzzle.getNumCols() + col;
         this.target = (display == Sokoban.TARGET || display == Sokoban.TARGET_BOX || display == Sokoban.TARGET_ACTOR) ? true : false;
         this.occ    = (display == Sokoban.EMPTY || display == Sokoban.TARGET) ? null : Occupant.getInstance(display, this);
     }
@@ -36,14 +37,14 @@ public class Cell implements Comparable<Cell> {
      * Compares the cell with another only on the basis of rows and columns
      * 
      * @param other the other cell
-     * @return -1 if either this row or column are smaller; 1 if either this row or column are larger; otherwise 0
+     * @return -1 if this cell comes first in row-major order; 1 if it comes later; otherwise 0
      */
     @Override
     public int compareTo(Cell other) {
-        // consider row and col only
-        if ((row < other.row) || (col < other.col))
+        // consider row and col only, row first, so that the order is consistent
+        if ((row < other.row) || ((row == other.row) && (col < other.col)))
             return -1;
-        else if ((row > other.row) || (col > other.col))
+        else if ((row > other.row) || ((row == other.row) && (col > other.col)))
             return 1;
         else
             return 0;
@@ -83,15 +84,23 @@ public class Cell implements Comparable<Cell> {
     public int getCol() {
         return col;
     }
-    
+
     /**
-     * Changes the display for this cell
+     * Gets the square index of this cell in the puzzle's board
      * 
-     * @param display the character to use for display purposes for this cell
+     * @return the square index (row*numCols + col)
      */
-    void setDisplay(char display) {
-        this.target = (display == Sokoban.TARGET || display == Sokoban.TARGET_BOX || display == Sokoban.TARGET_ACTOR) ? true : false;
-        this.occ    = (display == Sokoban.EMPTY || display == Sokoban.TARGET) ? null : Occupant.getInstance(display, this);
+    int getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the parent Sokoban puzzle
+     * 
+     * @return the parent puzzle
+     */
+    Sokoban getPuzzle() {
+        return puzzle;
     }
     
     /**
@@ -115,6 +124,15 @@ public class Cell implements Comparable<Cell> {
             occ.setCell(this);
     }
 
+    /**
+     * Gets the occupant for this cell
+     * 
+     * @return the occupant for this cell (null if empty)
+     */
+    Occupant getOccupant() {
+        return occ;
+    }
+
     /**
      * Checks if this cell is a target
      * 
@@ -183,41 +201,17 @@ public class Cell implements Comparable<Cell> {
      * @return the number of adjacent walls
      */
     public int numAdjacentWalls() {
-        int num = 0;
-        for (Direction dir : Direction.values()) {
-            Cell next = getCell(dir);
-            if ((next != null) && next.hasWall())
-                num++;
-        }
-        return num;
+        return puzzle.getBoard().numAdjacentWalls(index);
     }
 
     /**
      * If this Cell was empty, would it be safe to push a box into it?
-     * (Do the walls make it impossible to push it out of this cell?)
+     * (Could a box on it still be pushed to a target, going by the walls alone?)
      * 
      * @return if this Cell was empty, would it be safe to push a box into it?
      */
     public boolean isWallSafe() {
-        if (hasWall())
-            return false;
-        else if (isTarget())
-            return true;
-        else if (numAdjacentWalls() >= 3)
-            return false;
-        else if (numAdjacentWalls() == 2) {
-            // two parallel Walls
-            Cell north = getCell(Direction.NORTH);
-            Cell south = getCell(Direction.SOUTH);
-            Cell east  = getCell(Direction.EAST);
-            Cell west  = getCell(Direction.WEST);
-            if (((north != null) && north.hasWall() && (south != null) && south.hasWall()) ||
-                    ((east != null) && east.hasWall() && (west != null) && west.hasWall()))
-                return true;
-            else // two Walls at 90 degrees
-                return false;
-        } else  // only one or zero adjacent Walls
-            return true;
+        return puzzle.getBoard().isWallSafe(index);
     }
 
     /**
@@ -243,8 +237,7 @@ public class Cell implements Comparable<Cell> {
     public boolean isMoveableBoxLocation(Cell origin, Direction dir) {
         if (origin == null)
             throw new IllegalArgumentException("origin cannot be null");
-        TreeSet<Cell> visited = new TreeSet<Cell>();
-        return isMoveableBoxLocation(origin, dir, visited);
+        return puzzle.getBoard().isMoveableBoxLocation(index, origin.getIndex(), dir);
     }
 
     /**
@@ -266,51 +259,7 @@ public class Cell implements Comparable<Cell> {
             throw new IllegalArgumentException("taboo cannot be null");
         if (taboo.equals(this))
             throw new IllegalArgumentException("taboo cannot be this cell");
-        TreeSet<Cell> visited = new TreeSet<Cell>();
-        visited.add(taboo);
-        return isMoveableBoxLocation(origin, dir, visited);
-    }
-
-    /**
-     * Could a box at this location move perpendicular to the indicated direction?
-     * The location does not currently have to contain a box (this should be separately tested if required)
-     * Origin is the cell where the original box will move from.
-     * (Even if it currently contains a box, origin is treated as empty)
-     * The recursion has already checked all the cells in visited
-     * 
-     * @param origin where the original box will move from (cannot be null)
-     * @param dir the direction to check
-     * @param the set of cells already visited
-     * @return if a box at this location could move perpendicular to the indicated direction?
-     */
-    private boolean isMoveableBoxLocation(Cell origin, Direction dir, TreeSet<Cell> visited) {
-        if (origin == null)
-            throw new IllegalArgumentException("origin cannot be null");
-        if (visited == null)
-            throw new IllegalArgumentException("visited cannot be null");
-        Cell left  = getCell(dir.left());
-        Cell right = getCell(dir.right());
-
-        //check for loops
-        if (visited.contains(this))
-            return false;
-        visited.add(this);
-        boolean visitedLeft  = visited.contains(left);
-        boolean visitedRight = visited.contains(right);
-
-        // could move left
-        if ((left != null) && (!visitedLeft) && (((left.isEmpty() || left.hasActor() || left.equals(origin)) && left.isWallSafe()) ||
-                (left.hasBox() && left.isMoveableBoxLocation(origin, dir.left(), visited))) &&
-                (right != null) && (!visitedRight) && (right.isEmpty() || right.hasActor() || right.equals(origin) ||
-                        (right.hasBox() && right.isMoveableBoxLocation(origin, dir.right(), visited))))
-            return true;
-        // could move right
-        else if ((right != null) && (!visitedRight) && (((right.isEmpty() || right.hasActor() || right.equals(origin)) && right.isWallSafe()) ||
-                (right.hasBox() && right.isMoveableBoxLocation(origin, dir.right(), visited))) &&
-                (left != null) && (!visitedLeft) && (left.isEmpty() || left.hasActor() || left.equals(origin) || 
-                        (left.hasBox() && left.isMoveableBoxLocation(origin, dir.left(), visited))))
-            return true;
-        return false;
+        return puzzle.getBoard().isMoveableBoxLocation(index, origin.getIndex(), taboo.getIndex(), dir);
     }
 
     /**
@@ -325,10 +274,11 @@ public class Cell implements Comparable<Cell> {
 
     /**
      * If it is safe, move the cell occupant to the next cell in a given direction
+     * (without journalling it or telling listeners: see Occupant.move)
      * 
      * @param dir the direction to move
      */
-    public void move(Direction dir) {
+    void move(Direction dir) {
         if (!canMove(dir))
             throw new IllegalArgumentException("cannot move "+dir);
         occ.move(dir);
@@ -407,6 +357,7 @@ public class Cell implements Comparable<Cell> {
     private Sokoban  puzzle = null;
     private int      row;
     private int      col;
+    private int      index;
     private Occupant occ    = null;
     private boolean  target = false;
 
@@ -0,0 +1,71 @@
+
+import java.util.*;
+
+/**
+ * An immutable set of cells changed by one logical operation on a Sokoban puzzle
+ * (a move, an undo, a reset, a bulk replay, ...).
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class ChangeSet {
+    /**
+     * The kinds of operation that produce a change set
+     */
+    public enum Kind {
+        MOVE, UNDO, REDO, RESET, RESTORE, REPLAY
+    }
+
+    /**
+     * Constructor
+     *
+     * @param kind the operation that made the changes (cannot be null)
+     * @param cells the changed cells, each listed once (copied)
+     */
+    public ChangeSet(Kind kind, Cell[] cells) {
+        if (kind == null)
+            throw new IllegalArgumentException("kind cannot be null");
+        if (cells == null)
+            throw new IllegalArgumentException("cells cannot be null");
+        this.kind  = kind;
+        this.cells = Collections.unmodifiableList(Arrays.asList(cells.clone()));
+    }
+
+    /**
+     * Gets the operation that made the changes
+     *
+     * @return the kind of operation
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Gets the changed cells
+     *
+     * @return an unmodifiable list of the changed cells
+     */
+    public List<Cell> getCells() {
+        return cells;
+    }
+
+    /**
+     * A String representation of the change set (useful for debugging)
+     *
+     * @return the String representation
+     */
+    @Override
+    public String toString() {
+        StringBuffer b = new StringBuffer("ChangeSet(");
+        b.append(kind);
+        for (Cell cell : cells) {
+            b.append(",");
+            b.append(cell.toStringFull());
+        }
+        b.append(")");
+        return b.toString();
+    }
+
+    private final Kind       kind;
+    private final List<Cell> cells;
+}
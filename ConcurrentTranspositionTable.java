@@ -0,0 +1,113 @@
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A transposition table that many search threads can share without locks:
+ * an open-addressing hash map from 64-bit position hashes to the fewest
+ * pushes (g) any thread has found for the position. Slots are claimed with a
+ * compare-and-set on the key and values only ever go down, by compare-and-set.
+ *
+ * The table does not grow; once it is three-quarters full new positions are
+ * refused and isFull() reports it, so the search can stop cleanly.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class ConcurrentTranspositionTable {
+    /**
+     * Constructor
+     *
+     * @param capacity the maximum number of entries
+     */
+    public ConcurrentTranspositionTable(int capacity) {
+        if ((capacity < 1) || (capacity > (1 << 29)))
+            throw new IllegalArgumentException("capacity must be between 1 and 2^29");
+        int slots = Integer.highestOneBit(Math.max(capacity + capacity/3, 16) - 1) << 1;
+        keys    = new AtomicLongArray(slots);
+        values  = new AtomicIntegerArray(slots);
+        maxSize = slots/4*3;
+    }
+
+    /**
+     * Look up a position
+     *
+     * @param key the position hash
+     * @return the fewest pushes stored for the position (or -1 if there are none)
+     */
+    public int get(long key) {
+        key = TranspositionTable.nonZero(key);
+        int mask = keys.length() - 1;
+        for (int i = TranspositionTable.slot(key, mask); ; i = (i + 1) & mask) {
+            long k = keys.get(i);
+            if (k == key)
+                return values.get(i) - 1;  // 0 (-1) while the claiming thread has still to write it
+            if (k == 0L)
+                return -1;
+        }
+    }
+
+    /**
+     * Record that a position can be reached in g pushes, unless it is already known
+     * to be reachable in as few. Exactly one of several threads offering the same
+     * position and g succeeds.
+     *
+     * @param key the position hash
+     * @param g the number of pushes (must not be negative)
+     * @return was the position new or its g lowered? (false also if the table is full)
+     */
+    public boolean improve(long key, int g) {
+        if (g < 0)
+            throw new IllegalArgumentException("g cannot be negative");
+        key = TranspositionTable.nonZero(key);
+        int mask = keys.length() - 1;
+        int i    = TranspositionTable.slot(key, mask);
+        while (true) {
+            long k = keys.get(i);
+            if (k == 0L) {
+                if (size.get() >= maxSize) {
+                    full = true;
+                    return false;
+                }
+                if (!keys.compareAndSet(i, 0L, key))
+                    continue;  // lost the slot: look at what was put there
+                size.incrementAndGet();
+                k = key;
+            }
+            if (k == key) {
+                // values hold g+1, so that 0 means not written yet
+                while (true) {
+                    int old = values.get(i);
+                    if ((old != 0) && (old-1 <= g))
+                        return false;
+                    if (values.compareAndSet(i, old, g+1))
+                        return true;
+                }
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Gets the number of positions stored
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Has a new position been refused for lack of space?
+     *
+     * @return is the table full?
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    private final AtomicLongArray    keys;
+    private final AtomicIntegerArray values;
+    private final int                maxSize;
+    private final AtomicInteger      size = new AtomicInteger();
+    private volatile boolean         full = false;
+}
@@ -0,0 +1,290 @@
+import java.util.*;
+
+/**
+ * Corral pruning and corral deadlock detection for the push searches.
+ *
+ * A corral is an area of floor the actor cannot reach, fenced in by walls and
+ * boxes; the fence is the boxes next to it. A corral still has work to do if a
+ * fence box is off target or a target inside is empty, and then some fence box
+ * must be pushed sooner or later, since nothing else can get into the corral.
+ *
+ * It is a PI-corral when every push of a fence box into the corral can be made
+ * now (P) and no fence box can ever be pushed anywhere else while the fence
+ * stands (I): the square ahead or the square behind is a wall, a fence box or
+ * the corral itself. Then the first fence push of any solution is a push into
+ * the corral that is already possible, and making it first changes none of the
+ * other pushes, which cannot have used the corral or the square the box left.
+ * So only the pushes of the fence need be searched, and the solutions found
+ * are still push-optimal.
+ *
+ * A corral is deadlocked if, with every box but the fence taken away, no
+ * sequence of pushes gets the actor into the corral or every fence box onto a
+ * target. Taking boxes away only makes pushes easier, and any solution of the
+ * real position makes one or the other happen, so this is a proof. The small
+ * search is cut off after MAX_NODES positions (no proof), and its results are
+ * cached by the position searched, which many nodes share.
+ *
+ * A pruner keeps scratch arrays between calls, so each thread needs its own.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class CorralPruner {
+    /**
+     * Constructor
+     *
+     * @param board a board with the layout to be searched (cannot be null)
+     */
+    public CorralPruner(Board board) {
+        if (board == null)
+            throw new IllegalArgumentException("board cannot be null");
+        numSquares = board.getNumSquares();
+        corral     = new int[numSquares];
+        fence      = new int[numSquares];
+        queue      = new int[numSquares];
+        squares    = new int[numSquares];
+        inside     = new boolean[numSquares];
+        relaxed    = board.fork();
+        length     = relaxed.getPackedLength();
+        states     = new long[MAX_NODES*length];
+        seen       = new long[2*MAX_NODES];
+        pushes     = new int[4*board.numBoxes()];
+        // the floor inside the level: squares outside the walls are never corrals
+        int tail = 0;
+        inside[board.getActor()] = true;
+        queue[tail++] = board.getActor();
+        for (int head=0; head<tail; head++)
+            for (Direction dir : DIRECTIONS) {
+                int next = board.neighbour(queue[head], dir);
+                if ((next >= 0) && !inside[next] && !board.isWall(next)) {
+                    inside[next]  = true;
+                    queue[tail++] = next;
+                }
+            }
+    }
+
+    /**
+     * Keep only the pushes of the fence of a PI-corral, if the position has one
+     * (the one with the fewest pushes, if it has several)
+     *
+     * @param board the position, with its actor region filled (as by Solver.listPushes)
+     * @param pushes the legal pushes (box square * 4 + direction ordinal), kept in order at the start
+     * @param numPushes the number of pushes
+     * @return the number of pushes kept (0 if a corral is deadlocked, or a PI-corral has no legal push)
+     */
+    public int prune(Board board, int[] pushes, int numPushes) {
+        if (gen > Integer.MAX_VALUE - numSquares) {
+            Arrays.fill(corral, 0);
+            Arrays.fill(fence, 0);
+            gen = 0;
+        }
+        int first = ++gen;   // corrals of this call are numbered first, first+1, ...
+        int best  = -1;      // a square of the best PI-corral so far
+        int kept  = numPushes;
+        for (int sq=0; sq<numSquares; sq++) {
+            if (!inside[sq] || (corral[sq] >= first) || !board.isEmpty(sq) || board.isReachable(sq))
+                continue;
+            int id   = gen++;
+            int kind = examine(board, sq, id);
+            if ((kind & WORK) == 0)
+                continue;
+            if (isDeadlocked(board, id))
+                return 0;
+            if ((kind & PI) != 0) {
+                int count = 0;
+                for (int i=0; i<numPushes; i++)
+                    if (fence[pushes[i] >> 2] == id)
+                        count++;
+                if ((best < 0) || (count < kept)) {
+                    best = sq;
+                    kept = count;
+                }
+            }
+        }
+        if (best < 0)
+            return numPushes;
+        // a box can fence more than one corral, so mark the best one's fence again
+        int id = gen++;
+        examine(board, best, id);
+        int n = 0;
+        for (int i=0; i<numPushes; i++)
+            if (fence[pushes[i] >> 2] == id)
+                pushes[n++] = pushes[i];
+        return n;
+    }
+
+    /**
+     * Gets the number of corral deadlocks found (including those found again in the cache)
+     *
+     * @return the number of deadlocks
+     */
+    public long getDeadlocks() {
+        return deadlocks;
+    }
+
+    /**
+     * Mark a corral and its fence with an id, leaving its squares in squares[0..numCorral),
+     * and say whether it has work to do and whether it is a PI-corral
+     *
+     * @return WORK and PI, or'ed together
+     */
+    private int examine(Board board, int start, int id) {
+        boolean work = false;
+        int     tail = 0;
+        corral[start] = id;
+        queue[tail++] = start;
+        for (int head=0; head<tail; head++) {
+            int sq = queue[head];
+            if (board.isTarget(sq))
+                work = true;   // an empty target
+            for (Direction dir : DIRECTIONS) {
+                int next = board.neighbour(sq, dir);
+                if ((next < 0) || board.isWall(next))
+                    continue;
+                if (board.hasBox(next))
+                    fence[next] = id;
+                else if (corral[next] != id) {
+                    corral[next]  = id;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        System.arraycopy(queue, 0, squares, 0, tail);
+        numCorral = tail;
+        // the fence boxes are the boxes next to the squares just marked
+        boolean pi = true;
+        for (int k=0; k<tail; k++) {
+            for (Direction side : DIRECTIONS) {
+                int box = board.neighbour(queue[k], side);
+                if ((box < 0) || (fence[box] != id) || !board.hasBox(box))
+                    continue;
+                if (!board.isTarget(box))
+                    work = true;
+                for (Direction dir : DIRECTIONS) {
+                    int ahead  = board.neighbour(box, dir);
+                    int behind = board.neighbour(box, dir.reverse());
+                    if ((ahead < 0) || board.isWall(ahead) || !board.isWallSafe(ahead))
+                        continue;   // never a legal push
+                    if (corral[ahead] == id) {
+                        if (!isFixed(board, behind, id) && !board.isReachable(behind))
+                            pi = false;   // P: a push in that cannot be made now, but may be later
+                    } else if (!isFixed(board, ahead, id) && !isFixed(board, behind, id) && (corral[behind] != id)) {
+                        pi = false;   // I: a push out that could be made, now or later
+                    }
+                }
+            }
+        }
+        return (work ? WORK : 0) | ((work && pi) ? PI : 0);
+    }
+
+    /**
+     * Will a square stay blocked while a corral's fence stands: a wall, off the grid, or a fence box?
+     */
+    private boolean isFixed(Board board, int sq, int id) {
+        return (sq < 0) || board.isWall(sq) || ((fence[sq] == id) && board.hasBox(sq));
+    }
+
+    /**
+     * Is the corral just examined deadlocked? Searches the position with only its
+     * fence boxes, breadth first, for one with the actor in the corral or every box
+     * on a target.
+     *
+     * @return was a deadlock proved?
+     */
+    private boolean isDeadlocked(Board board, int id) {
+        int boxes = 0;
+        Arrays.fill(states, 0, length, 0L);
+        for (int b = board.nextBox(0); b >= 0; b = board.nextBox(b+1))
+            if (fence[b] == id) {
+                Board.set(states, b);
+                boxes++;
+            }
+        states[length-1] = board.getActor();
+        relaxed.unpack(states, 0);
+        long key  = relaxed.hash() ^ (squares[0] * 0x9E3779B97F4A7C15L);   // the same fence can pen in two corrals
+        int  slot = (int) (key >>> (64 - CACHE_BITS));
+        if (cacheKeys[slot] == key) {
+            if (cacheDead[slot])
+                deadlocks++;
+            return cacheDead[slot];
+        }
+        boolean dead = search(boxes);
+        cacheKeys[slot] = key;
+        cacheDead[slot] = dead;
+        if (dead)
+            deadlocks++;
+        return dead;
+    }
+
+    /**
+     * The search of isDeadlocked(), from the position unpacked in relaxed and states[0]
+     */
+    private boolean search(int boxes) {
+        if (relaxed.numOnTarget() == boxes)
+            return false;
+        Arrays.fill(seen, 0L);
+        remember(relaxed.hash());
+        int tail = 1;
+        for (int head=0; head<tail; head++) {
+            relaxed.unpack(states, head*length);
+            int numPushes = Solver.listPushes(relaxed, pushes);
+            for (int i=0; i<numPushes; i++) {
+                Solver.makePush(relaxed, pushes[i]);
+                if (relaxed.numOnTarget() == boxes)
+                    return false;
+                for (int k=0; k<numCorral; k++)
+                    if (relaxed.isReachable(squares[k]))
+                        return false;
+                if (remember(relaxed.hash())) {
+                    if (tail == MAX_NODES)
+                        return false;   // too big to prove
+                    relaxed.pack(states, (tail++)*length);
+                }
+                relaxed.unpack(states, head*length);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add a position hash to the search's seen set
+     *
+     * @return was it new?
+     */
+    private boolean remember(long hash) {
+        if (hash == 0L)
+            hash = 1L;   // 0 marks an empty slot
+        int mask = seen.length - 1;
+        for (int i = (int) (hash >>> 40) & mask; ; i = (i+1) & mask) {
+            if (seen[i] == hash)
+                return false;
+            if (seen[i] == 0L) {
+                seen[i] = hash;
+                return true;
+            }
+        }
+    }
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final int         WORK       = 1;
+    private static final int         PI         = 2;
+    private static final int         MAX_NODES  = 1 << 9;   // positions searched for one corral deadlock
+    private static final int         CACHE_BITS = 14;
+
+    private final int       numSquares;
+    private final boolean[] inside;     // the floor inside the level, ignoring boxes
+    private final int[]     corral;     // the id of the last corral each square was found in
+    private final int[]     fence;      // the id of the last corral each box fenced
+    private final int[]     queue;
+    private final int[]     squares;    // the squares of the corral last examined
+    private int             numCorral = 0;
+    private int             gen       = 0;   // the last corral id given out
+    private final Board     relaxed;    // scratch board for the deadlock search
+    private final int       length;     // of a packed position
+    private final long[]    states;     // the deadlock search's positions, packed
+    private final long[]    seen;       // their hashes, open addressed (a power of two)
+    private final int[]     pushes;
+    private final long[]    cacheKeys = new long[1 << CACHE_BITS];
+    private final boolean[] cacheDead = new boolean[1 << CACHE_BITS];
+    private long            deadlocks = 0;
+}
@@ -0,0 +1,382 @@
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A store of small deadlock patterns, learned during search and shared by every
+ * search that uses it.
+ *
+ * A pattern is a 4x4 window of the board: its walls and targets (the geometry)
+ * and a set of boxes that can never all reach targets there. Each is proven by
+ * a small search of the window alone, with every square outside it treated as
+ * empty floor and a box pushed out of it treated as solved. That is easier than
+ * the real board, so a pattern that is deadlocked in the window is deadlocked
+ * on any board with the same walls and targets in a window and at least those
+ * boxes. Patterns depend only on the window, not on the level, so the store
+ * can be saved and loaded again for later solves of the same collection, and
+ * it keeps growing rather than starting cold.
+ *
+ * Searches look patterns up through a Matcher made for their board, which
+ * works out the geometry of every window once. After each push it takes the
+ * box bits of the 16 windows holding the pushed box and compares them with the
+ * patterns for each window's geometry. A window that matches nothing and has
+ * only a few boxes is then proven (once per store) and, if deadlocked, reduced
+ * to the fewest boxes still deadlocked and added.
+ *
+ * The store is safe to share between threads; each Matcher belongs to one thread.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class DeadlockPatterns {
+    /**
+     * Turn the learning of new patterns during search on or off (on by default)
+     *
+     * @param learning learn new patterns?
+     */
+    public void setLearning(boolean learning) {
+        this.learning = learning;
+    }
+
+    /**
+     * Gets the number of patterns stored
+     *
+     * @return the number of patterns
+     */
+    public int size() {
+        int n = 0;
+        for (int[] masks : patterns.values())
+            n += masks.length;
+        return n;
+    }
+
+    /**
+     * Gets the number of windows proven (deadlocked or not) by this store
+     *
+     * @return the number of proofs
+     */
+    public long getNumProofs() {
+        return proofs.get();
+    }
+
+    /**
+     * Make a matcher for looking up patterns on a board
+     *
+     * @param board a board with the layout to be searched (cannot be null)
+     * @return a matcher for that layout, for use by one thread
+     */
+    public Matcher matcher(Board board) {
+        if (board == null)
+            throw new IllegalArgumentException("board cannot be null");
+        return new Matcher(board);
+    }
+
+    /**
+     * Add the patterns saved in a file
+     *
+     * @param file the file (one pattern per line: geometry and boxes in hex)
+     */
+    public void load(File file) {
+        if (file == null)
+            throw new IllegalArgumentException("file cannot be null");
+        Scanner fscnr = null;
+        try {
+            fscnr = new Scanner(file);
+            while (fscnr.hasNextLine()) {
+                String line = fscnr.nextLine().trim();
+                if ((line.length() == 0) || (line.charAt(0) == '#'))
+                    continue;
+                String[] fields = line.split("\\s+");
+                if (fields.length != 2)
+                    throw new SokobanException("invalid pattern line \""+line+"\"");
+                add((int) Long.parseLong(fields[0], 16), Integer.parseInt(fields[1], 16));
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new SokobanException(""+e);
+        } finally {
+            if (fscnr != null)
+                fscnr.close();
+        }
+    }
+
+    /**
+     * Save all the patterns to a file
+     *
+     * @param file the file
+     */
+    public void save(File file) {
+        if (file == null)
+            throw new IllegalArgumentException("file cannot be null");
+        try (PrintStream print = new PrintStream(file)) {
+            print.println("# Sokoban deadlock patterns: 4x4 window walls and targets, then boxes (bit 4*row+col)");
+            for (Map.Entry<Integer, int[]> e : patterns.entrySet())
+                for (int mask : e.getValue())
+                    print.println(String.format("%08x %04x", e.getKey(), mask));
+        }
+        catch (IOException e) {
+            throw new SokobanException(""+e);
+        }
+    }
+
+    /**
+     * Add a pattern, unless a smaller one already covers it, dropping any it covers
+     *
+     * @param geometry the window's walls (high 16 bits) and targets (low 16 bits)
+     * @param mask the boxes
+     */
+    synchronized void add(int geometry, int mask) {
+        int[] masks = patterns.get(geometry);
+        ArrayList<Integer> kept = new ArrayList<>();
+        if (masks != null) {
+            for (int p : masks) {
+                if ((p & mask) == p)
+                    return;
+                if ((p & mask) != mask)
+                    kept.add(p);
+            }
+        }
+        kept.add(mask);
+        int[] next = new int[kept.size()];
+        for (int i=0; i<next.length; i++)
+            next[i] = kept.get(i);
+        patterns.put(geometry, next);
+        version++;
+    }
+
+    /**
+     * Prove that a window is deadlocked, reducing it to as few boxes as stay deadlocked
+     *
+     * @return the reduced boxes (or 0 if the window is not deadlocked)
+     */
+    private int learn(int geometry, int mask) {
+        if (!prove(geometry, mask))
+            return 0;
+        for (int bits = mask; bits != 0; bits &= bits - 1) {
+            int smaller = mask & ~Integer.lowestOneBit(bits);
+            if ((Integer.bitCount(smaller) >= 2) && prove(geometry, smaller))
+                mask = smaller;
+        }
+        return mask;
+    }
+
+    /**
+     * Search the window, with a ring of empty floor round it, for a way to get every
+     * box onto a target or out of the window, starting from any square for the actor
+     *
+     * @return is there no way (within PROOF_LIMIT positions)?
+     */
+    private boolean prove(int geometry, int mask) {
+        proofs.incrementAndGet();
+        int walls   = geometry >>> 16;
+        int targets = geometry & 0xFFFF;
+        if ((mask & ~targets) == 0)
+            return false;
+        // best first: positions with the fewest boxes still to clear come out first
+        HashSet<Integer>    seen  = new HashSet<>();
+        PriorityQueue<Long> queue = new PriorityQueue<>();
+        boolean[] reached = new boolean[CELLS];
+        int[]     stack   = new int[CELLS];
+        for (int c=0; c<CELLS; c++)
+            if (!blocked(walls, mask, c)) {
+                int state = (mask << 6) | region(walls, mask, c, reached, stack);
+                if (seen.add(state))
+                    queue.add(entry(state, mask & ~targets));
+            }
+        while (!queue.isEmpty()) {
+            int state = (int) (long) queue.poll();
+            int boxes = state >>> 6;
+            region(walls, boxes, state & 63, reached, stack);
+            for (int bits = boxes; bits != 0; bits &= bits - 1) {
+                int bit  = Integer.numberOfTrailingZeros(bits);
+                int cell = CELL_OF_BIT[bit];
+                for (int d=0; d<4; d++) {
+                    int from = step(cell, d ^ 1);
+                    int to   = step(cell, d);
+                    if ((from < 0) || !reached[from] || (to < 0))
+                        continue;
+                    int toBit = BIT_OF_CELL[to];
+                    int next  = boxes & ~(1 << bit);
+                    if (toBit >= 0) {
+                        if ((((walls | boxes) >> toBit) & 1) != 0)
+                            continue;
+                        next |= 1 << toBit;
+                    }
+                    if ((next & ~targets) == 0)
+                        return false;
+                    int child = (next << 6) | region(walls, next, cell, null, stack);
+                    if (seen.add(child)) {
+                        if (seen.size() > PROOF_LIMIT)
+                            return false;  // too big to prove here
+                        queue.add(entry(child, next & ~targets));
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An entry of the proof's queue, ordered by the number of boxes still off target
+     */
+    private static long entry(int state, int offTarget) {
+        return ((long) Integer.bitCount(offTarget) << 32) | state;
+    }
+
+    /**
+     * Flood the actor's region in the window and its ring
+     *
+     * @param reached if not null, set to the cells of the region
+     * @return the lowest cell in the region (the normalised actor)
+     */
+    private static int region(int walls, int boxes, int start, boolean[] reached, int[] stack) {
+        long seen = 1L << start;
+        int  top  = 0;
+        int  min  = start;
+        stack[top++] = start;
+        while (top > 0) {
+            int c = stack[--top];
+            for (int d=0; d<4; d++) {
+                int n = step(c, d);
+                if ((n < 0) || ((seen >>> n) & 1L) != 0L || blocked(walls, boxes, n))
+                    continue;
+                seen |= 1L << n;
+                stack[top++] = n;
+                min = Math.min(min, n);
+            }
+        }
+        if (reached != null)
+            for (int c=0; c<CELLS; c++)
+                reached[c] = ((seen >>> c) & 1L) != 0L;
+        return min;
+    }
+
+    private static boolean blocked(int walls, int boxes, int cell) {
+        int bit = BIT_OF_CELL[cell];
+        return (bit >= 0) && ((((walls | boxes) >> bit) & 1) != 0);
+    }
+
+    /**
+     * The cell next to a cell of the 6x6 window-and-ring, in direction d
+     * (0 north, 1 south, 2 west, 3 east, so d ^ 1 is the opposite)
+     *
+     * @return the neighbouring cell (or -1 if off the ring)
+     */
+    private static int step(int cell, int d) {
+        int row = cell / SIDE + ROW_STEP[d];
+        int col = cell % SIDE + COL_STEP[d];
+        return ((row < 0) || (row >= SIDE) || (col < 0) || (col >= SIDE)) ? -1 : row*SIDE + col;
+    }
+
+    /**
+     * Looks up (and learns) patterns for one layout
+     */
+    public class Matcher {
+        private Matcher(Board board) {
+            numCols = board.getNumCols();
+            numRows = board.getNumRows();
+            geometry = new int[board.getNumSquares()];
+            masks    = new int[board.getNumSquares()][];
+            for (int row=0; row+WINDOW<=numRows; row++)
+                for (int col=0; col+WINDOW<=numCols; col++) {
+                    int g = 0;
+                    for (int i=0; i<WINDOW; i++)
+                        for (int j=0; j<WINDOW; j++) {
+                            int sq = board.index(row+i, col+j);
+                            if (board.isWall(sq))
+                                g |= 1 << (16 + i*WINDOW + j);
+                            else if (board.isTarget(sq))
+                                g |= 1 << (i*WINDOW + j);
+                        }
+                    geometry[board.index(row, col)] = g;
+                }
+        }
+
+        /**
+         * Is a box just pushed onto a square part of a known (or newly proven) deadlock?
+         *
+         * @param board the position after the push
+         * @param box the square the box was pushed onto
+         * @return is the position deadlocked?
+         */
+        public boolean isDeadlocked(Board board, int box) {
+            if (seen != version) {
+                seen = version;
+                for (int sq=0; sq<masks.length; sq++)
+                    masks[sq] = patterns.get(geometry[sq]);
+            }
+            int row = box / numCols;
+            int col = box % numCols;
+            for (int r = Math.max(0, row-WINDOW+1); (r <= row) && (r+WINDOW <= numRows); r++)
+                for (int c = Math.max(0, col-WINDOW+1); (c <= col) && (c+WINDOW <= numCols); c++) {
+                    int anchor = r*numCols + c;
+                    int boxes  = 0;
+                    for (int i=0; i<WINDOW; i++)
+                        boxes |= board.boxBits(anchor + i*numCols, WINDOW) << (i*WINDOW);
+                    int[] known = masks[anchor];
+                    if (known != null)
+                        for (int p : known)
+                            if ((p & boxes) == p)
+                                return true;
+                    if (learning && (Integer.bitCount(boxes) >= 2) && (Integer.bitCount(boxes) <= MAX_BOXES)) {
+                        long key  = ((long) geometry[anchor] << 16) | boxes;
+                        int  slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - LOCAL_BITS));
+                        if (recent[slot] == key)
+                            continue;   // proven alive, and seen lately by this thread
+                        if (!alive.contains(key)) {
+                            int dead = learn(geometry[anchor], boxes);
+                            if (dead != 0) {
+                                add(geometry[anchor], dead);
+                                return true;
+                            }
+                            if (alive.size() < MAX_ALIVE)
+                                alive.add(key);
+                        }
+                        recent[slot] = key;
+                    }
+                }
+            return false;
+        }
+
+        private final int     numCols;
+        private final int     numRows;
+        private final int[]   geometry;   // of the window whose top-left square this is
+        private final int[][] masks;      // the patterns for each window (or null)
+        private final long[]  recent = new long[1 << LOCAL_BITS];  // alive keys, so that lookups need not box them
+        private int           seen = -1;  // the store version masks were fetched at
+    }
+
+    /** The width and height of a pattern window */
+    public static final int WINDOW = 4;
+
+    /** Windows with more boxes than this are not proven */
+    private static final int MAX_BOXES   = 5;
+    /** The most positions searched in proving one window */
+    private static final int PROOF_LIMIT = 20000;
+    /** The most windows remembered as not deadlocked */
+    private static final int MAX_ALIVE   = 1 << 20;
+    /** The log2 of the number of alive windows each Matcher keeps to hand */
+    private static final int LOCAL_BITS  = 14;
+
+    private static final int   SIDE        = WINDOW + 2;
+    private static final int   CELLS       = SIDE*SIDE;
+    private static final int[] ROW_STEP    = { -1, 1, 0, 0 };
+    private static final int[] COL_STEP    = { 0, 0, -1, 1 };
+    private static final int[] CELL_OF_BIT = new int[WINDOW*WINDOW];
+    private static final int[] BIT_OF_CELL = new int[CELLS];
+    static {
+        Arrays.fill(BIT_OF_CELL, -1);
+        for (int i=0; i<WINDOW; i++)
+            for (int j=0; j<WINDOW; j++) {
+                CELL_OF_BIT[i*WINDOW + j]     = (i+1)*SIDE + j+1;
+                BIT_OF_CELL[(i+1)*SIDE + j+1] = i*WINDOW + j;
+            }
+    }
+
+    private final ConcurrentHashMap<Integer, int[]> patterns = new ConcurrentHashMap<>();  // by geometry
+    private final Set<Long>  alive    = ConcurrentHashMap.newKeySet();  // geometry and boxes proven not deadlocked
+    private final AtomicLong proofs   = new AtomicLong();
+    private volatile int     version  = 0;      // changed on every add
+    private volatile boolean learning = true;
+}
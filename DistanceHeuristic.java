@@ -0,0 +1,86 @@
+
+import java.util.*;
+
+/**
+ * The simplest admissible Sokoban heuristic: the sum, over all boxes, of the
+ * number of pushes needed to get each box to its nearest target on an otherwise
+ * empty board. Push distances come from one backwards (pulling) sweep from all
+ * the targets, done once per layout.
+ *
+ * The solvers now default to the stronger MatchingHeuristic. This one is kept
+ * as a cheaper alternative for setHeuristic(), and because it only reads its
+ * table it is thread-safe, so one instance can be shared by every thread of a
+ * ParallelSolver.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class DistanceHeuristic implements Heuristic {
+    /**
+     * Constructor
+     *
+     * @param board a board with the layout to be solved (cannot be null)
+     */
+    public DistanceHeuristic(Board board) {
+        if (board == null)
+            throw new IllegalArgumentException("board cannot be null");
+        int n = board.getNumSquares();
+        distance = new int[n];
+        Arrays.fill(distance, UNREACHED);
+        int[] queue = new int[n];
+        int   head  = 0;
+        int   tail  = 0;
+        for (int sq=0; sq<n; sq++) {
+            if (board.isTarget(sq) && !board.isWall(sq)) {
+                distance[sq]  = 0;
+                queue[tail++] = sq;
+            }
+        }
+        while (head < tail) {
+            int box = queue[head++];
+            for (Direction dir : DIRECTIONS) {
+                int to = board.neighbour(box, dir);
+                if ((to < 0) || board.isWall(to) || (distance[to] != UNREACHED))
+                    continue;
+                int actorTo = board.neighbour(to, dir);
+                if ((actorTo < 0) || board.isWall(actorTo))
+                    continue;
+                distance[to]  = distance[box] + 1;
+                queue[tail++] = to;
+            }
+        }
+    }
+
+    /**
+     * Estimate the number of pushes still needed
+     *
+     * @param board the position
+     * @return the sum of each box's push distance to its nearest target (or DEADLOCK)
+     */
+    @Override
+    public int estimate(Board board) {
+        int sum = 0;
+        for (int b = board.nextBox(0); b >= 0; b = board.nextBox(b+1)) {
+            int d = distance[b];
+            if (d == UNREACHED)
+                return DEADLOCK;
+            sum += d;
+        }
+        return sum;
+    }
+
+    /**
+     * The push distance from a square to the nearest target
+     *
+     * @param sq the square index
+     * @return the number of pushes (or -1 if no target can be reached)
+     */
+    public int getDistance(int sq) {
+        return (distance[sq] == UNREACHED) ? -1 : distance[sq];
+    }
+
+    private static final int         UNREACHED  = Integer.MAX_VALUE;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final int[] distance;
+}
@@ -0,0 +1,488 @@
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * A breadth-first push-level solver whose frontier lives on disk, for searches
+ * far bigger than memory.
+ *
+ * Positions are stored packed (Board.pack: the box bitset and the normalised
+ * actor square, since walls and targets never change). Each layer of the
+ * search (all positions a given number of pushes from the start) is a file of
+ * sorted, distinct packed positions. A layer is expanded by reading it in
+ * order; the children collect in a buffer of fixed size, which is sorted and
+ * written out as a run whenever it fills. Duplicates are then removed all at
+ * once (delayed duplicate detection): the runs are merged, and the merge skips
+ * repeats and anything already in an earlier layer, reading the layer files
+ * alongside the runs, giving the next layer. Nothing is ever rewritten, so
+ * each layer is written once and read once per later layer; setDuplicateWindow()
+ * limits the check to the last few layers, trading repeated work for less
+ * reading. All files are read in order through small buffers.
+ *
+ * Layer files keep no parent links. Once a solved position is found, the path
+ * back is recovered one layer at a time by finding a position in the layer
+ * before with a push that leads to it. Breadth-first search on pushes finds
+ * push-optimal solutions.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class ExternalSolver {
+    /**
+     * Limit the memory used for buffering children between runs
+     *
+     * @param memoryBudget the number of bytes for the buffer
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget < (1 << 16))
+            throw new IllegalArgumentException("memoryBudget must be at least 64KB");
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Only check new positions against the last few layers rather than all of
+     * them. A position seen further back is searched again, which costs time
+     * but leaves the solutions push-optimal: a position first reached n pushes
+     * from the start is still first expanded in layer n.
+     *
+     * @param duplicateWindow the number of earlier layers to check (0 for all)
+     */
+    public void setDuplicateWindow(int duplicateWindow) {
+        if (duplicateWindow < 0)
+            throw new IllegalArgumentException("duplicateWindow cannot be negative");
+        this.duplicateWindow = duplicateWindow;
+    }
+
+    /**
+     * Set the directory for the run and layer files (by default the system temporary directory)
+     *
+     * @param directory the directory
+     */
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Limit the number of nodes expanded by each search
+     *
+     * @param nodeLimit the maximum number of nodes (0 for no limit)
+     */
+    public void setNodeLimit(long nodeLimit) {
+        if (nodeLimit < 0)
+            throw new IllegalArgumentException("nodeLimit cannot be negative");
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Limit the time taken by each search
+     *
+     * @param timeLimit the maximum time in milliseconds (0 for no limit)
+     */
+    public void setTimeLimit(long timeLimit) {
+        if (timeLimit < 0)
+            throw new IllegalArgumentException("timeLimit cannot be negative");
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * Ask a running search (on any thread) to stop as soon as possible. A search
+     * that has not started yet stops as soon as it starts, so a cancel cannot be
+     * lost by arriving just before solve() is called.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Solve a Sokoban puzzle from its current position (the puzzle is not changed)
+     *
+     * @param puzzle the puzzle (cannot be null)
+     * @return the solution
+     */
+    public Solution solve(Sokoban puzzle) {
+        if (puzzle == null)
+            throw new IllegalArgumentException("puzzle cannot be null");
+        return solve(puzzle.fork());
+    }
+
+    /**
+     * Solve a board from its current position (the board is not changed)
+     *
+     * @param start the board (cannot be null)
+     * @return the solution (a LIMIT solution if the disk fails)
+     */
+    public Solution solve(Board start) {
+        if (start == null)
+            throw new IllegalArgumentException("start cannot be null");
+        long started  = System.currentTimeMillis();
+        long deadline = (timeLimit > 0) ? started + timeLimit : Long.MAX_VALUE;
+        Path dir = null;
+        try {
+            dir = (directory == null) ? Files.createTempDirectory("sokoban") : Files.createTempDirectory(directory.toPath(), "sokoban");
+            return search(start, dir, started, deadline);
+        }
+        catch (IOException e) {
+            Sokoban.trace("external search failed: "+e);
+            return new Solution(Solution.Status.LIMIT, null, 0, 0, System.currentTimeMillis() - started);
+        }
+        finally {
+            if (dir != null)
+                deleteAll(dir);
+            cancelled = false;
+        }
+    }
+
+    /**
+     * The layer-by-layer search
+     */
+    private Solution search(Board start, Path dir, long started, long deadline) throws IOException {
+        Board board = start.fork();
+        board.normalize();
+        int   len        = board.getPackedLength();
+        long[] record    = new long[len];
+        long[] buffer    = new long[(int) Math.min(Integer.MAX_VALUE - 8, memoryBudget/8) / len * len];
+        int[]  candidates = new int[board.numBoxes()*4];
+        Heuristic deadlock = new MatchingHeuristic(start);
+
+        ArrayList<Path> layers = new ArrayList<>();
+        board.pack(record, 0);
+        layers.add(write(dir.resolve("layer0"), record, len));
+        if (board.onTarget())
+            return new Solution(Solution.Status.SOLVED, null, 0, 0, System.currentTimeMillis() - started);
+
+        long expanded = 0;
+        long[] goal   = null;
+        Solution.Status status = Solution.Status.UNSOLVABLE;
+        search:
+        while (true) {
+            Path layer = layers.get(layers.size()-1);
+            ArrayList<Path> runs = new ArrayList<>();
+            int filled = 0;
+            try (Reader in = new Reader(layer, len)) {
+                while (in.next(record)) {
+                    if ((expanded & 1023) == 0) {
+                        if (cancelled) {
+                            status = Solution.Status.CANCELLED;
+                            break search;
+                        }
+                        if (((nodeLimit > 0) && (expanded >= nodeLimit)) || (System.currentTimeMillis() > deadline)) {
+                            status = Solution.Status.LIMIT;
+                            break search;
+                        }
+                    }
+                    expanded++;
+                    board.unpack(record, 0);
+                    int numPushes = Solver.listPushes(board, candidates);
+                    for (int i=0; i<numPushes; i++) {
+                        Solver.makePush(board, candidates[i]);
+                        if (board.onTarget()) {
+                            goal = new long[len];
+                            board.pack(goal, 0);
+                            status = Solution.Status.SOLVED;
+                            break search;
+                        }
+                        if (deadlock.estimate(board) != Heuristic.DEADLOCK) {
+                            if (filled == buffer.length) {
+                                runs.add(writeRun(dir.resolve("run"+runs.size()), buffer, filled, len));
+                                filled = 0;
+                            }
+                            board.pack(buffer, filled);
+                            filled += len;
+                        }
+                        board.unpack(record, 0);
+                    }
+                }
+            }
+            if (filled > 0)
+                runs.add(writeRun(dir.resolve("run"+runs.size()), buffer, filled, len));
+            if (runs.isEmpty())
+                break; // no new positions: every layer has been searched
+
+            // delayed duplicate detection: merge the runs, dropping repeats and earlier layers
+            Path next  = dir.resolve("layer"+layers.size());
+            int  first = (duplicateWindow > 0) ? Math.max(0, layers.size() - duplicateWindow) : 0;
+            long size  = merge(runs, layers.subList(first, layers.size()), next, len);
+            for (Path run : runs)
+                Files.delete(run);
+            if (size == 0)
+                break;
+            layers.add(next);
+            Sokoban.trace("external search: layer "+(layers.size()-1)+" has "+size+" positions");
+        }
+        long millis = System.currentTimeMillis() - started;
+        if (goal == null)
+            return new Solution(status, null, 0, expanded, millis);
+
+        // recover the path: find a position in each earlier layer that leads to the one after
+        int         depth = layers.size();
+        int[]       boxes = new int[depth];
+        Direction[] dirs  = new Direction[depth];
+        long[]      child = new long[len];
+        for (int d = depth-1; d >= 0; d--) {
+            boolean found = false;
+            try (Reader in = new Reader(layers.get(d), len)) {
+                while (!found && in.next(record)) {
+                    board.unpack(record, 0);
+                    int numPushes = Solver.listPushes(board, candidates);
+                    for (int i=0; (i<numPushes) && !found; i++) {
+                        Solver.makePush(board, candidates[i]);
+                        board.pack(child, 0);
+                        if (Arrays.equals(child, goal)) {
+                            boxes[d] = candidates[i] >> 2;
+                            dirs[d]  = DIRECTIONS[candidates[i] & 3];
+                            found    = true;
+                        }
+                        board.unpack(record, 0);
+                    }
+                }
+            }
+            if (!found)
+                throw new IllegalStateException("no parent in layer "+d);
+            System.arraycopy(record, 0, goal, 0, len);
+        }
+        return new Solution(status, Solver.steps(start, boxes, dirs), depth, expanded, millis);
+    }
+
+    /**
+     * Merge sorted files into one, keeping one copy of each record and skipping any
+     * record in one of the exclude files
+     *
+     * @param inputs the sorted files
+     * @param excludes sorted files of records to leave out
+     * @param output the file to write
+     * @param len the record length in longs
+     * @return the number of records written
+     */
+    private long merge(List<Path> inputs, List<Path> excludes, Path output, int len) throws IOException {
+        PriorityQueue<Reader> heads = new PriorityQueue<>((a, b) -> compare(a.current, b.current));
+        ArrayList<Reader> open  = new ArrayList<>();
+        ArrayList<Reader> skips = new ArrayList<>();   // the exclude files not yet read to the end
+        long written = 0;
+        try (Writer out = new Writer(output)) {
+            for (Path p : inputs) {
+                Reader r = new Reader(p, len);
+                open.add(r);
+                if (r.next(r.current))
+                    heads.add(r);
+            }
+            for (Path p : excludes) {
+                Reader r = new Reader(p, len);
+                open.add(r);
+                if (r.next(r.current))
+                    skips.add(r);
+            }
+            long[] last = null;
+            while (!heads.isEmpty()) {
+                Reader r = heads.poll();
+                long[] rec = r.current.clone();
+                if (r.next(r.current))
+                    heads.add(r);
+                if ((last != null) && (compare(last, rec) == 0))
+                    continue;
+                last = rec;
+                if (!excluded(skips, rec)) {
+                    out.write(rec);
+                    written++;
+                }
+            }
+        }
+        finally {
+            for (Reader r : open)
+                r.close();
+        }
+        return written;
+    }
+
+    /**
+     * Is a record in one of the exclude files? Each file is read up to the record,
+     * and dropped from the list once it runs out, so over a merge every file is
+     * read once.
+     */
+    private static boolean excluded(List<Reader> skips, long[] rec) throws IOException {
+        boolean found = false;
+        for (int i=skips.size()-1; i>=0; i--) {
+            Reader skip = skips.get(i);
+            int c;
+            while ((c = compare(skip.current, rec)) < 0)
+                if (!skip.next(skip.current))
+                    break;
+            if (c < 0)
+                skips.remove(i);
+            else if (c == 0)
+                found = true;
+        }
+        return found;
+    }
+
+    /**
+     * Sort the records in a buffer and write them to a run file
+     */
+    private Path writeRun(Path path, long[] buffer, int filled, int len) throws IOException {
+        sort(buffer, filled/len, len);
+        long[] rec = new long[len];
+        try (Writer out = new Writer(path)) {
+            for (int at=0; at<filled; at+=len) {
+                System.arraycopy(buffer, at, rec, 0, len);
+                out.write(rec);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Sort the records at the start of a buffer in place. Records of several
+     * words are heapsorted, so the sort needs no memory beyond the buffer itself.
+     *
+     * @param buffer the records, each len longs
+     * @param count the number of records
+     * @param len the record length in longs
+     */
+    private static void sort(long[] buffer, int count, int len) {
+        if (len == 1) {
+            Arrays.sort(buffer, 0, count);
+            return;
+        }
+        for (int i = count/2 - 1; i >= 0; i--)
+            siftDown(buffer, i, count, len);
+        for (int end = count-1; end > 0; end--) {
+            swap(buffer, 0, end, len);
+            siftDown(buffer, 0, end, len);
+        }
+    }
+
+    private static void siftDown(long[] buffer, int i, int count, int len) {
+        while (true) {
+            int child = 2*i + 1;
+            if (child >= count)
+                return;
+            if ((child+1 < count) && (compare(buffer, child*len, buffer, (child+1)*len, len) < 0))
+                child++;
+            if (compare(buffer, i*len, buffer, child*len, len) >= 0)
+                return;
+            swap(buffer, i, child, len);
+            i = child;
+        }
+    }
+
+    private static void swap(long[] buffer, int i, int j, int len) {
+        for (int k=0, a=i*len, b=j*len; k<len; k++, a++, b++) {
+            long t    = buffer[a];
+            buffer[a] = buffer[b];
+            buffer[b] = t;
+        }
+    }
+
+    /**
+     * Write a file holding a single record
+     */
+    private Path write(Path path, long[] record, int len) throws IOException {
+        try (Writer out = new Writer(path)) {
+            out.write(record);
+        }
+        return path;
+    }
+
+    private static int compare(long[] a, long[] b) {
+        return compare(a, 0, b, 0, a.length);
+    }
+
+    private static int compare(long[] a, int i, long[] b, int j, int len) {
+        for (int k=0; k<len; k++) {
+            int c = Long.compare(a[i+k], b[j+k]);
+            if (c != 0)
+                return c;
+        }
+        return 0;
+    }
+
+    private static void deleteAll(Path dir) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path p : files)
+                Files.deleteIfExists(p);
+            Files.deleteIfExists(dir);
+        }
+        catch (IOException e) {
+            Sokoban.trace("could not delete "+dir+": "+e);
+        }
+    }
+
+    /**
+     * Reads the records of a file in order through a buffer of whole records,
+     * refilled from the channel whenever it runs dry
+     */
+    private static class Reader implements Closeable {
+        Reader(Path path, int len) throws IOException {
+            channel  = FileChannel.open(path, StandardOpenOption.READ);
+            this.len = len;
+            buffer   = ByteBuffer.allocate(Math.max(1, READ_BYTES / (8*len)) * 8*len).order(ByteOrder.BIG_ENDIAN);
+            buffer.flip();
+            current  = new long[len];
+        }
+
+        /**
+         * Read the next record
+         *
+         * @param dst where to put it
+         * @return was there another record?
+         */
+        boolean next(long[] dst) throws IOException {
+            if (!buffer.hasRemaining()) {
+                // files hold whole records, so a full read ends on a record boundary
+                buffer.clear();
+                while (buffer.hasRemaining())
+                    if (channel.read(buffer) < 0)
+                        break;
+                buffer.flip();
+                if (!buffer.hasRemaining())
+                    return false;
+            }
+            for (int k=0; k<len; k++)
+                dst[k] = buffer.getLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        final long[]              current;
+        private final FileChannel channel;
+        private final int         len;
+        private final ByteBuffer  buffer;
+    }
+
+    /**
+     * Writes records to a file through a buffer
+     */
+    private static class Writer implements Closeable {
+        Writer(Path path) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+        }
+
+        void write(long[] record) throws IOException {
+            for (long word : record)
+                out.writeLong(word);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        private final DataOutputStream out;
+    }
+
+    private static final Direction[] DIRECTIONS   = Direction.values();
+    private static final int         READ_BYTES   = 1 << 16;   // per file being read
+
+    private long             memoryBudget    = 1L << 28;
+    private int              duplicateWindow = 0;
+    private File             directory       = null;
+    private long             nodeLimit       = 0;
+    private long             timeLimit       = 0;
+    private volatile boolean cancelled       = false;
+}
@@ -0,0 +1,17 @@
+/**
+ * A player that chooses from a bitmask of legal moves rather than a Vector,
+ * so that choosing a move allocates nothing (see Sokoban.getMoves()).
+ * Bit d of the mask stands for the Direction with ordinal d.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public interface FastPlayer {
+    /**
+     * In which direction should the actor move, given a mask of choices?
+     *
+     * @param choices the possible directions, one bit per Direction ordinal (not 0)
+     * @return the chosen direction
+     */
+    public Direction move(int choices);
+}
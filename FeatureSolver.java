@@ -0,0 +1,771 @@
+
+import java.util.*;
+
+/**
+ * A feature-space solver for Sokoban puzzles, after Shoham and Schaeffer's FESS.
+ *
+ * A* orders positions by a lower bound on the pushes still needed, and on large
+ * levels that bound is too weak to keep the search from drowning. This search
+ * instead projects each position onto two features and shares its effort out
+ * evenly over the cells of that feature space:
+ *
+ *   packing       how many targets are filled in packing order: an order in which
+ *                 the targets can be filled, worked out once by pulling the boxes
+ *                 back out of the solved position (the targets nearest a box are
+ *                 filled last); each connected area of targets is counted on its own
+ *   connectivity  how many areas of floor the boxes split the level into
+ *
+ * The search visits the cells in turn, and from each takes the cheapest move not
+ * yet made out of any of its positions. The moves out of a position are its legal
+ * pushes (after corral pruning), each costing one more than the position, and
+ * the advice of the advisors, costing nothing more: for each target area, the
+ * fewest pushes taking one box on its own to the area's next target, and the
+ * push that most reduces the number of floor areas. Advice is only worked out
+ * when it comes to be taken, so a position that is never revisited costs a flood
+ * fill and a listing of its pushes, and the box paths are tried from the box
+ * nearest the target by push distance, stopping once no other can be shorter.
+ *
+ * Every new position gets the macro pushes, and is checked against the deadlock
+ * patterns and the matching heuristic, as in Solver. Every legal push of every
+ * position is made in the end, so without macro pushes a search that runs dry
+ * proves there is no solution. The solutions found are not push-optimal (a
+ * packing order fills the level one box at a time), but the search is far
+ * quicker than A* on levels with many boxes.
+ *
+ * Positions, their pushes and the cells' queues live in primitive arrays, as in
+ * Solver, so the search creates no objects per position.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class FeatureSolver {
+    /**
+     * Limit the number of moves made by each search
+     *
+     * @param nodeLimit the maximum number of moves (0 for no limit)
+     */
+    public void setNodeLimit(long nodeLimit) {
+        if (nodeLimit < 0)
+            throw new IllegalArgumentException("nodeLimit cannot be negative");
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Limit the time taken by each search
+     *
+     * @param timeLimit the maximum time in milliseconds (0 for no limit)
+     */
+    public void setTimeLimit(long timeLimit) {
+        if (timeLimit < 0)
+            throw new IllegalArgumentException("timeLimit cannot be negative");
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * Make macro pushes (see Solver.setMacroPushes; on by default)
+     *
+     * @param macroPushes use macro pushes?
+     */
+    public void setMacroPushes(boolean macroPushes) {
+        this.macroPushes = macroPushes;
+    }
+
+    /**
+     * Prune pushes that complete a known deadlock pattern, learning new patterns as
+     * the search goes (by default the solver has a store of its own)
+     *
+     * @param patterns the pattern store (null for none)
+     */
+    public void setDeadlockPatterns(DeadlockPatterns patterns) {
+        this.patterns = patterns;
+    }
+
+    /**
+     * Ask a running search (on any thread) to stop as soon as possible (a search
+     * that has not started yet stops as soon as it starts)
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Solve a Sokoban puzzle from its current position (the puzzle is not changed)
+     *
+     * @param puzzle the puzzle (cannot be null)
+     * @return the solution
+     */
+    public Solution solve(Sokoban puzzle) {
+        if (puzzle == null)
+            throw new IllegalArgumentException("puzzle cannot be null");
+        return solve(puzzle.fork());
+    }
+
+    /**
+     * Solve a board from its current position (the board is not changed)
+     *
+     * @param start the board (cannot be null)
+     * @return the solution
+     */
+    public Solution solve(Board start) {
+        if (start == null)
+            throw new IllegalArgumentException("start cannot be null");
+        try {
+            return search(start);
+        } finally {
+            cancelled = false;
+        }
+    }
+
+    /**
+     * The search of solve()
+     *
+     * @param start the board (not changed)
+     * @return the solution
+     */
+    private Solution search(Board start) {
+        long started  = System.currentTimeMillis();
+        long deadline = (timeLimit > 0) ? started + timeLimit : Long.MAX_VALUE;
+        if (start.onTarget())
+            return new Solution(Solution.Status.SOLVED, new ArrayList<>(), 0, 0, 0);
+        Board board = start.fork();
+        board.normalize();
+        init(start);
+        if (matching.estimate(board) == Heuristic.DEADLOCK)
+            return new Solution(Solution.Status.UNSOLVABLE, null, 0, 0, System.currentTimeMillis() - started);
+        table.put(board.exactHash(), addNode(board, -1, 0, 0));
+
+        long expanded = 0;
+        Solution.Status status = Solution.Status.UNSOLVABLE;
+        int  goal = -1;
+        boolean any = true;
+        while (any && (goal < 0)) {
+            any = false;
+            // the cells found during a round are visited in the same round
+            for (int cell=0; (cell < numCells) && (goal < 0); cell++) {
+                if (queueSize[cell] == 0)
+                    continue;
+                any = true;
+                if ((expanded & 1023) == 0) {
+                    if (cancelled) {
+                        status = Solution.Status.CANCELLED;
+                        break;
+                    }
+                    if (((nodeLimit > 0) && (expanded >= nodeLimit)) || (System.currentTimeMillis() > deadline)) {
+                        status = Solution.Status.LIMIT;
+                        break;
+                    }
+                }
+                // the cheapest move of the cell, passing over advisors with no advice
+                long entry = 0;
+                int  node  = 0;
+                int  count = 0;
+                while ((count == 0) && (queueSize[cell] > 0)) {
+                    entry = queuePop(cell);
+                    node  = (int) ((entry >>> MOVE_BITS) & NODE_MASK);
+                    board.restore(states, node*stride);
+                    count = move(board, node, (int) (entry & MOVE_MASK));
+                }
+                if (count == 0)
+                    continue;
+                expanded++;
+                board.restore(states, node*stride);
+                int numMade = 0;
+                for (int i=0; i<count; i++) {
+                    Solver.makePush(board, advice[i]);
+                    made[numMade++] = advice[i];
+                    int extra = (analysis != null) ? analysis.extend(board, advice[i], macro) : 0;
+                    for (int j=0; j<extra; j++)
+                        made[numMade++] = macro[j];
+                    if (extra > 0)
+                        break;   // the rest of a box path no longer fits
+                }
+                long key  = board.exactHash();
+                int  last = made[numMade-1];
+                if ((table.get(key) >= 0) || isPatternDeadlock(board, last) || (matching.estimate(board) == Heuristic.DEADLOCK))
+                    continue;
+                int child = addNode(board, node, numMade, (int) (entry >>> (MOVE_BITS + NODE_BITS)));
+                table.put(key, child);
+                if (board.onTarget())
+                    goal = child;
+            }
+            if (status != Solution.Status.UNSOLVABLE)
+                break;
+        }
+        long millis = System.currentTimeMillis() - started;
+        Sokoban.trace("feature search: "+numNodes+" positions in "+numCells+" cells");
+        if (goal < 0)
+            return new Solution(status, null, 0, expanded, millis);
+
+        int total = 0;
+        for (int n = goal; parent[n] >= 0; n = parent[n])
+            total += viaCount[n];
+        int[]       boxes = new int[total];
+        Direction[] dirs  = new Direction[total];
+        for (int n = goal, i = total; parent[n] >= 0; n = parent[n])
+            for (int j=viaCount[n]-1; j>=0; j--) {
+                int push = via[firstVia[n] + j];
+                boxes[--i] = push >> 2;
+                dirs[i]    = DIRECTIONS[push & 3];
+            }
+        return new Solution(Solution.Status.SOLVED, Solver.steps(start, boxes, dirs), total, expanded, millis);
+    }
+
+    /**
+     * Set up the analysis of the level and the node arrays for a new search
+     */
+    private void init(Board start) {
+        int numBoxes = start.numBoxes();
+        numSquares = start.getNumSquares();
+        stride     = start.getSnapshotLength();
+        matching   = new MatchingHeuristic(start);
+        corrals    = new CorralPruner(start);
+        matcher    = (patterns != null) ? patterns.matcher(start) : null;
+        analysis   = macroPushes ? new LevelAnalysis(start) : null;
+        macro      = macroPushes ? new int[analysis.getMaxMacroLength()] : null;
+        candidates = new int[4*numBoxes];
+        boxOrder   = new long[numBoxes];
+        advice     = new int[MAX_PATH_STATES];
+        path       = new int[MAX_PATH_STATES];
+        made       = new int[MAX_PATH_STATES + ((macro != null) ? macro.length : 0)];
+        pathStates = new long[MAX_PATH_STATES*stride];
+        pathBox    = new int[MAX_PATH_STATES];
+        pathParent = new int[MAX_PATH_STATES];
+        pathPush   = new int[MAX_PATH_STATES];
+        pathSeen   = new TranspositionTable(MAX_PATH_STATES);
+        floor      = new boolean[numSquares];
+        stamp      = new int[numSquares];
+        queue      = new int[numSquares];
+        targetIndex = new int[numSquares];
+        int tail = 0;
+        floor[start.getActor()] = true;
+        queue[tail++] = start.getActor();
+        for (int head=0; head<tail; head++)
+            for (Direction dir : DIRECTIONS) {
+                int next = start.neighbour(queue[head], dir);
+                if ((next >= 0) && !floor[next] && !start.isWall(next)) {
+                    floor[next]   = true;
+                    queue[tail++] = next;
+                }
+            }
+        for (int sq=0, t=0; sq<numSquares; sq++)
+            if (start.isTarget(sq))
+                targetIndex[sq] = t++;
+        areas = areas(start, packingOrder(start));
+        areaOf = new int[numSquares];
+        rankOf = new int[numSquares];
+        Arrays.fill(areaOf, -1);
+        for (int k=0; k<areas.length; k++)
+            for (int r=0; r<areas[k].length; r++) {
+                areaOf[areas[k][r]] = k;
+                rankOf[areas[k][r]] = r;
+            }
+        if (4*numBoxes + areas.length + 1 > MOVE_MASK)
+            throw new IllegalArgumentException("too many boxes for the feature search");
+
+        table     = new TranspositionTable();
+        cells     = new TranspositionTable();
+        numNodes  = 0;
+        numCells  = 0;
+        numVia    = 0;
+        numMoves  = 0;
+        states    = new long[INITIAL_NODES*stride];
+        parent    = new int[INITIAL_NODES];
+        firstVia  = new int[INITIAL_NODES];
+        viaCount  = new int[INITIAL_NODES];
+        firstMove = new int[INITIAL_NODES];
+        moveCount = new int[INITIAL_NODES];
+        via       = new int[INITIAL_NODES];
+        moves     = new int[INITIAL_NODES*4];
+        queues    = new long[INITIAL_CELLS][];
+        queueSize = new int[INITIAL_CELLS];
+    }
+
+    /**
+     * Store a new node for the board's position, list its pushes and queue its moves in its cell
+     *
+     * @param board the position (normalised)
+     * @param parentNode the node it was reached from (-1 for the root)
+     * @param numMade the number of pushes in made[] that reached it from there
+     * @param w the cost of the move that reached it (the cost of its advice; its pushes cost one more)
+     * @return the node index
+     */
+    private int addNode(Board board, int parentNode, int numMade, int w) {
+        if (numNodes == parent.length) {
+            int n = parent.length*2;
+            parent    = Arrays.copyOf(parent, n);
+            firstVia  = Arrays.copyOf(firstVia, n);
+            viaCount  = Arrays.copyOf(viaCount, n);
+            firstMove = Arrays.copyOf(firstMove, n);
+            moveCount = Arrays.copyOf(moveCount, n);
+        }
+        if ((long) (numNodes+1)*stride > states.length)
+            states = Arrays.copyOf(states, states.length*2);
+        if (numNodes > NODE_MASK)
+            throw new IllegalStateException("too many positions for the feature search");
+        int node = numNodes++;
+        board.snapshot(states, node*stride);
+        parent[node] = parentNode;
+        if (numVia + numMade > via.length)
+            via = Arrays.copyOf(via, Math.max(via.length*2, numVia + numMade));
+        System.arraycopy(made, 0, via, numVia, numMade);
+        firstVia[node] = numVia;
+        viaCount[node] = numMade;
+        numVia += numMade;
+        if (board.onTarget())
+            return node;
+
+        int numPushes = corrals.prune(board, candidates, Solver.listPushes(board, candidates));
+        if (numMoves + numPushes > moves.length)
+            moves = Arrays.copyOf(moves, moves.length*2 + numPushes);
+        System.arraycopy(candidates, 0, moves, numMoves, numPushes);
+        firstMove[node] = numMoves;
+        moveCount[node] = numPushes;
+        numMoves += numPushes;
+        if (numPushes == 0)
+            return node;   // a dead end: no push, so no advice either
+        int cell = cellOf(board);
+        for (int k=0; k<=areas.length; k++)
+            queuePush(cell, entry(w, node, k));
+        for (int i=0; i<numPushes; i++)
+            queuePush(cell, entry(w+1, node, areas.length+1+i));
+        return node;
+    }
+
+    /**
+     * Work out the pushes of a move out of a node into advice[]
+     *
+     * @param board the node's position (changed)
+     * @param node the node
+     * @param move below areas.length the packing advisor of that area, then the
+     *             connectivity advisor, then the node's pushes in order
+     * @return the number of pushes (0 if an advisor has no advice)
+     */
+    private int move(Board board, int node, int move) {
+        if (move > areas.length) {
+            advice[0] = moves[firstMove[node] + move - areas.length - 1];
+            return 1;
+        }
+        if (move == areas.length) {
+            // connectivity: the push leaving the fewest floor areas, if it is fewer than now
+            int fewest = regions(board);
+            int best   = -1;
+            for (int i=firstMove[node]; i<firstMove[node]+moveCount[node]; i++) {
+                int box = moves[i] >> 2;
+                int to  = board.neighbour(box, DIRECTIONS[moves[i] & 3]);
+                board.relocate(box, to);   // the actor does not count, so the box alone is moved
+                int n = regions(board);
+                board.relocate(to, box);
+                if (n < fewest) {
+                    fewest = n;
+                    best   = moves[i];
+                }
+            }
+            if (best < 0)
+                return 0;
+            advice[0] = best;
+            return 1;
+        }
+        // packing: the shortest path of a box to the area's next target
+        int[] order = areas[move];
+        int   p     = filled(board, order);
+        if (p == order.length)
+            return 0;
+        int target = order[p];
+        int n      = 0;
+        for (int box = board.nextBox(0); box >= 0; box = board.nextBox(box+1)) {
+            if ((areaOf[box] == move) && (rankOf[box] < p))
+                continue;   // already packed
+            int d = matching.getDistance(box, targetIndex[target]);
+            if (d >= 0)
+                boxOrder[n++] = ((long) d << 32) | box;
+        }
+        Arrays.sort(boxOrder, 0, n);
+        int best = 0;
+        for (int i=0; i<n; i++) {
+            if ((best > 0) && (best <= (int) (boxOrder[i] >>> 32)))
+                break;   // no box further away can have a shorter path
+            board.restore(states, node*stride);
+            int length = boxPath(board, (int) boxOrder[i], target);
+            if ((length > 0) && ((best == 0) || (length < best))) {
+                best = length;
+                System.arraycopy(path, 0, advice, 0, length);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Find the fewest pushes taking one box to a target with every other box left
+     * where it is, breadth first over the box square and normalised actor, leaving
+     * them in path[]. The search is cut off after MAX_PATH_STATES positions.
+     *
+     * @param board the position (normalised; changed)
+     * @param box the box square
+     * @param target the target square
+     * @return the number of pushes (0 if no path was found)
+     */
+    private int boxPath(Board board, int box, int target) {
+        pathSeen.clear();
+        board.snapshot(pathStates, 0);
+        pathSeen.put(pathKey(box, board.getActor()), 0);
+        pathBox[0]    = box;
+        pathParent[0] = -1;
+        int tail = 1;
+        for (int head=0; head<tail; head++) {
+            int at = pathBox[head];
+            board.restore(pathStates, head*stride);
+            int legal = 0;
+            for (Direction dir : DIRECTIONS)
+                if (board.canPushFrom(at, dir))
+                    legal |= 1 << dir.ordinal();
+            for (int d=0; d<4; d++) {
+                if ((legal & (1 << d)) == 0)
+                    continue;
+                board.restore(pathStates, head*stride);
+                int push = at*4 + d;
+                Solver.makePush(board, push);
+                int  to  = board.neighbour(at, DIRECTIONS[d]);
+                long key = pathKey(to, board.getActor());
+                if (pathSeen.get(key) >= 0)
+                    continue;
+                if (to == target) {
+                    int length = 1;
+                    for (int s = head; pathParent[s] >= 0; s = pathParent[s])
+                        length++;
+                    path[length-1] = push;
+                    for (int s = head, i = length-1; pathParent[s] >= 0; s = pathParent[s])
+                        path[--i] = pathPush[s];
+                    return length;
+                }
+                if (tail < MAX_PATH_STATES) {
+                    board.snapshot(pathStates, tail*stride);
+                    pathSeen.put(key, tail);
+                    pathBox[tail]    = to;
+                    pathParent[tail] = head;
+                    pathPush[tail]   = push;
+                    tail++;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private long pathKey(int box, int actor) {
+        return ((long) box*numSquares + actor + 1) * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * The cell of a position's features, made if it is new
+     *
+     * @return the cell index
+     */
+    private int cellOf(Board board) {
+        int packed = 0;
+        for (int[] order : areas)
+            packed += filled(board, order);
+        long key  = ((long) packed << 32) | regions(board);
+        int  cell = cells.get(key);
+        if (cell >= 0)
+            return cell;
+        if (numCells == queues.length) {
+            queues    = Arrays.copyOf(queues, numCells*2);
+            queueSize = Arrays.copyOf(queueSize, numCells*2);
+        }
+        cell = numCells++;
+        queues[cell] = new long[INITIAL_QUEUE];
+        cells.put(key, cell);
+        return cell;
+    }
+
+    /**
+     * How many targets of a packing order have boxes, counting from the first?
+     */
+    private static int filled(Board board, int[] order) {
+        int p = 0;
+        while ((p < order.length) && board.hasBox(order[p]))
+            p++;
+        return p;
+    }
+
+    /**
+     * Count the areas of floor the boxes split the level into
+     */
+    private int regions(Board board) {
+        if (++gen == 0) {
+            Arrays.fill(stamp, 0);
+            gen = 1;
+        }
+        int regions = 0;
+        for (int sq=0; sq<numSquares; sq++) {
+            if (!floor[sq] || (stamp[sq] == gen) || board.hasBox(sq))
+                continue;
+            regions++;
+            int tail = 0;
+            stamp[sq]     = gen;
+            queue[tail++] = sq;
+            for (int head=0; head<tail; head++)
+                for (Direction dir : DIRECTIONS) {
+                    int next = board.neighbour(queue[head], dir);
+                    if ((next >= 0) && floor[next] && (stamp[next] != gen) && !board.hasBox(next)) {
+                        stamp[next]   = gen;
+                        queue[tail++] = next;
+                    }
+                }
+        }
+        return regions;
+    }
+
+    /**
+     * Work out the packing order backwards from the solved position: of the targets
+     * still filled, the last to be filled is the one whose box can be pulled to a
+     * box's starting square in the fewest pulls (with the other filled targets
+     * fixed); take it away and repeat. The targets of a goal room are then put in
+     * the room's fill order, which the goal-room macros follow.
+     *
+     * @param start the starting position
+     * @return the targets, first filled first
+     */
+    private int[] packingOrder(Board start) {
+        ArrayList<Integer> filled = new ArrayList<>();
+        boolean[]          isStart = new boolean[numSquares];
+        for (int sq=0; sq<numSquares; sq++) {
+            if (start.isTarget(sq))
+                filled.add(sq);
+            if (start.hasBox(sq))
+                isStart[sq] = true;
+        }
+        int[] order = new int[filled.size()];
+        Board b     = start.fork();
+        for (int k=order.length-1; k>=0; k--) {
+            int best  = filled.get(0);   // if no box can be pulled out, keep the square order
+            int least = Integer.MAX_VALUE;
+            for (int t : filled) {
+                int d = pulls(b, filled, t, isStart);
+                if (d < least) {
+                    least = d;
+                    best  = t;
+                }
+            }
+            order[k] = best;
+            filled.remove(Integer.valueOf(best));
+        }
+        if (analysis != null)
+            for (int room=0; room<analysis.getNumRooms(); room++) {
+                int[]     fill   = analysis.getFillOrder(room);
+                boolean[] inRoom = new boolean[numSquares];
+                for (int t : fill)
+                    inRoom[t] = true;
+                for (int k=0, i=0; k<order.length; k++)
+                    if (inRoom[order[k]])
+                        order[k] = fill[i++];
+            }
+        return order;
+    }
+
+    /**
+     * The fewest pulls taking the box on a filled target to a box's starting
+     * square, with boxes on the other filled targets (Integer.MAX_VALUE if there is no way)
+     */
+    private int pulls(Board b, List<Integer> filled, int target, boolean[] isStart) {
+        int    words  = b.getPackedLength() - 1;
+        long[] packed = new long[b.getPackedLength()];
+        HashMap<Long, Integer> dist = new HashMap<>();
+        ArrayDeque<Long>       todo = new ArrayDeque<>();
+        for (Direction dir : DIRECTIONS) {
+            int actor = b.neighbour(target, dir);
+            if ((actor < 0) || b.isWall(actor) || filled.contains(actor))
+                continue;
+            Arrays.fill(packed, 0L);
+            for (int f : filled)
+                Board.set(packed, f);
+            packed[words] = actor;
+            b.unpack(packed, 0);
+            long key = ((long) target << 32) | b.normalizedActor();
+            if (dist.putIfAbsent(key, 0) == null)
+                todo.add(key);
+        }
+        while (!todo.isEmpty()) {
+            long key = todo.poll();
+            int  box = (int) (key >>> 32);
+            int  d   = dist.get(key);
+            if ((box != target) && isStart[box])
+                return d;
+            Arrays.fill(packed, 0L);
+            for (int f : filled)
+                if (f != target)
+                    Board.set(packed, f);
+            Board.set(packed, box);
+            packed[words] = (int) key;
+            b.unpack(packed, 0);
+            for (Direction dir : DIRECTIONS) {
+                if (!b.canPullFrom(box, dir))
+                    continue;
+                b.pull(box, dir);
+                long next = ((long) b.neighbour(box, dir) << 32) | b.normalizedActor();
+                if (dist.putIfAbsent(next, d+1) == null)
+                    todo.add(next);
+                b.unpack(packed, 0);
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Split a packing order by connected area of targets, each area keeping its part of the order
+     *
+     * @return one order per area
+     */
+    private int[][] areas(Board start, int[] order) {
+        int[] area = new int[numSquares];
+        Arrays.fill(area, -1);
+        int numAreas = 0;
+        for (int sq=0; sq<numSquares; sq++) {
+            if (!start.isTarget(sq) || (area[sq] >= 0))
+                continue;
+            int tail = 0;
+            area[sq]      = numAreas;
+            queue[tail++] = sq;
+            for (int head=0; head<tail; head++)
+                for (Direction dir : DIRECTIONS) {
+                    int next = start.neighbour(queue[head], dir);
+                    if ((next >= 0) && start.isTarget(next) && (area[next] < 0)) {
+                        area[next]    = numAreas;
+                        queue[tail++] = next;
+                    }
+                }
+            numAreas++;
+        }
+        int[][] areas = new int[numAreas][];
+        for (int k=0; k<numAreas; k++) {
+            int n = 0;
+            for (int t : order)
+                if (area[t] == k)
+                    n++;
+            areas[k] = new int[n];
+            n = 0;
+            for (int t : order)
+                if (area[t] == k)
+                    areas[k][n++] = t;
+        }
+        return areas;
+    }
+
+    /**
+     * Does a push just made complete a deadlock pattern?
+     */
+    private boolean isPatternDeadlock(Board board, int push) {
+        return (matcher != null) && matcher.isDeadlocked(board, board.neighbour(push >> 2, DIRECTIONS[push & 3]));
+    }
+
+    /**
+     * Pack a queue entry: lowest cost first, then the oldest node, then the move
+     */
+    private static long entry(int w, int node, int move) {
+        if (w > MAX_WEIGHT)
+            throw new IllegalStateException("search too deep for the feature search's queues");
+        return ((long) w << (MOVE_BITS + NODE_BITS)) | ((long) node << MOVE_BITS) | move;
+    }
+
+    private void queuePush(int cell, long entry) {
+        long[] heap = queues[cell];
+        if (queueSize[cell] == heap.length)
+            queues[cell] = heap = Arrays.copyOf(heap, heap.length*2);
+        int i = queueSize[cell]++;
+        while (i > 0) {
+            int up = (i - 1) >>> 1;
+            if (heap[up] <= entry)
+                break;
+            heap[i] = heap[up];
+            i = up;
+        }
+        heap[i] = entry;
+    }
+
+    private long queuePop(int cell) {
+        long[] heap = queues[cell];
+        long   top  = heap[0];
+        int    size = --queueSize[cell];
+        long   last = heap[size];
+        int    i    = 0;
+        while (true) {
+            int child = 2*i + 1;
+            if (child >= size)
+                break;
+            if ((child+1 < size) && (heap[child+1] < heap[child]))
+                child++;
+            if (heap[child] >= last)
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        if (size > 0)
+            heap[i] = last;
+        return top;
+    }
+
+    private static final Direction[] DIRECTIONS      = Direction.values();
+    private static final int         MOVE_BITS       = 12;
+    private static final int         NODE_BITS       = 31;
+    private static final long        MOVE_MASK       = (1L << MOVE_BITS) - 1;
+    private static final long        NODE_MASK       = (1L << NODE_BITS) - 1;
+    private static final int         MAX_WEIGHT      = (1 << (63 - MOVE_BITS - NODE_BITS)) - 1;
+    private static final int         MAX_PATH_STATES = 1 << 11;   // positions searched for one box path
+    private static final int         INITIAL_NODES   = 1 << 12;
+    private static final int         INITIAL_CELLS   = 1 << 6;
+    private static final int         INITIAL_QUEUE   = 1 << 4;
+
+    private long                     nodeLimit   = 0;
+    private long                     timeLimit   = 0;
+    private boolean                  macroPushes = true;
+    private DeadlockPatterns         patterns    = new DeadlockPatterns();
+    private volatile boolean         cancelled   = false;
+
+    // the analysis of the level being solved
+    private int                      numSquares  = 0;
+    private MatchingHeuristic        matching    = null;
+    private CorralPruner             corrals     = null;
+    private DeadlockPatterns.Matcher matcher     = null;
+    private LevelAnalysis            analysis    = null;
+    private int[]                    macro       = null;   // the macro pushes made after a push
+    private boolean[]                floor       = null;   // reachable by the actor, ignoring boxes
+    private int[]                    targetIndex = null;   // of each target square, for the distance tables
+    private int[][]                  areas       = null;   // the packing order of each target area
+    private int[]                    areaOf      = null;   // the area of each target square (-1 elsewhere)
+    private int[]                    rankOf      = null;   // its place in the area's packing order
+
+    // scratch space
+    private int[]                    candidates  = null;
+    private long[]                   boxOrder    = null;   // push distance and square of each box, to try in order
+    private int[]                    advice      = null;   // the pushes of the move being made
+    private int[]                    made        = null;   // ... with the macro pushes after them
+    private int[]                    path        = null;   // the last box path found
+    private long[]                   pathStates  = null;   // the box path search's positions
+    private int[]                    pathBox     = null;
+    private int[]                    pathParent  = null;
+    private int[]                    pathPush    = null;
+    private TranspositionTable       pathSeen    = null;
+    private int[]                    stamp       = null;
+    private int[]                    queue       = null;
+    private int                      gen         = 0;
+
+    // the search nodes, one entry per node in each array, and the pushes they list
+    private TranspositionTable       table       = null;
+    private int                      stride      = 0;
+    private long[]                   states      = null;
+    private int[]                    parent      = null;
+    private int[]                    firstVia    = null;   // where the pushes from the parent start in via[]
+    private int[]                    viaCount    = null;
+    private int[]                    firstMove   = null;   // where the node's legal pushes start in moves[]
+    private int[]                    moveCount   = null;
+    private int                      numNodes    = 0;
+    private int[]                    via         = null;
+    private int                      numVia      = 0;
+    private int[]                    moves       = null;
+    private int                      numMoves    = 0;
+
+    // the cells of the feature space, each with a queue of the moves out of its nodes
+    private TranspositionTable       cells       = null;   // by packed count and floor areas
+    private long[][]                 queues      = null;   // binary heaps of entry() values
+    private int[]                    queueSize   = null;
+    private int                      numCells    = 0;
+}
@@ -0,0 +1,198 @@
+
+import java.util.*;
+
+/**
+ * Freeze-deadlock detection for a Sokoban board.
+ *
+ * Answers Cell.isMoveableBoxLocation: could a box on a square still move
+ * sideways, allowing for neighbouring boxes that might themselves move out of
+ * the way? The recursion of the original is run on an explicit stack of frames
+ * held in int arrays, and the visited set is a generation-stamped int array, so
+ * a query allocates nothing. Each detector belongs to one board (and one thread).
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class FreezeDetector {
+    /**
+     * Constructor
+     *
+     * @param board the board to examine (cannot be null)
+     */
+    public FreezeDetector(Board board) {
+        if (board == null)
+            throw new IllegalArgumentException("board cannot be null");
+        this.board = board;
+        int depth  = Math.min(board.getNumSquares(), MAX_DEPTH) + 1;
+        stamps     = new int[board.getNumSquares()];
+        frameLeft  = new int[depth];
+        frameRight = new int[depth];
+        framePc    = new int[depth];
+        frameSeen  = new int[depth];
+        frameDir   = new Direction[depth];
+    }
+
+    /**
+     * Could a box at this location move perpendicular to the indicated direction?
+     * The location does not currently have to contain a box.
+     * Origin is the square the original box will move from and is treated as empty.
+     * Chains of boxes deeper than MAX_DEPTH are assumed to be able to move.
+     *
+     * @param loc the square to check
+     * @param origin where the original box will move from
+     * @param taboo a square assumed to have been visited already (-1 for none)
+     * @param dir the direction to check
+     * @return if a box at this location could move perpendicular to the indicated direction?
+     */
+    public boolean isMoveableBoxLocation(int loc, int origin, int taboo, Direction dir) {
+        if (++gen == 0) {
+            Arrays.fill(stamps, 0);
+            gen = 1;
+        }
+        if (taboo >= 0)
+            stamps[taboo] = gen;
+        this.origin = origin;
+        int     top    = 0;
+        boolean result = false;
+        // a frame is created by push(), then resumed at framePc until it returns a result
+        if (!push(top, loc, dir))
+            return false;
+        while (true) {
+            int f     = top;
+            int left  = frameLeft[f];
+            int right = frameRight[f];
+            boolean seenLeft  = (frameSeen[f] & LEFT) != 0;
+            boolean seenRight = (frameSeen[f] & RIGHT) != 0;
+            int pc = framePc[f];
+            int call = -1;  // square to recurse into, if any
+            Direction callDir = null;
+            boolean done = false;
+            while (call < 0 && !done) {
+                switch (pc) {
+                case 0: // could move left: is the left side free (or a box that can move)?
+                    if ((left < 0) || seenLeft)
+                        pc = 4;
+                    else if (open(left) && board.isWallSafe(left))
+                        pc = 2;
+                    else if (board.hasBox(left)) {
+                        call = left; callDir = frameDir[f].left(); pc = 1;
+                    } else
+                        pc = 4;
+                    break;
+                case 1:
+                    pc = result ? 2 : 4;
+                    break;
+                case 2: // ... and the right side free for the actor (or a box that can move)?
+                    if ((right < 0) || seenRight)
+                        pc = 4;
+                    else if (open(right)) {
+                        result = true; done = true;
+                    } else if (board.hasBox(right)) {
+                        call = right; callDir = frameDir[f].right(); pc = 3;
+                    } else
+                        pc = 4;
+                    break;
+                case 3:
+                    if (result)
+                        done = true;
+                    else
+                        pc = 4;
+                    break;
+                case 4: // could move right: is the right side free (or a box that can move)?
+                    if ((right < 0) || seenRight) {
+                        result = false; done = true;
+                    } else if (open(right) && board.isWallSafe(right))
+                        pc = 6;
+                    else if (board.hasBox(right)) {
+                        call = right; callDir = frameDir[f].right(); pc = 5;
+                    } else {
+                        result = false; done = true;
+                    }
+                    break;
+                case 5:
+                    if (result)
+                        pc = 6;
+                    else
+                        done = true;
+                    break;
+                case 6: // ... and the left side free for the actor (or a box that can move)?
+                    if ((left < 0) || seenLeft) {
+                        result = false; done = true;
+                    } else if (open(left)) {
+                        result = true; done = true;
+                    } else if (board.hasBox(left)) {
+                        call = left; callDir = frameDir[f].left(); pc = 7;
+                    } else {
+                        result = false; done = true;
+                    }
+                    break;
+                default: // 7: the result of the left box is the answer
+                    done = true;
+                    break;
+                }
+            }
+            if (done) {
+                if (top == 0)
+                    return result;
+                top--;
+                continue;
+            }
+            framePc[f] = pc;
+            if (top+1 == frameDir.length) {
+                result = true; // too deep to follow: assume the chain can move
+                continue;
+            }
+            if (!push(top+1, call, callDir)) {
+                result = false; // already visited: a loop
+                continue;
+            }
+            top++;
+        }
+    }
+
+    /**
+     * Set up a new frame, or report a loop if the square has already been visited
+     *
+     * @param f the frame index
+     * @param loc the square to check
+     * @param dir the direction to check
+     * @return was a frame created? (false if the square was already visited)
+     */
+    private boolean push(int f, int loc, Direction dir) {
+        if (stamps[loc] == gen)
+            return false;
+        stamps[loc] = gen;
+        int left  = board.neighbour(loc, dir.left());
+        int right = board.neighbour(loc, dir.right());
+        frameDir[f]   = dir;
+        frameLeft[f]  = left;
+        frameRight[f] = right;
+        frameSeen[f]  = (((left >= 0) && (stamps[left] == gen)) ? LEFT : 0) |
+                        (((right >= 0) && (stamps[right] == gen)) ? RIGHT : 0);
+        framePc[f]    = 0;
+        return true;
+    }
+
+    /**
+     * Is a square free for a box to move into, treating origin as empty and ignoring the actor?
+     */
+    private boolean open(int sq) {
+        return (sq == origin) || (!board.isWall(sq) && !board.hasBox(sq));
+    }
+
+    /** The deepest chain of boxes followed before assuming it can move */
+    public static final int MAX_DEPTH = 256;
+
+    private static final int LEFT  = 1;
+    private static final int RIGHT = 2;
+
+    private final Board       board;
+    private final int[]       stamps;     // gen marks the squares visited by the current query
+    private int               gen    = 0;
+    private int               origin = -1;
+    private final int[]       frameLeft;
+    private final int[]       frameRight;
+    private final int[]       framePc;
+    private final int[]       frameSeen;
+    private final Direction[] frameDir;
+}
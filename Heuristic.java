@@ -0,0 +1,20 @@
+
+/**
+ * A lower bound on the number of pushes needed to solve a Sokoban position,
+ * used to guide a Solver. An admissible heuristic never overestimates.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public interface Heuristic {
+    /** The estimate for a position that can never be solved */
+    public static final int DEADLOCK = Integer.MAX_VALUE;
+
+    /**
+     * Estimate the number of pushes still needed
+     *
+     * @param board the position (must have the layout the heuristic was built for)
+     * @return a lower bound on the pushes needed (or DEADLOCK if there is no solution)
+     */
+    public int estimate(Board board);
+}
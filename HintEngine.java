@@ -0,0 +1,386 @@
+
+import javax.swing.*;
+import java.util.*;
+
+/**
+ * A hint engine for a game in progress: after every move it works out, on a
+ * background thread, whether the position can still be solved and, if it can,
+ * the next move of a solution.
+ *
+ * update() is called on the event dispatch thread after each move. It only
+ * forks the position, cancels any search still running for an older position
+ * and wakes the worker, so it never holds up the input handler; several
+ * quick moves collapse into one search of the latest position. The worker
+ * runs a Solver with a time limit and hands its verdict back to the event
+ * dispatch thread, where results for positions the player has already left
+ * are dropped.
+ *
+ * Results are reused from one position to the next. The pushes of the last
+ * solution are kept with the hash of the position before each one, so while
+ * the player follows the hint (or walks about, or undoes back onto the plan)
+ * the next move comes straight from the plan without a search. Positions
+ * proven unsolvable are remembered, and the Solver's heuristic and learned
+ * deadlock patterns are shared by every search, so each search starts warm.
+ * Simple deadlocks are reported from the heuristic alone before any search.
+ * Searches make macro pushes for speed, but since those may miss solutions a
+ * position is only declared deadlocked (and remembered) when a search without
+ * them also fails.
+ *
+ * An engine is for one level layout; each update must come from a puzzle
+ * with the same walls and targets.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class HintEngine {
+    /**
+     * What the engine knows about the current position
+     */
+    public enum Verdict {
+        /** all the boxes are on target */
+        SOLVED,
+        /** a solution has been found: see getNextMove() */
+        SOLVABLE,
+        /** the position cannot be solved */
+        DEADLOCKED,
+        /** no solution was found within the time limit */
+        UNKNOWN,
+        /** the position is still being searched */
+        SEARCHING
+    }
+
+    /**
+     * Constructor: starts the worker thread
+     *
+     * @param puzzle a puzzle with the level layout to give hints for (cannot be null)
+     * @param listener the listener told of every new hint (cannot be null)
+     */
+    public HintEngine(Sokoban puzzle, HintListener listener) {
+        if (puzzle == null)
+            throw new IllegalArgumentException("puzzle cannot be null");
+        if (listener == null)
+            throw new IllegalArgumentException("listener cannot be null");
+        this.listener = listener;
+        Board layout  = puzzle.fork();
+        heuristic     = new MatchingHeuristic(layout);
+        worker        = new Thread(this::run, "HintEngine");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    /**
+     * Limit the time spent searching each position
+     *
+     * @param timeLimit the maximum time in milliseconds (0 for no limit)
+     */
+    public void setTimeLimit(long timeLimit) {
+        if (timeLimit < 0)
+            throw new IllegalArgumentException("timeLimit cannot be negative");
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * Start working on the puzzle's current position, abandoning the last one.
+     * Call on the event dispatch thread; it returns at once.
+     *
+     * @param puzzle the puzzle (cannot be null)
+     */
+    public void update(Sokoban puzzle) {
+        if (puzzle == null)
+            throw new IllegalArgumentException("puzzle cannot be null");
+        Board position = puzzle.fork();
+        synchronized (this) {
+            if (stopped)
+                return;
+            generation++;
+            pending = position;
+            if (running != null)
+                running.cancel();
+            notifyAll();
+        }
+        show(position.onTarget() ? Verdict.SOLVED : Verdict.SEARCHING, null, 0);
+    }
+
+    /**
+     * Stop the worker thread (the engine cannot be used again)
+     */
+    public synchronized void shutdown() {
+        stopped = true;
+        pending = null;
+        if (running != null)
+            running.cancel();
+        notifyAll();
+    }
+
+    /**
+     * Gets the verdict on the current position
+     *
+     * @return the verdict
+     */
+    public Verdict getVerdict() {
+        return verdict;
+    }
+
+    /**
+     * Gets the next move of a solution from the current position
+     *
+     * @return the next move (null unless the verdict is SOLVABLE)
+     */
+    public Direction getNextMove() {
+        return nextMove;
+    }
+
+    /**
+     * Gets the number of pushes left in the solution from the current position
+     *
+     * @return the number of pushes (0 unless the verdict is SOLVABLE)
+     */
+    public int getPushesLeft() {
+        return pushesLeft;
+    }
+
+    /**
+     * Gets the number of searches run so far (positions answered from earlier
+     * results are not counted)
+     *
+     * @return the number of searches
+     */
+    public long getNumSearches() {
+        return searches;
+    }
+
+    /**
+     * A String representation of the hint, for a status area
+     *
+     * @return the String representation (empty when solved)
+     */
+    @Override
+    public String toString() {
+        switch (verdict) {
+            case SOLVABLE:
+                return "Hint: move "+nextMove+" ("+pushesLeft+" pushes to go)";
+            case DEADLOCKED:
+                return "Deadlocked: this position cannot be solved, undo some moves";
+            case UNKNOWN:
+                return "Hint: no solution found in time";
+            case SEARCHING:
+                return "Hint: thinking...";
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * The worker thread: search each new position in turn until shut down
+     */
+    private void run() {
+        while (true) {
+            Board  position;
+            long   gen;
+            Solver solver = new Solver();
+            synchronized (this) {
+                while ((pending == null) && !stopped) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (stopped)
+                    return;
+                position = pending;
+                pending  = null;
+                gen      = generation;
+                running  = solver;
+            }
+            try {
+                examine(position, solver, gen);
+            } catch (RuntimeException e) {
+                Sokoban.trace("HintEngine: "+e);
+                publish(gen, Verdict.UNKNOWN, null, 0);
+            }
+            synchronized (this) {
+                running = null;
+            }
+        }
+    }
+
+    /**
+     * Work out the verdict on a position, from earlier results if possible and
+     * otherwise by searching it, and publish it
+     *
+     * @param position the position
+     * @param solver a new solver for this position only
+     * @param gen the generation of the position
+     */
+    private void examine(Board position, Solver solver, long gen) {
+        if (position.onTarget()) {
+            publish(gen, Verdict.SOLVED, null, 0);
+            return;
+        }
+        long key = position.hash();
+        if (dead.contains(key)) {
+            publish(gen, Verdict.DEADLOCKED, null, 0);
+            return;
+        }
+        Integer step = planIndex.get(key);
+        if (step != null) {
+            Direction next = nextMove(position, step);
+            if (next != null) {
+                publish(gen, Verdict.SOLVABLE, next, planBoxes.length - step);
+                return;
+            }
+        }
+        if (heuristic.estimate(position) == Heuristic.DEADLOCK) {
+            remember(key);
+            publish(gen, Verdict.DEADLOCKED, null, 0);
+            return;
+        }
+        searches++;
+        Solution solution = search(position, solver, true);
+        if (solution.getStatus() == Solution.Status.UNSOLVABLE) {
+            // goal-room macros can skip the only way through, so a macro search
+            // running dry proves nothing: only a search without them is believed
+            if (gen != generation)
+                return;
+            solution = search(position, solver, false);
+        }
+        switch (solution.getStatus()) {
+            case SOLVED:
+                plan(position, solution.getMoves());
+                publish(gen, Verdict.SOLVABLE, solution.getMoves().get(0), planBoxes.length);
+                break;
+            case UNSOLVABLE:
+                remember(key);
+                publish(gen, Verdict.DEADLOCKED, null, 0);
+                break;
+            case LIMIT:
+                publish(gen, Verdict.UNKNOWN, null, 0);
+                break;
+            default:
+                break; // cancelled: a newer position is waiting
+        }
+    }
+
+    /**
+     * Search a position with the engine's shared heuristic and deadlock patterns
+     *
+     * @param position the position
+     * @param solver the solver for this position
+     * @param macroPushes make macro pushes?
+     * @return the solution
+     */
+    private Solution search(Board position, Solver solver, boolean macroPushes) {
+        solver.setHeuristic(heuristic);
+        solver.setDeadlockPatterns(patterns);
+        solver.setMacroPushes(macroPushes);
+        solver.setTimeLimit(timeLimit);
+        Solution solution = solver.solve(position);
+        Sokoban.trace("HintEngine: "+solution);
+        return solution;
+    }
+
+    /**
+     * Keep the pushes of a solution, keyed by the hash of the position before each
+     *
+     * @param position the position solved (not changed)
+     * @param moves the moves that solve it
+     */
+    private void plan(Board position, List<Direction> moves) {
+        Board board = position.fork();
+        ArrayList<Integer>   boxes = new ArrayList<>();
+        ArrayList<Direction> dirs  = new ArrayList<>();
+        planIndex.clear();
+        for (Direction dir : moves) {
+            int next = board.neighbour(board.getActor(), dir);
+            if (board.hasBox(next)) {
+                planIndex.put(board.hash(), boxes.size());
+                boxes.add(next);
+                dirs.add(dir);
+            }
+            board.move(dir);
+        }
+        planBoxes = new int[boxes.size()];
+        planDirs  = dirs.toArray(new Direction[dirs.size()]);
+        for (int i=0; i<planBoxes.length; i++)
+            planBoxes[i] = boxes.get(i);
+    }
+
+    /**
+     * The next move towards a push of the plan
+     *
+     * @param position the position before the push
+     * @param step the index of the push in the plan
+     * @return the first step of the walk to the push, or the push itself (null if it cannot be reached)
+     */
+    private Direction nextMove(Board position, int step) {
+        int behind = position.neighbour(planBoxes[step], planDirs[step].reverse());
+        if ((behind < 0) || !position.hasBox(planBoxes[step]))
+            return null;
+        List<Direction> walk = position.pathTo(behind);
+        if (walk == null)
+            return null;
+        return walk.isEmpty() ? planDirs[step] : walk.get(0);
+    }
+
+    /**
+     * Remember a position that cannot be solved
+     *
+     * @param key the position hash
+     */
+    private void remember(long key) {
+        if (dead.size() >= MAX_DEAD)
+            dead.clear();
+        dead.add(key);
+    }
+
+    /**
+     * Hand a verdict to the event dispatch thread, where it is shown unless
+     * the player has moved on since
+     */
+    private void publish(long gen, Verdict v, Direction move, int left) {
+        SwingUtilities.invokeLater(() -> {
+            if (gen == generation)
+                show(v, move, left);
+        });
+    }
+
+    /**
+     * Set the current hint and tell the listener (on the event dispatch thread)
+     */
+    private void show(Verdict v, Direction move, int left) {
+        if ((v == verdict) && (move == nextMove) && (left == pushesLeft))
+            return;
+        verdict    = v;
+        nextMove   = move;
+        pushesLeft = left;
+        listener.hintChanged(this);
+    }
+
+    private static final int MAX_DEAD = 1 << 16;
+
+    private final HintListener     listener;
+    private final Thread           worker;
+    private volatile long          timeLimit  = 10000;
+
+    // shared with the worker thread (guarded by this)
+    private Board                  pending    = null;     // the latest position, not yet taken
+    private Solver                 running    = null;     // the search in progress
+    private volatile long          generation = 0;        // bumped by every update
+    private boolean                stopped    = false;
+
+    // the worker's results, kept from one position to the next
+    private final Heuristic        heuristic;
+    private final DeadlockPatterns patterns   = new DeadlockPatterns();
+    private final HashMap<Long, Integer> planIndex = new HashMap<>();
+    private final HashSet<Long>    dead       = new HashSet<>();
+    private int[]                  planBoxes  = new int[0];
+    private Direction[]            planDirs   = new Direction[0];
+    private volatile long          searches   = 0;
+
+    // the current hint (event dispatch thread only)
+    private Verdict                verdict    = Verdict.SEARCHING;
+    private Direction              nextMove   = null;
+    private int                    pushesLeft = 0;
+}
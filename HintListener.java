@@ -0,0 +1,15 @@
+/**
+ * A listener for new hints from a HintEngine.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public interface HintListener {
+    /**
+     * Called on the event dispatch thread whenever the engine's verdict on the
+     * current position changes
+     *
+     * @param engine the engine with the new hint
+     */
+    public void hintChanged(HintEngine engine);
+}
@@ -0,0 +1,142 @@
+
+/**
+ * An undo/redo journal for a Sokoban puzzle.
+ *
+ * Each entry is a compact delta of square indices: where the actor moved
+ * from and to, and where a pushed box moved from and to (-1 if no box was
+ * pushed). Entries are packed four ints at a time into one growing array.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class Journal {
+    /**
+     * Default constructor
+     */
+    public Journal() {
+        entries = new int[INITIAL_CAPACITY*WIDTH];
+    }
+
+    /**
+     * Record a move, discarding anything that could have been redone
+     *
+     * @param actorFrom where the actor moved from
+     * @param actorTo where the actor moved to
+     * @param boxFrom where the pushed box moved from (-1 if none)
+     * @param boxTo where the pushed box moved to (-1 if none)
+     */
+    public void record(int actorFrom, int actorTo, int boxFrom, int boxTo) {
+        if (top*WIDTH == entries.length) {
+            int[] grown = new int[entries.length*2];
+            System.arraycopy(entries, 0, grown, 0, entries.length);
+            entries = grown;
+        }
+        int i = top*WIDTH;
+        entries[i]   = actorFrom;
+        entries[i+1] = actorTo;
+        entries[i+2] = boxFrom;
+        entries[i+3] = boxTo;
+        top++;
+        size = top;
+    }
+
+    /**
+     * Is there a move to undo?
+     *
+     * @return is there a move to undo?
+     */
+    public boolean canUndo() {
+        return top > 0;
+    }
+
+    /**
+     * Is there a move to redo?
+     *
+     * @return is there a move to redo?
+     */
+    public boolean canRedo() {
+        return top < size;
+    }
+
+    /**
+     * Step back over the last move; its fields can then be read with the getters
+     */
+    public void undo() {
+        if (!canUndo())
+            throw new IllegalStateException("nothing to undo");
+        top--;
+    }
+
+    /**
+     * Step forward over the next move; its fields can then be read with the getters
+     */
+    public void redo() {
+        if (!canRedo())
+            throw new IllegalStateException("nothing to redo");
+        top++;
+    }
+
+    /**
+     * Gets the number of moves that can currently be undone
+     *
+     * @return the number of moves made
+     */
+    public int getNumMoves() {
+        return top;
+    }
+
+    /**
+     * Where the actor moved from in a given entry
+     *
+     * @param entry the entry (0 is the first move)
+     * @return the square the actor moved from
+     */
+    public int getActorFrom(int entry) {
+        return entries[entry*WIDTH];
+    }
+
+    /**
+     * Where the actor moved to in a given entry
+     *
+     * @param entry the entry (0 is the first move)
+     * @return the square the actor moved to
+     */
+    public int getActorTo(int entry) {
+        return entries[entry*WIDTH+1];
+    }
+
+    /**
+     * Where the pushed box moved from in a given entry
+     *
+     * @param entry the entry (0 is the first move)
+     * @return the square the box moved from (-1 if no box was pushed)
+     */
+    public int getBoxFrom(int entry) {
+        return entries[entry*WIDTH+2];
+    }
+
+    /**
+     * Where the pushed box moved to in a given entry
+     *
+     * @param entry the entry (0 is the first move)
+     * @return the square the box moved to (-1 if no box was pushed)
+     */
+    public int getBoxTo(int entry) {
+        return entries[entry*WIDTH+3];
+    }
+
+    /**
+     * Forget all moves
+     */
+    public void clear() {
+        top  = 0;
+        size = 0;
+    }
+
+    private static final int WIDTH            = 4;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] entries = null;
+    private int   top     = 0;   // number of moves made (next entry to write)
+    private int   size    = 0;   // number of moves recorded, including those undone
+}
@@ -0,0 +1,456 @@
+
+import java.util.*;
+
+/**
+ * Static analysis of a level's wall layout, for macro pushes in the solver.
+ *
+ * Finds three things, once per level:
+ *
+ *   tunnels       floor squares with walls on both sides across a direction, so a
+ *                 box pushed along one can only go on or come back
+ *   articulation  floor squares that split the floor in two when blocked
+ *   goal rooms    areas of floor holding targets (and no boxes at the start) that
+ *                 are entered only through one articulation square, the entrance
+ *
+ * A macro push is a push followed by the pushes that are forced after it. A box
+ * pushed into a tunnel, with the actor in the tunnel behind it, is pushed on
+ * while the squares ahead are tunnel too, free and not targets: turning back
+ * only undoes the push. A box pushed into a goal room's entrance is taken
+ * straight to the next target of the room's fill order, a precomputed order in
+ * which every target can still be reached with the earlier ones filled. This
+ * is only done while the room holds exactly the boxes of that order so far. The
+ * goal-room macro keeps every level solvable that has a solution filling rooms
+ * in order, but may cost push-optimality.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class LevelAnalysis {
+    /**
+     * Constructor
+     *
+     * @param board a board with the layout, in its starting position (cannot be null)
+     */
+    public LevelAnalysis(Board board) {
+        if (board == null)
+            throw new IllegalArgumentException("board cannot be null");
+        this.board = board;
+        numSquares = board.getNumSquares();
+        floor      = new boolean[numSquares];
+        int[] queue = new int[numSquares];
+        int   count = flood(board.getActor(), -1, floor, queue);
+        tunnel      = new boolean[numSquares*4];
+        articulation = new boolean[numSquares];
+        for (int sq=0; sq<numSquares; sq++) {
+            if (!floor[sq])
+                continue;
+            for (Direction dir : DIRECTIONS)
+                tunnel[sq*4 + dir.ordinal()] = blocked(board.neighbour(sq, dir.left())) && blocked(board.neighbour(sq, dir.right()));
+        }
+
+        // a square is an articulation square if the floor without it is not all reachable from a neighbour
+        boolean[] part = new boolean[numSquares];
+        ArrayList<Room> candidates = new ArrayList<>();
+        for (int e=0; e<numSquares; e++) {
+            if (!floor[e])
+                continue;
+            for (Direction dir : DIRECTIONS) {
+                int in = board.neighbour(e, dir);
+                if ((in < 0) || !floor[in])
+                    continue;
+                Arrays.fill(part, false);
+                if (flood(in, e, part, queue) == count-1)
+                    break;  // everything else hangs together
+                articulation[e] = true;
+                Room room = room(e, dir, part);
+                if (room != null)
+                    candidates.add(room);
+            }
+        }
+        // of rooms with the same targets (a room and the corridors leading to it) keep the innermost
+        ArrayList<Room> kept = new ArrayList<>();
+        for (Room r : candidates) {
+            boolean inner = true;
+            for (Room other : candidates)
+                if ((other != r) && r.contains(other.entrance) && Arrays.equals(r.targets, other.targets))
+                    inner = false;
+            if (inner && fillOrder(r))
+                kept.add(r);
+        }
+        rooms  = kept.toArray(new Room[0]);
+        roomAt = new Room[numSquares];
+        for (Room r : rooms)
+            roomAt[r.entrance] = r;
+        int longest = 0;
+        for (Room r : rooms)
+            for (int[] path : r.paths)
+                longest = Math.max(longest, path.length);
+        maxMacro = numSquares + longest;
+        Sokoban.trace("level analysis: "+rooms.length+" goal rooms");
+    }
+
+    /**
+     * Is a square part of a tunnel along a direction (walls on both sides across it)?
+     *
+     * @param sq the square index
+     * @param dir the direction along the tunnel
+     * @return is it a tunnel square for pushes in that direction?
+     */
+    public boolean isTunnel(int sq, Direction dir) {
+        return tunnel[sq*4 + dir.ordinal()];
+    }
+
+    /**
+     * Would a box (or anything) on a square split the floor in two?
+     *
+     * @param sq the square index
+     * @return is it an articulation square?
+     */
+    public boolean isArticulation(int sq) {
+        return articulation[sq];
+    }
+
+    /**
+     * Gets the number of goal rooms found
+     *
+     * @return the number of goal rooms
+     */
+    public int getNumRooms() {
+        return rooms.length;
+    }
+
+    /**
+     * Gets the entrance square of a goal room
+     *
+     * @param room the room index
+     * @return the entrance square
+     */
+    public int getRoomEntrance(int room) {
+        return rooms[room].entrance;
+    }
+
+    /**
+     * Gets the order in which a goal room's targets are filled
+     *
+     * @param room the room index
+     * @return the target squares, first filled first
+     */
+    public int[] getFillOrder(int room) {
+        return rooms[room].order.clone();
+    }
+
+    /**
+     * Gets the most pushes extend() can add, for sizing its array
+     *
+     * @return the longest macro
+     */
+    public int getMaxMacroLength() {
+        return maxMacro;
+    }
+
+    /**
+     * Make the pushes forced after a push just made (by Solver.makePush), and normalise the actor
+     *
+     * @param board the position after the push
+     * @param push the push made: box square * 4 + direction ordinal
+     * @param pushes filled with the further pushes made, in the same form
+     * @return the number of further pushes (0 if none are forced)
+     */
+    public int extend(Board board, int push, int[] pushes) {
+        Direction dir    = DIRECTIONS[push & 3];
+        int       behind = push >> 2;
+        int       box    = board.neighbour(behind, dir);
+        int       n      = 0;
+        boolean   moved  = false;
+        // tunnel: on along the tunnel while the way is clear
+        if (isTunnel(behind, dir) && isTunnel(box, dir)) {
+            while (!board.isTarget(box)) {
+                int next = board.neighbour(box, dir);
+                if ((next < 0) || !floor[next] || !isTunnel(next, dir))
+                    break;
+                board.relocate(board.getActor(), behind);
+                moved = true;
+                if (!board.canPush(box, dir))
+                    break;
+                board.relocate(behind, box);
+                board.relocate(box, next);
+                pushes[n++] = box*4 + dir.ordinal();
+                behind = box;
+                box    = next;
+            }
+        }
+        // goal room: straight to the next target in the fill order
+        Room room = roomAt[box];
+        if ((room != null) && (room.direction == dir)) {
+            int filled = room.filled(board);
+            if ((filled >= 0) && (filled < room.order.length)) {
+                for (int p : room.paths[filled]) {
+                    board.relocate(board.getActor(), p >> 2);
+                    board.relocate(p >> 2, board.neighbour(p >> 2, DIRECTIONS[p & 3]));
+                    pushes[n++] = p;
+                }
+            }
+        }
+        if (moved || (n > 0))
+            board.normalize();
+        return n;
+    }
+
+    /**
+     * Make a goal room from the part of the floor beyond an articulation square,
+     * if it qualifies: it has targets but no boxes or actor, and is entered from one
+     * side of the entrance only, with floor on the other side to push from
+     *
+     * @return the room (or null)
+     */
+    private Room room(int entrance, Direction dir, boolean[] part) {
+        int from = board.neighbour(entrance, dir.reverse());
+        if (board.isTarget(entrance) || (from < 0) || !floor[from] || part[from] || part[board.getActor()])
+            return null;
+        for (Direction other : DIRECTIONS)
+            if ((other != dir) && (board.neighbour(entrance, other) >= 0) && part[board.neighbour(entrance, other)])
+                return null;
+        ArrayList<Integer> squares = new ArrayList<>();
+        ArrayList<Integer> targets = new ArrayList<>();
+        for (int sq=0; sq<numSquares; sq++) {
+            if (!part[sq])
+                continue;
+            if (board.hasBox(sq))
+                return null;
+            squares.add(sq);
+            if (board.isTarget(sq))
+                targets.add(sq);
+        }
+        if (targets.isEmpty() || (squares.size() > MAX_ROOM))
+            return null;
+        return new Room(entrance, dir, squares, targets);
+    }
+
+    /**
+     * Work out a room's fill order backwards: with every target filled, the last to
+     * be filled is one a box can be pushed to from the entrance with the others
+     * filled; take it away and repeat. Nearer targets are tried first.
+     *
+     * @return was an order found?
+     */
+    private boolean fillOrder(Room room) {
+        int       m      = room.order.length;
+        boolean[] filled = new boolean[numSquares];
+        for (int t : room.order)
+            filled[t] = true;
+        int[]   order = new int[m];
+        int[][] paths = new int[m][];
+        Integer[] byDistance = new Integer[m];
+        for (int i=0; i<m; i++)
+            byDistance[i] = room.order[i];
+        Arrays.sort(byDistance, (a, b) -> Integer.compare(distance(room.entrance, a), distance(room.entrance, b)));
+        for (int k=m-1; k>=0; k--) {
+            int[] path = null;
+            for (int t : byDistance) {
+                if (!filled[t])
+                    continue;
+                filled[t] = false;
+                path = pushPath(room, filled, t);
+                if (path != null) {
+                    order[k] = t;
+                    paths[k] = path;
+                    break;
+                }
+                filled[t] = true;
+            }
+            if (path == null)
+                return false;
+        }
+        room.order = order;
+        room.paths = paths;
+        return true;
+    }
+
+    /**
+     * Find the fewest pushes taking a box from a room's entrance to a target, with
+     * boxes on the filled squares and the actor just outside, checked by the game's
+     * own push rules
+     *
+     * @return the pushes (or null if there is no way)
+     */
+    private int[] pushPath(Room room, boolean[] filled, int target) {
+        // a board with just these boxes, built from a screen of the layout
+        StringBuilder screen = new StringBuilder();
+        int from = board.neighbour(room.entrance, room.direction.reverse());
+        for (int row=0; row<board.getNumRows(); row++) {
+            for (int col=0; col<board.getNumCols(); col++) {
+                int     sq     = board.index(row, col);
+                boolean onTarget = board.isTarget(sq);
+                if (board.isWall(sq))
+                    screen.append(Sokoban.WALL);
+                else if (filled[sq] || (sq == room.entrance))
+                    screen.append(onTarget ? Sokoban.TARGET_BOX : Sokoban.BOX);
+                else if (sq == from)
+                    screen.append(onTarget ? Sokoban.TARGET_ACTOR : Sokoban.ACTOR);
+                else
+                    screen.append(onTarget ? Sokoban.TARGET : Sokoban.EMPTY);
+            }
+            screen.append('\n');
+        }
+        Board b = new Board(screen.toString());
+
+        // breadth first over (box square, normalised actor)
+        HashMap<Long, Long> parent = new HashMap<>();
+        ArrayDeque<Long> queue = new ArrayDeque<>();
+        long start = key(room.entrance, b.normalizedActor());
+        parent.put(start, -1L);
+        queue.add(start);
+        int box = room.entrance;
+        while (!queue.isEmpty()) {
+            long state = queue.poll();
+            int  at    = (int) (state >>> 32);
+            b.relocate(b.getActor(), (int) state);  // actor first: it may stand where the box is going
+            b.relocate(box, at);
+            box = at;
+            if (at == target) {
+                ArrayList<Integer> pushes = new ArrayList<>();
+                for (long s = state; parent.get(s) >= 0; s = parent.get(s)) {
+                    long p     = parent.get(s);
+                    int  was   = (int) (p >>> 32);
+                    pushes.add(0, was*4 + b.direction(was, (int) (s >>> 32)).ordinal());
+                }
+                int[] path = new int[pushes.size()];
+                for (int i=0; i<path.length; i++)
+                    path[i] = pushes.get(i);
+                return path;
+            }
+            for (Direction dir : DIRECTIONS) {
+                int next = b.neighbour(at, dir);
+                if ((next < 0) || !room.contains(next) || !b.canPushFrom(at, dir))
+                    continue;
+                int actorAt = b.getActor();
+                b.push(at, dir);
+                long child = key(next, b.normalizedActor());
+                b.relocate(b.getActor(), actorAt);
+                b.relocate(next, at);
+                if (!parent.containsKey(child)) {
+                    parent.put(child, state);
+                    queue.add(child);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static long key(int box, int actor) {
+        return ((long) box << 32) | actor;
+    }
+
+    /**
+     * The walking distance between two floor squares, ignoring boxes
+     */
+    private int distance(int from, int to) {
+        int[] dist  = new int[numSquares];
+        int[] queue = new int[numSquares];
+        Arrays.fill(dist, -1);
+        int head = 0;
+        int tail = 0;
+        dist[from]    = 0;
+        queue[tail++] = from;
+        while (head < tail) {
+            int sq = queue[head++];
+            if (sq == to)
+                return dist[sq];
+            for (Direction dir : DIRECTIONS) {
+                int next = board.neighbour(sq, dir);
+                if ((next >= 0) && floor[next] && (dist[next] < 0)) {
+                    dist[next]    = dist[sq] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Mark the squares reachable from a start without crossing walls or a blocked square
+     *
+     * @return the number of squares marked
+     */
+    private int flood(int start, int block, boolean[] mark, int[] queue) {
+        int head = 0;
+        int tail = 0;
+        mark[start]   = true;
+        queue[tail++] = start;
+        while (head < tail) {
+            int sq = queue[head++];
+            for (Direction dir : DIRECTIONS) {
+                int next = board.neighbour(sq, dir);
+                if ((next >= 0) && (next != block) && !mark[next] && !board.isWall(next)) {
+                    mark[next]    = true;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * Is a square (which may be off the grid) a wall or off the grid?
+     */
+    private boolean blocked(int sq) {
+        return (sq < 0) || board.isWall(sq);
+    }
+
+    /**
+     * A goal room: its entrance, the direction into it, its squares and the fill order
+     */
+    private static class Room {
+        Room(int entrance, Direction direction, List<Integer> squares, List<Integer> targets) {
+            this.entrance  = entrance;
+            this.direction = direction;
+            this.squares   = new int[squares.size()];
+            for (int i=0; i<this.squares.length; i++)
+                this.squares[i] = squares.get(i);
+            this.targets = new int[targets.size()];
+            for (int i=0; i<this.targets.length; i++)
+                this.targets[i] = targets.get(i);
+            order = this.targets;
+        }
+
+        boolean contains(int sq) {
+            return Arrays.binarySearch(squares, sq) >= 0;
+        }
+
+        /**
+         * How many targets of the fill order does the room hold, with no other boxes?
+         *
+         * @return the number filled (or -1 if the room is not filled in order)
+         */
+        int filled(Board board) {
+            int count = 0;
+            for (int sq : squares)
+                if (board.hasBox(sq))
+                    count++;
+            for (int k=0; k<count; k++)
+                if ((k >= order.length) || !board.hasBox(order[k]))
+                    return -1;
+            return count;
+        }
+
+        final int       entrance;
+        final Direction direction;   // from the entrance into the room
+        final int[]     squares;     // in square order
+        final int[]     targets;     // in square order
+        int[]           order;       // the targets, in fill order once it is found
+        int[][]         paths = null;  // the pushes from the entrance to each target in turn
+    }
+
+    /** Larger areas are not treated as goal rooms */
+    private static final int MAX_ROOM = 64;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final Board     board;
+    private final int       numSquares;
+    private final boolean[] floor;          // reachable by the actor, ignoring boxes
+    private final boolean[] tunnel;         // four per square, by Direction ordinal
+    private final boolean[] articulation;
+    private final Room[]    rooms;
+    private final Room[]    roomAt;         // by entrance square
+    private final int       maxMacro;
+}
@@ -0,0 +1,358 @@
+
+import java.util.*;
+
+/**
+ * An admissible Sokoban heuristic that pairs every box with its own target:
+ * the minimum total number of pushes over all ways of assigning the boxes to
+ * different targets, each box's cost to a target being its push distance on an
+ * otherwise empty board. This is never less than DistanceHeuristic, which lets
+ * several boxes share the nearest target.
+ *
+ * The push distances from every square to every target are found once per
+ * layout, by a backwards (pulling) sweep from each target. The assignment is
+ * solved with the Hungarian algorithm, which keeps dual potentials for rows
+ * (boxes) and columns (targets). Consecutive estimates in a search usually
+ * differ by a box or two, so the last solution is kept and only the rows of
+ * boxes that moved are re-solved, each with one augmenting path (O(n^2))
+ * rather than a full O(n^3) solve. When many boxes moved, or there are more
+ * targets than boxes, it solves from scratch.
+ *
+ * A MatchingHeuristic keeps this state between calls, so each thread needs its own.
+ * A copy made with MatchingHeuristic(MatchingHeuristic) shares the distance
+ * tables, which never change once built, so only the first heuristic for a
+ * layout pays for the sweeps.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class MatchingHeuristic implements Heuristic {
+    /**
+     * Constructor
+     *
+     * @param board a board with the layout to be solved (cannot be null)
+     */
+    public MatchingHeuristic(Board board) {
+        this(board, false);
+    }
+
+    /**
+     * Constructor for a forward search (boxes pushed to the targets) or a reverse
+     * one (boxes pulled back from the targets to where they start). In reverse, the
+     * board's current box squares take the place of the targets and a box's cost is
+     * the number of pulls to get back to one of them.
+     *
+     * @param board a board with the layout to be solved, in its starting position (cannot be null)
+     * @param reverse estimate pulls back to the board's box squares rather than pushes to its targets
+     */
+    public MatchingHeuristic(Board board, boolean reverse) {
+        this(tables(board, reverse), board.numBoxes(), board.getNumSquares(), board.getNumWords());
+    }
+
+    /**
+     * Constructor for another heuristic for the same layout (and direction), for
+     * another thread: it shares the other's distance tables, so it is cheap to make
+     *
+     * @param other the heuristic to share the tables of (cannot be null)
+     */
+    public MatchingHeuristic(MatchingHeuristic other) {
+        this(checked(other).distance, other.numBoxes, other.numSquares, other.base.length);
+    }
+
+    /**
+     * Set up the matching state around a set of distance tables
+     */
+    private MatchingHeuristic(int[][] distance, int numBoxes, int numSquares, int numWords) {
+        this.distance   = distance;
+        this.numBoxes   = numBoxes;
+        this.numSquares = numSquares;
+        this.numTargets = distance.length;
+        int n = numBoxes;
+        int m = numTargets;
+        rowSquare = new int[n+1];
+        rowOf     = new int[numSquares];
+        u         = new int[n+1];
+        v         = new int[m+1];
+        p         = new int[m+1];
+        way       = new int[m+1];
+        minv      = new int[m+1];
+        used      = new boolean[m+1];
+        base      = new long[numWords];
+        current   = new long[numWords];
+        added     = new int[n];
+        removed   = new int[n];
+    }
+
+    /**
+     * Estimate the number of pushes still needed
+     *
+     * @param board the position
+     * @return the minimum total push distance of the boxes to distinct targets (or DEADLOCK)
+     */
+    @Override
+    public int estimate(Board board) {
+        if (numBoxes > numTargets)
+            return DEADLOCK;
+        if (numBoxes == 0)
+            return 0;
+        board.copyBoxes(current);
+        int numChanged = solved ? diff() : Integer.MAX_VALUE;
+        if ((numChanged <= MAX_INCREMENTAL) && (numBoxes == numTargets)) {
+            for (int k=0; k<numChanged; k++) {
+                int i = rowOf[removed[k]];
+                rowSquare[i]      = added[k];
+                rowOf[added[k]]   = i;
+                for (int j=1; j<=numTargets; j++)
+                    if (p[j] == i)
+                        p[j] = 0;
+                u[i] = 0;
+                addRow(i);
+            }
+            rebase();
+            incremental++;
+        } else if (numChanged > 0) {
+            solveAll();
+            full++;
+        }
+        System.arraycopy(current, 0, base, 0, base.length);
+        int sum = 0;
+        for (int j=1; j<=numTargets; j++) {
+            if (p[j] == 0)
+                continue;
+            int c = cost(p[j], j);
+            if (c >= INF)
+                return DEADLOCK;
+            sum += c;
+        }
+        return sum;
+    }
+
+    /**
+     * The push distance from a square to a target
+     *
+     * @param sq the square index
+     * @param target the index of the target (0 .. numTargets-1, in square order; box squares in reverse)
+     * @return the number of pushes (or -1 if the target cannot be reached)
+     */
+    public int getDistance(int sq, int target) {
+        int d = distance[target][sq];
+        return (d >= INF) ? -1 : d;
+    }
+
+    /**
+     * Gets the number of estimates made by updating the previous matching
+     *
+     * @return the number of incremental estimates
+     */
+    public long getNumIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Gets the number of estimates made by solving the matching from scratch
+     *
+     * @return the number of full estimates
+     */
+    public long getNumFull() {
+        return full;
+    }
+
+    /**
+     * The push (or pull) distances from every square to each target, in square order
+     */
+    private static int[][] tables(Board board, boolean reverse) {
+        if (board == null)
+            throw new IllegalArgumentException("board cannot be null");
+        int   numSquares = board.getNumSquares();
+        int[] targets    = new int[Math.max(board.numTargets(), board.numBoxes())];
+        int   m          = 0;
+        for (int sq=0; sq<numSquares; sq++)
+            if (reverse ? board.hasBox(sq) : (board.isTarget(sq) && !board.isWall(sq)))
+                targets[m++] = sq;
+        int[][] distance = new int[m][];
+        int[]   queue    = new int[numSquares];
+        for (int t=0; t<m; t++)
+            distance[t] = distances(board, targets[t], reverse, queue);
+        return distance;
+    }
+
+    private static MatchingHeuristic checked(MatchingHeuristic other) {
+        if (other == null)
+            throw new IllegalArgumentException("other cannot be null");
+        return other;
+    }
+
+    /**
+     * Sweep outwards from a target over the empty layout, recording how many pushes
+     * (or in reverse, pulls) each square is away. Pushing a box to the target is
+     * found by pulling it back from there, and the other way round.
+     */
+    private static int[] distances(Board board, int target, boolean reverse, int[] queue) {
+        int[] dist = new int[board.getNumSquares()];
+        Arrays.fill(dist, INF);
+        int head = 0;
+        int tail = 0;
+        dist[target]  = 0;
+        queue[tail++] = target;
+        while (head < tail) {
+            int box = queue[head++];
+            for (Direction dir : DIRECTIONS) {
+                int to = board.neighbour(box, dir);
+                if ((to < 0) || board.isWall(to) || (dist[to] != INF))
+                    continue;
+                // pulling needs room for the actor beyond the new square, pushing behind the old one
+                int actorAt = reverse ? board.neighbour(box, dir.reverse()) : board.neighbour(to, dir);
+                if ((actorAt < 0) || board.isWall(actorAt))
+                    continue;
+                dist[to]      = dist[box] + 1;
+                queue[tail++] = to;
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * Compare the current boxes with those of the last matching, listing the squares
+     * that were left and the squares that were newly occupied
+     *
+     * @return the number of boxes that moved (or MAX_VALUE if too many to list)
+     */
+    private int diff() {
+        int numAdded   = 0;
+        int numRemoved = 0;
+        for (int w=0; w<base.length; w++) {
+            long gone = base[w] & ~current[w];
+            long come = current[w] & ~base[w];
+            while (gone != 0L) {
+                if (numRemoved == MAX_INCREMENTAL)
+                    return Integer.MAX_VALUE;
+                removed[numRemoved++] = (w << 6) + Long.numberOfTrailingZeros(gone);
+                gone &= gone - 1;
+            }
+            while (come != 0L) {
+                if (numAdded == MAX_INCREMENTAL)
+                    return Integer.MAX_VALUE;
+                added[numAdded++] = (w << 6) + Long.numberOfTrailingZeros(come);
+                come &= come - 1;
+            }
+        }
+        return numAdded;
+    }
+
+    /**
+     * Solve the whole matching from scratch
+     */
+    private void solveAll() {
+        int i = 0;
+        for (int w=0; w<current.length; w++)
+            for (long bits = current[w]; bits != 0L; bits &= bits - 1) {
+                int sq = (w << 6) + Long.numberOfTrailingZeros(bits);
+                rowSquare[++i] = sq;
+                rowOf[sq]      = i;
+            }
+        Arrays.fill(u, 0);
+        Arrays.fill(v, 0);
+        Arrays.fill(p, 0);
+        for (i=1; i<=numBoxes; i++)
+            addRow(i);
+        solved = true;
+    }
+
+    /**
+     * Match an unmatched row by the shortest augmenting path in the reduced costs,
+     * adjusting the potentials so that every matched pair stays tight
+     *
+     * @param i the row (1 .. numBoxes)
+     */
+    private void addRow(int i) {
+        p[0] = i;
+        int j0 = 0;
+        Arrays.fill(minv, Integer.MAX_VALUE);
+        Arrays.fill(used, false);
+        do {
+            used[j0] = true;
+            int i0    = p[j0];
+            int delta = Integer.MAX_VALUE;
+            int j1    = 0;
+            for (int j=1; j<=numTargets; j++) {
+                if (used[j])
+                    continue;
+                int cur = cost(i0, j) - u[i0] - v[j];
+                if (cur < minv[j]) {
+                    minv[j] = cur;
+                    way[j]  = j0;
+                }
+                if (minv[j] < delta) {
+                    delta = minv[j];
+                    j1    = j;
+                }
+            }
+            for (int j=0; j<=numTargets; j++) {
+                if (used[j]) {
+                    u[p[j]] += delta;
+                    v[j]    -= delta;
+                } else
+                    minv[j] -= delta;
+            }
+            j0 = j1;
+        } while (p[j0] != 0);
+        do {
+            int j1 = way[j0];
+            p[j0]  = p[j1];
+            j0     = j1;
+        } while (j0 != 0);
+    }
+
+    /**
+     * Shift the potentials so that the largest column potential is 0, leaving every
+     * u[i] + v[j] (and so every reduced cost) as it was. Repeated updates push the
+     * column potentials down, and this stops them drifting towards overflow.
+     */
+    private void rebase() {
+        int shift = Integer.MIN_VALUE;
+        for (int j=1; j<=numTargets; j++)
+            shift = Math.max(shift, v[j]);
+        if (shift == 0)
+            return;
+        for (int j=1; j<=numTargets; j++)
+            v[j] -= shift;
+        for (int i=1; i<=numBoxes; i++)
+            u[i] += shift;
+    }
+
+    /**
+     * The cost of matching a row's box with a column's target
+     */
+    private int cost(int i, int j) {
+        return distance[j-1][rowSquare[i]];
+    }
+
+    /** Estimates with at most this many boxes moved are updated rather than solved again */
+    private static final int MAX_INCREMENTAL = 4;
+    /** The cost of a box that can never reach a target (large, but safe to add up) */
+    private static final int INF = 1 << 20;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final int     numSquares;
+    private final int     numBoxes;
+    private final int     numTargets;
+    private final int[][] distance;   // [target][square] pushes from the square to the target
+
+    // the last matching: rows are boxes and columns targets, both counted from 1
+    private boolean       solved = false;
+    private final long[]  base;       // the boxes it was made for
+    private final int[]   rowSquare;  // the box square of each row
+    private final int[]   rowOf;      // the row of each box square
+    private final int[]   u;          // row potentials
+    private final int[]   v;          // column potentials
+    private final int[]   p;          // the row matched to each column (0 for none)
+
+    // scratch
+    private final long[]  current;
+    private final int[]   added;
+    private final int[]   removed;
+    private final int[]   way;
+    private final int[]   minv;
+    private final boolean[] used;
+    private long          incremental = 0;
+    private long          full        = 0;
+}
@@ -0,0 +1,462 @@
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * An anytime Monte Carlo Tree Search player for levels too big for the solvers.
+ *
+ * The tree is over pushes, as in Solver: a node is the position after a push,
+ * with the actor normalised, and its children are the legal pushes from there
+ * (the walks between are filled in as shortest paths). Each iteration selects
+ * a path down the tree by UCT, adds one untried push, plays a random rollout
+ * of up to ROLLOUT_PUSHES pushes and adds its reward to every node on the path.
+ *
+ * Rollouts only make the pushes the game allows, which already refuse pushing
+ * a box onto a square from which it can never reach a target (Cell.isWallSafe)
+ * or into a frozen group (Box.isStuckSafe); each step takes the best by the
+ * MatchingHeuristic of a few pushes picked at random. After each push the
+ * heuristic checks that the boxes can still be assigned to targets. A rollout
+ * scores 1 if it solves the level, 0 if it deadlocks, and otherwise more the
+ * fewer pushes the heuristic thinks are left at its best, half way being as
+ * far as at the start. A push back to a position the game has already been
+ * in counts as a dead end, so the player cannot push a box to and fro forever.
+ *
+ * The search is root-parallel: every thread grows a tree of its own from the
+ * current position, on its own fork of the board, with its own heuristic and
+ * random numbers, sharing nothing until the time budget runs out but the
+ * heuristic's distance tables, which are built once for the level and only
+ * read. The visits
+ * to each push from the root are then added up over the threads and the most
+ * visited push is chosen, so more cores give more rollouts behind each choice.
+ * Each tree is limited to MAX_NODES nodes, after which it only does rollouts,
+ * so memory does not grow with the level.
+ *
+ * If no tree finishes in time the push with the best heuristic estimate is
+ * chosen instead. The player then walks to the chosen push one move per call,
+ * and searches again once the push is made (or the puzzle leaves the planned
+ * walk).
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class MctsPlayer implements Player, FastPlayer {
+    /**
+     * Constructor
+     *
+     * @param puzzle the puzzle to play (cannot be null)
+     */
+    public MctsPlayer(Sokoban puzzle) {
+        if (puzzle == null)
+            throw new IllegalArgumentException("puzzle cannot be null");
+        this.puzzle = puzzle;
+    }
+
+    /**
+     * Set the time spent searching before each push
+     *
+     * @param timeBudget the time in milliseconds (default 1000)
+     */
+    public void setTimeBudget(long timeBudget) {
+        if (timeBudget < 1)
+            throw new IllegalArgumentException("timeBudget must be positive");
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Set the number of threads searching at once
+     *
+     * @param threads the number of threads (default: the number of processors)
+     */
+    public void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive");
+        this.threads = threads;
+    }
+
+    /**
+     * Set the seed of the random rollouts
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Gets the number of rollouts behind the last push chosen (over all threads)
+     *
+     * @return the number of rollouts
+     */
+    public long getNumRollouts() {
+        return rollouts;
+    }
+
+    /**
+     * Choose a move from a Vector of choices
+     *
+     * @param choices possible directions for the player to choose from
+     * @return the chosen direction
+     */
+    @Override
+    public Direction move(Vector<Direction> choices) {
+        if (choices == null)
+            throw new IllegalArgumentException("cannot have null choices");
+        return move(PlayerAdapter.toMask(choices));
+    }
+
+    /**
+     * Choose a move from a mask of choices: the next step towards the planned
+     * push, searching for a new one first if there is none
+     *
+     * @param choices possible directions, one bit per Direction ordinal
+     * @return the chosen direction
+     */
+    @Override
+    public Direction move(int choices) {
+        if ((choices & 15) == 0)
+            throw new IllegalArgumentException("cannot have empty choices");
+        Board now = puzzle.fork();
+        if ((walk == null) || (walkStep >= walk.size()) || (walkHashes[walkStep] != now.exactHash())) {
+            walk = plan(now);
+            walkStep   = 0;
+            walkHashes = new long[walk.size()];
+            Board board = now.fork();
+            for (int i=0; i<walk.size(); i++) {
+                walkHashes[i] = board.exactHash();
+                board.move(walk.get(i));
+            }
+        }
+        if ((walkStep < walk.size()) && ((choices & (1 << walk.get(walkStep).ordinal())) != 0))
+            return walk.get(walkStep++);
+        walk = null;
+        return DIRECTIONS[Integer.numberOfTrailingZeros(choices & 15)];
+    }
+
+    /**
+     * Search for the best push from a position and plan the walk to it
+     *
+     * @param now the position (not changed)
+     * @return the steps of the walk, ending with the push (empty if there is no push)
+     */
+    private List<Direction> plan(Board now) {
+        if (layout == null)
+            layout = new MatchingHeuristic(now);  // once per level, outside the budget
+        long deadline = System.currentTimeMillis() + timeBudget;
+        int[] pushes  = new int[now.numBoxes()*4];
+        Board root    = now.fork();
+        root.normalize();
+        int numPushes = Solver.listPushes(root, pushes);
+        rollouts = 0;
+        history.add(root.hash());
+        if ((numPushes == 0) || now.onTarget())
+            return new ArrayList<>();
+        int best = pushes[0];
+        if (numPushes > 1) {
+            long[] visits = new long[numPushes];
+            for (Tree tree : grow(root, Math.max(layout.estimate(root), 1), deadline)) {
+                rollouts += tree.root.visits;
+                if (tree.root.children == null)
+                    continue; // the budget ran out before a single iteration
+                for (Node child : tree.root.children) {
+                    if (child == null)
+                        continue;
+                    int i = child.index;
+                    visits[i] += child.visits;
+                    if (child.solved)
+                        visits[i] = Long.MAX_VALUE / 2; // a push that solves the level outright
+                }
+            }
+            int choice = 0;
+            for (int i=1; i<numPushes; i++)
+                if (visits[i] > visits[choice])
+                    choice = i;
+            best = (visits[choice] > 0) ? pushes[choice] : closest(root, pushes, numPushes);
+        }
+        Sokoban.trace("MctsPlayer: "+rollouts+" rollouts, push "+(best >> 2)+" "+DIRECTIONS[best & 3]);
+        int box = best >> 2;
+        List<Direction> steps = now.pathTo(now.neighbour(box, DIRECTIONS[best & 3].reverse()));
+        steps.add(DIRECTIONS[best & 3]);
+        return steps;
+    }
+
+    /**
+     * The push that leaves the fewest pushes by the heuristic, for when no
+     * tree finished in time
+     *
+     * @param root the normalised position (not changed)
+     * @return the push (box square * 4 + direction ordinal)
+     */
+    private int closest(Board root, int[] pushes, int numPushes) {
+        long[] start = root.snapshot();
+        int best  = pushes[0];
+        int bestH = Integer.MAX_VALUE;
+        for (int i=0; i<numPushes; i++) {
+            root.restore(start, 0);
+            Solver.makePush(root, pushes[i]);
+            int h = history.contains(root.hash()) ? Heuristic.DEADLOCK : layout.estimate(root);
+            if (h < bestH) {
+                best  = pushes[i];
+                bestH = h;
+            }
+        }
+        root.restore(start, 0);
+        return best;
+    }
+
+    /**
+     * Grow a tree on each thread until the deadline
+     *
+     * @param root the normalised position to search from
+     * @param startH the heuristic's estimate for the root (at least 1)
+     * @param deadline when to stop
+     * @return the trees that finished in time
+     */
+    private List<Tree> grow(Board root, int startH, long deadline) {
+        if (pool == null) {
+            pool = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "MctsPlayer");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        // the trees get a copy of the history: a tree that overruns the grace
+        // period may still be reading it while the next search adds to this one
+        Set<Long> played = Collections.unmodifiableSet(new HashSet<>(history));
+        ArrayList<Callable<Tree>> tasks = new ArrayList<>();
+        for (int t=0; t<threads; t++) {
+            Board board = root.fork();
+            long  s     = seed++;
+            tasks.add(() -> {
+                if ((System.currentTimeMillis() >= deadline) || Thread.currentThread().isInterrupted())
+                    return null;  // started too late to do any good
+                return new Tree(board, new MatchingHeuristic(layout), new SplittableRandom(s), played, startH).grow(deadline);
+            });
+        }
+        ArrayList<Tree> trees = new ArrayList<>();
+        try {
+            long wait = Math.max(deadline - System.currentTimeMillis(), 0) + GRACE;
+            for (Future<Tree> f : pool.invokeAll(tasks, wait, TimeUnit.MILLISECONDS)) {
+                try {
+                    Tree tree = f.isCancelled() ? null : f.get();
+                    if (tree != null)
+                        trees.add(tree);
+                } catch (ExecutionException e) {
+                    Sokoban.trace("MctsPlayer: "+e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return trees;
+    }
+
+    /**
+     * One thread's search tree, with everything it needs to grow
+     */
+    private static class Tree {
+        Tree(Board board, Heuristic h, SplittableRandom rnd, Set<Long> history, int startH) {
+            this.board    = board;
+            this.history  = history;
+            this.rnd      = rnd;
+            this.h        = h;
+            this.pushes   = new int[board.numBoxes()*4];
+            this.snapshot = board.snapshot();
+            this.scratch  = new long[snapshot.length];
+            this.startH   = startH;
+            this.root     = new Node(null, -1, -1);
+            this.rootOrder = Arrays.copyOf(pushes, Solver.listPushes(board, pushes));
+        }
+
+        /**
+         * Run iterations until the deadline, or until the thread is interrupted
+         * (as invokeAll() does to a tree that has run past the grace period)
+         *
+         * @return this tree
+         */
+        Tree grow(long deadline) {
+            while ((System.currentTimeMillis() < deadline) && !Thread.currentThread().isInterrupted())
+                iterate(deadline);
+            return this;
+        }
+
+        /**
+         * Select, expand, roll out and back up once
+         */
+        private void iterate(long deadline) {
+            board.restore(snapshot, 0);
+            Node node = root;
+            // select: descend by UCT through nodes that have tried every push
+            while (!node.terminal && (node.children != null) && (node.tried == node.children.length)) {
+                node = select(node);
+                Solver.makePush(board, node.push);
+            }
+            double reward;
+            if (node.terminal)
+                reward = node.solved ? 1 : 0;
+            else {
+                if (node.children == null) {
+                    int n = Solver.listPushes(board, pushes);
+                    node.pushes   = Arrays.copyOf(pushes, n);
+                    node.children = new Node[n];
+                    if (n == 0)
+                        node.terminal = true; // nothing can be pushed: stuck
+                }
+                if (node.terminal)
+                    reward = 0;
+                else if (numNodes >= MAX_NODES)
+                    reward = rollout(deadline);
+                else {
+                    // expand: try the next untried push (they are tried in a random order)
+                    int i = node.tried + rnd.nextInt(node.children.length - node.tried);
+                    int push = node.pushes[i];
+                    node.pushes[i] = node.pushes[node.tried];
+                    node.pushes[node.tried] = push;
+                    Node child = new Node(node, push, indexOf(node, push));
+                    node.children[node.tried++] = child;
+                    numNodes++;
+                    Solver.makePush(board, push);
+                    if (board.onTarget()) {
+                        child.terminal = true;
+                        child.solved   = true;
+                        reward = 1;
+                    } else if (history.contains(board.hash()) || (h.estimate(board) == Heuristic.DEADLOCK)) {
+                        // a deadlock, or back to where the game has already been
+                        child.terminal = true;
+                        reward = 0;
+                    } else
+                        reward = rollout(deadline);
+                    node = child;
+                }
+            }
+            // back up
+            for (Node n = node; n != null; n = n.parent) {
+                n.visits++;
+                n.reward += reward;
+            }
+        }
+
+        /**
+         * The index of a push among the root's pushes in listPushes() order, so
+         * that the threads' root children can be added up (-1 below the root)
+         */
+        private int indexOf(Node node, int push) {
+            if (node != root)
+                return -1;
+            for (int i=0; i<rootOrder.length; i++)
+                if (rootOrder[i] == push)
+                    return i;
+            return -1;
+        }
+
+        /**
+         * The child with the highest UCT value
+         */
+        private Node select(Node node) {
+            Node   best    = null;
+            double bestUct = Double.NEGATIVE_INFINITY;
+            double logN    = Math.log(node.visits);
+            for (Node child : node.children) {
+                double uct = child.reward / child.visits + EXPLORATION * Math.sqrt(logN / child.visits);
+                if (uct > bestUct) {
+                    bestUct = uct;
+                    best    = child;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Play random pushes from the board's position and score where they end up
+         *
+         * @return the reward (0 to 1)
+         */
+        private double rollout(long deadline) {
+            int minH = h.estimate(board);
+            for (int p=0; p<ROLLOUT_PUSHES; p++) {
+                if (board.onTarget())
+                    return 1;
+                int n = Solver.listPushes(board, pushes);
+                if (n == 0)
+                    return 0;
+                // the best by the heuristic of a few pushes picked at random
+                board.snapshot(scratch, 0);
+                int push  = -1;
+                int bestH = Heuristic.DEADLOCK;
+                for (int k=0; k<SAMPLES; k++) {
+                    int candidate = pushes[rnd.nextInt(n)];
+                    Solver.makePush(board, candidate);
+                    int e = h.estimate(board);
+                    board.restore(scratch, 0);
+                    if ((push < 0) || (e < bestH)) {
+                        push  = candidate;
+                        bestH = e;
+                    }
+                }
+                if (bestH == Heuristic.DEADLOCK)
+                    return 0;
+                Solver.makePush(board, push);
+                minH = Math.min(minH, bestH);
+                if (((p & 7) == 7) && (System.currentTimeMillis() >= deadline))
+                    break;
+            }
+            if (board.onTarget())
+                return 1;
+            return Math.max(0, 1 - minH / (2.0 * startH));
+        }
+
+        private final Board            board;
+        private final Set<Long>        history;       // a copy of the positions played so far
+        private final SplittableRandom rnd;
+        private final Heuristic        h;
+        private final int[]            pushes;
+        private final long[]           snapshot;
+        private final long[]           scratch;       // the position before each push of a rollout
+        private final int              startH;
+        private final Node             root;
+        private final int[]            rootOrder;     // the root's pushes in listPushes() order
+        private int                    numNodes  = 0;
+    }
+
+    /**
+     * A node of a tree: the position after a push
+     */
+    private static class Node {
+        Node(Node parent, int push, int index) {
+            this.parent = parent;
+            this.push   = push;
+            this.index  = index;
+        }
+
+        final Node parent;
+        final int  push;              // box square * 4 + direction ordinal
+        final int  index;             // the push's index among the root's pushes (children of the root only)
+        int[]      pushes   = null;   // the legal pushes from here, tried ones first
+        Node[]     children = null;   // one per push, filled in as they are tried
+        int        tried    = 0;
+        long       visits   = 0;
+        double     reward   = 0;
+        boolean    terminal = false;  // solved, deadlocked or stuck
+        boolean    solved   = false;
+    }
+
+    private static final Direction[] DIRECTIONS     = Direction.values();
+    private static final int         ROLLOUT_PUSHES = 16;
+    private static final int         SAMPLES        = 3;         // pushes weighed at each step of a rollout
+    private static final int         MAX_NODES      = 1 << 18;   // per thread
+    private static final double      EXPLORATION    = 0.5;
+    private static final long        GRACE          = 200;       // ms allowed past the budget for the threads to stop
+
+    private final Sokoban     puzzle;
+    private long              timeBudget = 1000;
+    private int               threads    = Runtime.getRuntime().availableProcessors();
+    private long              seed       = System.nanoTime();
+    private ExecutorService   pool       = null;
+    private MatchingHeuristic layout     = null;   // the distance tables the trees share
+    private volatile long     rollouts   = 0;
+    private final Set<Long>   history    = new HashSet<>();   // the hash of every position searched from
+
+    // the walk to the push chosen, played one move per call
+    private List<Direction>   walk       = null;
+    private long[]            walkHashes = null;
+    private int               walkStep   = 0;
+}
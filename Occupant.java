@@ -8,6 +8,12 @@
  * 
  */
 public abstract class Occupant {
+    /**
+     * Constructor for a shared occupant that does not track a cell (see Wall)
+     */
+    protected Occupant() {
+    }
+
     public Occupant(Cell cell) {
         /**
          * Constructor with cell currently occupied
@@ -87,16 +93,19 @@ public abstract class Occupant {
     }
 
     /**
-     * If it is safe, move the occupant to the next cell in a given direction
+     * If it is safe, move the occupant to the next cell in a given direction.
+     * This only keeps the cells and the board in step: it is not journalled and
+     * no listener hears of it, so play goes through Sokoban.move instead.
      * 
      * @param dir the direction to move
      */
-    public void move(Direction dir) {
+    void move(Direction dir) {
         if (!canMove(dir))
             throw new IllegalArgumentException("cannot move "+dir);
         Cell next = cell.getCell(dir);
         if (!next.isEmpty())
             next.move(dir);
+        cell.getPuzzle().getBoard().relocate(cell.getIndex(), next.getIndex());
         cell.setOccupant(null);
         next.setOccupant(this);
     }
@@ -123,7 +132,7 @@ public abstract class Occupant {
 
     /**
      * A factory method to construct an Occupant based on the display character and cell to be occupied.
-     * The display character must be valid.
+     * The display character must be valid. Walls are shared, so only boxes and actors are created.
      * 
      * @param display the display character
      * @param cell the cell to be occupied
@@ -136,7 +145,7 @@ public abstract class Occupant {
         if (cell.isTarget() && (display != Sokoban.TARGET_BOX) && (display != Sokoban.TARGET_ACTOR))
             throw new IllegalArgumentException("if cell is target, display must be '"+Sokoban.TARGET_BOX+"' or '"+Sokoban.TARGET_ACTOR+"'");
         if (display == Sokoban.WALL)
-            return new Wall(cell);
+            return Wall.getInstance();
         else if (display == Sokoban.BOX || display == Sokoban.TARGET_BOX)
             return new Box(cell);
         else // is ACTOR or TARGET_ACTOR
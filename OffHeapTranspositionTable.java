@@ -0,0 +1,307 @@
+
+import java.nio.*;
+
+/**
+ * A transposition table and node store for searches too big for the Java heap.
+ *
+ * Entries are fixed-width records in direct (off-heap) ByteBuffers, so the
+ * garbage collector never sees them and the table can be far larger than the
+ * heap (the JVM's -XX:MaxDirectMemorySize must allow for the budget). Each
+ * record holds:
+ *
+ *   hash (8 bytes)  parent hash (8)  g (4)  h (4)  push (4)  flags (4)  position (8 per snapshot word)
+ *
+ * where the position is a Board snapshot, so an open node can be expanded
+ * straight from its record, and the parent hash links each node to the one it
+ * was pushed from. Records are found by open addressing, probing at most
+ * PROBE_WINDOW slots from a position's home slot. When the window is full the
+ * node with the highest f = g + h in it that has never been expanded is
+ * replaced. A node that has been expanded may have children linked to it, so it
+ * is never replaced, even if it is reopened by a cheaper path; the path back
+ * from any node therefore stays intact. If every node in the window has been
+ * expanded the insert fails.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class OffHeapTranspositionTable {
+    /**
+     * Constructor
+     *
+     * @param budget the number of bytes to allocate (off the heap)
+     * @param snapshotLength the number of longs in each Board snapshot
+     */
+    public OffHeapTranspositionTable(long budget, int snapshotLength) {
+        if (snapshotLength < 1)
+            throw new IllegalArgumentException("snapshotLength must be positive");
+        entrySize = entrySize(snapshotLength);
+        words     = snapshotLength;
+        if (budget < (long) entrySize*PROBE_WINDOW)
+            throw new IllegalArgumentException("budget is too small for even one probe window");
+        slots        = budget / entrySize;
+        perSegment   = SEGMENT_BYTES / entrySize;
+        int numSegments = (int) ((slots + perSegment - 1) / perSegment);
+        segments = new ByteBuffer[numSegments];
+        for (int s=0; s<numSegments; s++) {
+            long count = Math.min(perSegment, slots - s*perSegment);
+            segments[s] = ByteBuffer.allocateDirect((int) (count*entrySize)).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Find the record of a position
+     *
+     * @param hash the position hash
+     * @return the slot holding it (or -1 if it is not in the table)
+     */
+    public long find(long hash) {
+        hash = TranspositionTable.nonZero(hash);
+        long slot = home(hash);
+        for (int i=0; i<PROBE_WINDOW; i++, slot = next(slot)) {
+            long k = getHash(slot);
+            if (k == hash)
+                return slot;
+            if (k == 0L)
+                return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Store a new position, or replace the record of one already in the table.
+     * Replacing a record reopens it, but a node that has been expanded stays
+     * safe from being replaced by other positions.
+     *
+     * @param hash the position hash
+     * @param parent the hash of the position it was reached from (0 for the root)
+     * @param g the number of pushes to reach it
+     * @param h the heuristic estimate of the pushes still needed
+     * @param push the push made to reach it (box square * 4 + direction ordinal, or -1 for the root)
+     * @param board the position
+     * @return the slot used (or -1 if the probe window holds only expanded nodes)
+     */
+    public long put(long hash, long parent, int g, int h, int push, Board board) {
+        hash = TranspositionTable.nonZero(hash);
+        long    slot   = home(hash);
+        long    victim = -1;
+        long    worst  = Long.MIN_VALUE;
+        boolean free   = false;
+        for (int i=0; i<PROBE_WINDOW; i++, slot = next(slot)) {
+            long k = getHash(slot);
+            if ((k == hash) || (k == 0L)) {
+                if (k == 0L)
+                    size++;
+                victim = slot;
+                free   = true;
+                break;
+            }
+            if (isExpanded(slot))
+                continue;
+            // otherwise replace the least promising open node: highest f, then shallowest
+            long f = ((long) (getG(slot) + getH(slot)) << 32) - getG(slot);
+            if (f > worst) {
+                worst  = f;
+                victim = slot;
+            }
+        }
+        if (victim < 0)
+            return -1;
+        if (!free)
+            evictions++;
+        ByteBuffer b = segment(victim);
+        int at = offset(victim);
+        int flags = (getHash(victim) == hash) ? b.getInt(at+28) & EXPANDED : 0;
+        b.putLong(at,    hash);
+        b.putLong(at+8,  parent);
+        b.putInt (at+16, g);
+        b.putInt (at+20, h);
+        b.putInt (at+24, push);
+        b.putInt (at+28, flags);
+        long[] s = scratch();
+        board.snapshot(s, 0);
+        for (int w=0; w<words; w++)
+            b.putLong(at+HEADER+8*w, s[w]);
+        return victim;
+    }
+
+    /**
+     * Restore the position stored in a record onto a board
+     *
+     * @param slot the slot
+     * @param board a board with the same layout
+     */
+    public void restore(long slot, Board board) {
+        ByteBuffer b = segment(slot);
+        int at = offset(slot);
+        long[] s = scratch();
+        for (int w=0; w<words; w++)
+            s[w] = b.getLong(at+HEADER+8*w);
+        board.restore(s, 0);
+    }
+
+    /**
+     * Gets the hash stored in a slot
+     *
+     * @param slot the slot
+     * @return the position hash (0 if the slot is empty)
+     */
+    public long getHash(long slot) {
+        return segment(slot).getLong(offset(slot));
+    }
+
+    /**
+     * Gets the hash of the parent of the position in a slot
+     *
+     * @param slot the slot
+     * @return the parent hash (0 for the root)
+     */
+    public long getParent(long slot) {
+        return segment(slot).getLong(offset(slot)+8);
+    }
+
+    /**
+     * Gets the number of pushes to the position in a slot
+     *
+     * @param slot the slot
+     * @return g
+     */
+    public int getG(long slot) {
+        return segment(slot).getInt(offset(slot)+16);
+    }
+
+    /**
+     * Gets the heuristic estimate for the position in a slot
+     *
+     * @param slot the slot
+     * @return h
+     */
+    public int getH(long slot) {
+        return segment(slot).getInt(offset(slot)+20);
+    }
+
+    /**
+     * Gets the push made to reach the position in a slot
+     *
+     * @param slot the slot
+     * @return box square * 4 + direction ordinal (or -1 for the root)
+     */
+    public int getPush(long slot) {
+        return segment(slot).getInt(offset(slot)+24);
+    }
+
+    /**
+     * Has the position in a slot been expanded?
+     *
+     * @param slot the slot
+     * @return is the node closed?
+     */
+    public boolean isClosed(long slot) {
+        return (segment(slot).getInt(offset(slot)+28) & CLOSED) != 0;
+    }
+
+    /**
+     * Has the position in a slot ever been expanded (even if it has been reopened since)?
+     *
+     * @param slot the slot
+     * @return may other nodes be linked to it?
+     */
+    public boolean isExpanded(long slot) {
+        return (segment(slot).getInt(offset(slot)+28) & EXPANDED) != 0;
+    }
+
+    /**
+     * Mark the position in a slot as expanded, so that it is never replaced
+     *
+     * @param slot the slot
+     */
+    public void close(long slot) {
+        ByteBuffer b = segment(slot);
+        int at = offset(slot)+28;
+        b.putInt(at, b.getInt(at) | CLOSED | EXPANDED);
+    }
+
+    /**
+     * Gets the number of positions stored
+     *
+     * @return the number of entries
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of open nodes replaced for lack of space
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the number of slots
+     *
+     * @return the capacity in entries
+     */
+    public long capacity() {
+        return slots;
+    }
+
+    /**
+     * Gets the size of one record
+     *
+     * @return the number of bytes per entry
+     */
+    public int getEntrySize() {
+        return entrySize;
+    }
+
+    /**
+     * Gets the size of one record of a table for snapshots of a given length
+     *
+     * @param snapshotLength the number of longs in each Board snapshot
+     * @return the number of bytes per entry
+     */
+    public static int entrySize(int snapshotLength) {
+        return HEADER + 8*snapshotLength;
+    }
+
+    private long home(long hash) {
+        return Long.remainderUnsigned(hash ^ (hash >>> 29), slots);
+    }
+
+    private long next(long slot) {
+        return (slot+1 == slots) ? 0 : slot+1;
+    }
+
+    private ByteBuffer segment(long slot) {
+        return segments[(int) (slot / perSegment)];
+    }
+
+    private int offset(long slot) {
+        return (int) (slot % perSegment) * entrySize;
+    }
+
+    private long[] scratch() {
+        if (scratch == null)
+            scratch = new long[words];
+        return scratch;
+    }
+
+    /** The number of slots probed from a position's home slot */
+    public static final int PROBE_WINDOW = 16;
+
+    private static final int HEADER        = 32;
+    private static final int CLOSED        = 1;    // expanded at its current g
+    private static final int EXPANDED      = 2;    // expanded at some g, so it may be a parent
+    private static final int SEGMENT_BYTES = 1 << 30;
+
+    private final int          entrySize;
+    private final int          words;
+    private final long         slots;
+    private final long         perSegment;
+    private final ByteBuffer[] segments;
+    private long[]             scratch   = null;
+    private long               size      = 0;
+    private long               evictions = 0;
+}
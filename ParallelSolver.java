@@ -0,0 +1,400 @@
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A multi-threaded version of the push-level A* Solver.
+ *
+ * The open list is kept as buckets of nodes with the same f = g + h and the
+ * same g, taken lowest f first and then deepest first. Each round takes a
+ * batch of nodes of the lowest f, deepest first and across as many buckets
+ * (values of g) as it takes to fill it, and expands them in parallel on a
+ * work-stealing ForkJoinPool, which splits the batch into chunks; each chunk
+ * works on its own fork of the board, and every thread deduplicates through
+ * one shared ConcurrentTranspositionTable. The children go back into their
+ * buckets before the next round. Since a round only takes nodes of the lowest
+ * f, the first goal found is push-optimal, just as with the single-threaded
+ * Solver, and the batches are kept small enough (a few chunks per thread) that
+ * the search still dives towards the goal as the Solver's tie-breaking does.
+ *
+ * Macro pushes and deadlock patterns work as in the Solver. The level analysis
+ * and the pattern store are shared by the threads, and each thread has its own
+ * pattern Matcher and macro scratch.
+ *
+ * By default each thread has its own MatchingHeuristic, which keeps state
+ * between estimates, sharing the distance tables of one built for the search.
+ * A heuristic given to setHeuristic() is shared by all the threads, so it must
+ * be thread-safe (DistanceHeuristic is, as it only reads its table).
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class ParallelSolver {
+    /**
+     * Constructor
+     *
+     * @param threads the number of worker threads (at least 1)
+     */
+    public ParallelSolver(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1");
+        this.threads = threads;
+        this.batch   = threads*GRAIN*2;
+    }
+
+    /**
+     * Use a particular thread-safe heuristic (by default each thread builds a MatchingHeuristic)
+     *
+     * @param heuristic the heuristic (null for the default)
+     */
+    public void setHeuristic(Heuristic heuristic) {
+        this.heuristic = heuristic;
+    }
+
+    /**
+     * Make macro pushes (see Solver.setMacroPushes)
+     *
+     * @param macroPushes use macro pushes?
+     */
+    public void setMacroPushes(boolean macroPushes) {
+        this.macroPushes = macroPushes;
+    }
+
+    /**
+     * Prune pushes that complete a known deadlock pattern, learning new patterns as
+     * the search goes (see Solver.setDeadlockPatterns)
+     *
+     * @param patterns the pattern store (null for none)
+     */
+    public void setDeadlockPatterns(DeadlockPatterns patterns) {
+        this.patterns = patterns;
+    }
+
+    /**
+     * Limit the number of nodes expanded by each search
+     *
+     * @param nodeLimit the maximum number of nodes (0 for no limit)
+     */
+    public void setNodeLimit(long nodeLimit) {
+        if (nodeLimit < 0)
+            throw new IllegalArgumentException("nodeLimit cannot be negative");
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Limit the time taken by each search
+     *
+     * @param timeLimit the maximum time in milliseconds (0 for no limit)
+     */
+    public void setTimeLimit(long timeLimit) {
+        if (timeLimit < 0)
+            throw new IllegalArgumentException("timeLimit cannot be negative");
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * Set the size of the shared transposition table, which is allocated in full for each search
+     *
+     * @param tableSize the maximum number of positions stored
+     */
+    public void setTableSize(int tableSize) {
+        if (tableSize < 1)
+            throw new IllegalArgumentException("tableSize must be positive");
+        this.tableSize = tableSize;
+    }
+
+    /**
+     * Ask a running search (on any thread) to stop as soon as possible. A search
+     * that has not started yet stops as soon as it starts, so a cancel cannot be
+     * lost by arriving just before solve() is called.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Solve a Sokoban puzzle from its current position (the puzzle is not changed)
+     *
+     * @param puzzle the puzzle (cannot be null)
+     * @return the solution
+     */
+    public Solution solve(Sokoban puzzle) {
+        if (puzzle == null)
+            throw new IllegalArgumentException("puzzle cannot be null");
+        return solve(puzzle.fork());
+    }
+
+    /**
+     * Solve a board from its current position (the board is not changed)
+     *
+     * @param start the board (cannot be null)
+     * @return the solution
+     */
+    public Solution solve(Board start) {
+        if (start == null)
+            throw new IllegalArgumentException("start cannot be null");
+        try {
+            return search(start);
+        } finally {
+            cancelled = false;
+        }
+    }
+
+    /**
+     * The parallel search of solve()
+     *
+     * @param start the board (not changed)
+     * @return the solution
+     */
+    private Solution search(Board start) {
+        long started = System.currentTimeMillis();
+        deadline  = (timeLimit > 0) ? started + timeLimit : Long.MAX_VALUE;
+        expanded  = new AtomicLong();
+        goal      = new AtomicReference<>();
+        table     = new ConcurrentTranspositionTable(tableSize);
+        root      = start.fork();
+        root.normalize();
+        analysis  = macroPushes ? new LevelAnalysis(start) : null;
+        Heuristic         custom = heuristic;
+        MatchingHeuristic tables = (custom == null) ? new MatchingHeuristic(start) : null;
+        DeadlockPatterns  store  = patterns;
+        Board             layout = root;
+        workers = ThreadLocal.withInitial(() -> new Worker((custom != null) ? custom : new MatchingHeuristic(tables),
+                                                           (store != null) ? store.matcher(layout) : null));
+
+        int rootH = ((custom != null) ? custom : tables).estimate(root);
+        if (rootH == Heuristic.DEADLOCK)
+            return new Solution(Solution.Status.UNSOLVABLE, null, 0, 0, System.currentTimeMillis() - started);
+        table.improve(root.exactHash(), 0);
+        TreeMap<Long, ArrayList<Node>> open = new TreeMap<>();
+        Node first = new Node(root.snapshot(), null, -1, -1, 0, rootH);
+        open.computeIfAbsent(bucket(first), k -> new ArrayList<>()).add(first);
+
+        Solution.Status status = Solution.Status.UNSOLVABLE;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ArrayList<Node> nodes = new ArrayList<>();
+            while (!open.isEmpty()) {
+                // take a batch of the lowest f, deepest first, leaving the rest for later rounds
+                long f = open.firstKey() >>> 32;
+                nodes.clear();
+                while (!open.isEmpty() && ((open.firstKey() >>> 32) == f) && (nodes.size() < batch)) {
+                    ArrayList<Node> lowest = open.firstEntry().getValue();
+                    List<Node>      tail   = lowest.subList(Math.max(0, lowest.size() - (batch - nodes.size())), lowest.size());
+                    nodes.addAll(tail);
+                    tail.clear();
+                    if (lowest.isEmpty())
+                        open.pollFirstEntry();
+                }
+                ArrayList<Node> children = pool.invoke(new Expand(nodes, 0, nodes.size()));
+                if (goal.get() != null) {
+                    status = Solution.Status.SOLVED;
+                    break;
+                }
+                if (cancelled) {
+                    status = Solution.Status.CANCELLED;
+                    break;
+                }
+                if (limitReached()) {
+                    status = Solution.Status.LIMIT;
+                    break;
+                }
+                for (Node child : children)
+                    open.computeIfAbsent(bucket(child), k -> new ArrayList<>()).add(child);
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        long millis = System.currentTimeMillis() - started;
+        Node found = goal.get();
+        if (found == null)
+            return new Solution(status, null, 0, expanded.get(), millis);
+        int[]       boxes = new int[found.g];
+        Direction[] dirs  = new Direction[found.g];
+        Board       board = root.fork();
+        int[]       macro = (analysis != null) ? new int[analysis.getMaxMacroLength()] : null;
+        int         i     = found.g;
+        for (Node n = found; n.parent != null; n = n.parent) {
+            int extra = 0;
+            if (analysis != null) {
+                // macro pushes are not stored, but made again from the parent
+                board.restore(n.parent.state);
+                Solver.makePush(board, n.box*4 + n.dir);
+                extra = analysis.extend(board, n.box*4 + n.dir, macro);
+            }
+            for (int j=extra-1; j>=0; j--) {
+                boxes[--i] = macro[j] >> 2;
+                dirs[i]    = DIRECTIONS[macro[j] & 3];
+            }
+            boxes[--i] = n.box;
+            dirs[i]    = DIRECTIONS[n.dir];
+        }
+        return new Solution(status, Solver.steps(start, boxes, dirs), found.g, expanded.get(), millis);
+    }
+
+    /**
+     * The bucket of a node: lowest f = g + h first and, within the same f, deepest first
+     * (as the single-threaded Solver breaks ties)
+     */
+    private static long bucket(Node node) {
+        return ((long) (node.g + node.h) << 32) | (Integer.MAX_VALUE - node.g);
+    }
+
+    /**
+     * Has the node, time or table limit been reached?
+     */
+    private boolean limitReached() {
+        return ((nodeLimit > 0) && (expanded.get() >= nodeLimit)) ||
+               (System.currentTimeMillis() > deadline) || table.isFull();
+    }
+
+    /**
+     * Expand part of a bucket, splitting it between threads while it is large
+     */
+    private class Expand extends RecursiveTask<ArrayList<Node>> {
+        Expand(ArrayList<Node> bucket, int from, int to) {
+            this.bucket = bucket;
+            this.from   = from;
+            this.to     = to;
+        }
+
+        @Override
+        protected ArrayList<Node> compute() {
+            if (to - from > GRAIN) {
+                int    mid   = (from + to) >>> 1;
+                Expand left  = new Expand(bucket, from, mid);
+                left.fork();
+                ArrayList<Node> children = new Expand(bucket, mid, to).compute();
+                children.addAll(left.join());
+                return children;
+            }
+            ArrayList<Node> children = new ArrayList<>();
+            if ((goal.get() != null) || cancelled || limitReached())
+                return children;
+            Board     board      = root.fork();
+            int[]     candidates = new int[board.numBoxes()*4];
+            Worker    worker     = workers.get();
+            for (int n=from; n<to; n++) {
+                Node node = bucket.get(n);
+                board.restore(node.state);
+                if (table.get(board.exactHash()) < node.g)
+                    continue; // superseded by a cheaper path to the same position
+                if (board.onTarget()) {
+                    goal.compareAndSet(null, node);
+                    return children;
+                }
+                expanded.incrementAndGet();
+                int numPushes = Solver.listPushes(board, candidates);
+                for (int i=0; i<numPushes; i++) {
+                    Solver.makePush(board, candidates[i]);
+                    int extra = (analysis != null) ? analysis.extend(board, candidates[i], worker.macro) : 0;
+                    int last  = (extra > 0) ? worker.macro[extra-1] : candidates[i];
+                    int g     = node.g+1+extra;
+                    if (((worker.matcher == null) || !worker.matcher.isDeadlocked(board, board.neighbour(last >> 2, DIRECTIONS[last & 3])))
+                        && table.improve(board.exactHash(), g)) {
+                        int childH = worker.h.estimate(board);
+                        if (childH != Heuristic.DEADLOCK)
+                            children.add(new Node(board.snapshot(), node, candidates[i] >> 2, candidates[i] & 3, g, childH));
+                    }
+                    board.restore(node.state);
+                }
+            }
+            return children;
+        }
+
+        private static final long serialVersionUID = 1L;
+
+        private final ArrayList<Node> bucket;
+        private final int             from;
+        private final int             to;
+    }
+
+    /**
+     * What each worker thread keeps to itself
+     */
+    private class Worker {
+        Worker(Heuristic h, DeadlockPatterns.Matcher matcher) {
+            this.h       = h;
+            this.matcher = matcher;
+            this.macro   = (analysis != null) ? new int[analysis.getMaxMacroLength()] : null;
+        }
+
+        final Heuristic               h;
+        final DeadlockPatterns.Matcher matcher;   // null without a pattern store
+        final int[]                   macro;     // the macro pushes made after a push
+    }
+
+    /**
+     * A search node: the position just after a push (and any macro pushes after it)
+     */
+    private static class Node {
+        Node(long[] state, Node parent, int box, int dir, int g, int h) {
+            this.state  = state;
+            this.parent = parent;
+            this.box    = box;
+            this.dir    = (byte) dir;
+            this.g      = g;
+            this.h      = h;
+        }
+
+        final long[] state;
+        final Node   parent;
+        final int    box;     // the square of the box pushed to reach the node (before any macro pushes)
+        final byte   dir;     // the direction it was pushed
+        final int    g;
+        final int    h;
+    }
+
+    /**
+     * Benchmark: solve a screen with 1, 2, 4 ... threads up to a maximum and report the speed-up
+     *
+     * @param args the screen file, then optionally the maximum number of threads
+     *             (default: the number of processors) and the time limit per run in seconds (default 60)
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("usage: java ParallelSolver screen-file [max-threads [seconds]]");
+            return;
+        }
+        int  maxThreads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long seconds    = (args.length > 2) ? Long.parseLong(args[2]) : 60;
+        Sokoban puzzle  = new Sokoban(new File(args[0]));
+        long base = 0;
+        for (int t = 1; ; t = Math.min(t*2, maxThreads)) {
+            ParallelSolver solver = new ParallelSolver(t);
+            solver.setTimeLimit(seconds*1000);
+            Solution solution = solver.solve(puzzle);
+            if (t == 1)
+                base = Math.max(solution.getMillis(), 1);
+            System.out.printf("threads=%-3d %s speed-up=%.2f%n", t, solution,
+                              (double) base / Math.max(solution.getMillis(), 1));
+            if (t == maxThreads)
+                break;
+        }
+    }
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final int         GRAIN      = 64;   // nodes expanded by one task without splitting
+
+    private final int                    threads;
+    private final int                    batch;     // nodes expanded in each parallel round
+    private Heuristic                    heuristic = null;
+    private DeadlockPatterns             patterns  = null;
+    private boolean                      macroPushes = false;
+    private long                         nodeLimit = 0;
+    private long                         timeLimit = 0;
+    private int                          tableSize = 1 << 22;
+    private volatile boolean             cancelled = false;
+
+    // the state of the current search, shared by the worker threads
+    private volatile long                deadline  = Long.MAX_VALUE;
+    private volatile ThreadLocal<Worker> workers   = null;
+    private volatile LevelAnalysis       analysis  = null;
+    private volatile Board               root      = null;
+    private volatile ConcurrentTranspositionTable table = null;
+    private volatile AtomicLong          expanded  = null;
+    private volatile AtomicReference<Node> goal    = null;
+}
@@ -0,0 +1,111 @@
+
+import java.util.*;
+
+/**
+ * An adapter between the two player interfaces: a Player can be used where a
+ * FastPlayer is wanted (each move then builds the Vector it expects), and a
+ * FastPlayer where a Player is wanted. It also converts between the two forms
+ * of a set of moves.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class PlayerAdapter implements Player, FastPlayer {
+    /**
+     * Constructor (exactly one of the players is given)
+     */
+    private PlayerAdapter(Player player, FastPlayer fast) {
+        this.player = player;
+        this.fast   = fast;
+    }
+
+    /**
+     * A FastPlayer for a player: the player itself if it is one, or else an adapter
+     *
+     * @param player the player (cannot be null)
+     * @return the FastPlayer
+     */
+    public static FastPlayer fast(Player player) {
+        if (player == null)
+            throw new IllegalArgumentException("player cannot be null");
+        if (player instanceof FastPlayer)
+            return (FastPlayer) player;
+        return new PlayerAdapter(player, null);
+    }
+
+    /**
+     * A Player for a FastPlayer: the player itself if it is one, or else an adapter
+     *
+     * @param fast the player (cannot be null)
+     * @return the Player
+     */
+    public static Player player(FastPlayer fast) {
+        if (fast == null)
+            throw new IllegalArgumentException("fast cannot be null");
+        if (fast instanceof Player)
+            return (Player) fast;
+        return new PlayerAdapter(null, fast);
+    }
+
+    /**
+     * Choose from a Vector of choices
+     *
+     * @param choices possible directions for the player to choose from
+     * @return the chosen direction
+     */
+    @Override
+    public Direction move(Vector<Direction> choices) {
+        if (player != null)
+            return player.move(choices);
+        if (choices == null)
+            throw new IllegalArgumentException("cannot have null choices");
+        if (choices.isEmpty())
+            throw new IllegalArgumentException("cannot have empty choices");
+        return fast.move(toMask(choices));
+    }
+
+    /**
+     * Choose from a mask of choices
+     *
+     * @param choices possible directions, one bit per Direction ordinal
+     * @return the chosen direction
+     */
+    @Override
+    public Direction move(int choices) {
+        if (fast != null)
+            return fast.move(choices);
+        return player.move(toVector(choices));
+    }
+
+    /**
+     * Convert a Vector of directions to a mask
+     *
+     * @param dirs the directions (cannot be null)
+     * @return the mask, one bit per Direction ordinal
+     */
+    public static int toMask(Vector<Direction> dirs) {
+        if (dirs == null)
+            throw new IllegalArgumentException("dirs cannot be null");
+        int mask = 0;
+        for (Direction dir : dirs)
+            mask |= 1 << dir.ordinal();
+        return mask;
+    }
+
+    /**
+     * Convert a mask of directions to a Vector, in ordinal order (as Sokoban.canMove() gives them)
+     *
+     * @param mask the mask, one bit per Direction ordinal
+     * @return the directions
+     */
+    public static Vector<Direction> toVector(int mask) {
+        Vector<Direction> dirs = new Vector<>();
+        for (Direction dir : Direction.values())
+            if ((mask & (1 << dir.ordinal())) != 0)
+                dirs.add(dir);
+        return dirs;
+    }
+
+    private final Player     player;
+    private final FastPlayer fast;
+}
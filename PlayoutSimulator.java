@@ -0,0 +1,319 @@
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Headless Monte Carlo playouts of a level, for estimating how hard it is.
+ *
+ * A playout starts from the level's starting position and makes the moves
+ * of a RandomPlayer until the boxes are all on target, the position is
+ * deadlocked or a step limit is reached. The playouts are shared out between
+ * a fixed number of threads, each with its own fork of the board, its own
+ * RandomPlayer and its own heuristic; they share only the deadlock pattern
+ * store (see below) until the totals are added up at the end.
+ *
+ * A step allocates next to nothing: the legal moves are a bitmask from
+ * Board.getMoves() rather than a Vector, the player chooses from it as a
+ * FastPlayer, and each playout restores the starting position from a snapshot
+ * into the same board. Only the pattern store allocates, when it proves a
+ * window it has not seen before or misses its per-thread cache.
+ *
+ * The game itself already refuses pushes onto dead squares and into frozen
+ * groups, so those deadlocks never happen in a playout. After each push a
+ * position counts as deadlocked when the pushed box completes a pattern of the
+ * DeadlockPatterns store (boxes that can never all reach targets inside a 4x4
+ * window, such as two boxes side by side along a wall with no target there),
+ * or when the boxes have no assignment to targets (the MatchingHeuristic's
+ * incremental DEADLOCK); it also counts when the actor has no legal move. The
+ * store learns patterns as the playouts meet new windows and is shared by the
+ * threads, so it can be saved and reused like a solver's.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class PlayoutSimulator {
+    /**
+     * Constructor
+     *
+     * @param start the position the playouts start from (cannot be null; not changed)
+     */
+    public PlayoutSimulator(Board start) {
+        if (start == null)
+            throw new IllegalArgumentException("start cannot be null");
+        this.start = start.fork();
+    }
+
+    /**
+     * Set the number of threads the playouts are shared between
+     *
+     * @param threads the number of threads (default: the number of processors)
+     */
+    public void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive");
+        this.threads = threads;
+    }
+
+    /**
+     * Limit the length of each playout
+     *
+     * @param stepLimit the maximum number of moves in a playout (default 1000)
+     */
+    public void setStepLimit(int stepLimit) {
+        if (stepLimit < 1)
+            throw new IllegalArgumentException("stepLimit must be positive");
+        this.stepLimit = stepLimit;
+    }
+
+    /**
+     * Set the seed of the random moves, so that a run can be repeated
+     * (with the same number of threads)
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Use a particular deadlock pattern store (by default each simulator learns its own)
+     *
+     * @param patterns the pattern store (cannot be null)
+     */
+    public void setDeadlockPatterns(DeadlockPatterns patterns) {
+        if (patterns == null)
+            throw new IllegalArgumentException("patterns cannot be null");
+        this.patterns = patterns;
+    }
+
+    /**
+     * Run a number of independent playouts
+     *
+     * @param playouts the number of playouts (at least 1)
+     * @return the statistics over all of them
+     */
+    public Statistics run(long playouts) throws InterruptedException {
+        if (playouts < 1)
+            throw new IllegalArgumentException("playouts must be positive");
+        long started = System.currentTimeMillis();
+        int  n       = (int) Math.min(threads, playouts);
+        ForkJoinPool pool = new ForkJoinPool(n);
+        Statistics total = new Statistics();
+        try {
+            ArrayList<ForkJoinTask<Statistics>> tasks = new ArrayList<>();
+            for (int t=0; t<n; t++) {
+                long share = playouts / n + ((t < playouts % n) ? 1 : 0);
+                long s     = seed + t * SEED_STRIDE;
+                tasks.add(pool.submit(() -> play(share, new RandomPlayer(s))));
+            }
+            for (ForkJoinTask<Statistics> task : tasks)
+                total.add(task.join());
+        }
+        finally {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        total.millis = System.currentTimeMillis() - started;
+        return total;
+    }
+
+    /**
+     * Run playouts on the calling thread
+     *
+     * @param playouts the number of playouts
+     * @param player the thread's player
+     * @return their statistics
+     */
+    private Statistics play(long playouts, FastPlayer player) {
+        Board                    board    = start.fork();
+        Heuristic                h        = new MatchingHeuristic(board);
+        DeadlockPatterns.Matcher matcher  = patterns.matcher(board);
+        long[]                   snapshot = board.snapshot();
+        Statistics               stats    = new Statistics();
+        for (long p=0; p<playouts; p++) {
+            board.restore(snapshot, 0);
+            int  steps    = 0;
+            int  deadlock = 0;    // the step at which the position became deadlocked (0 if it did not)
+            while (!board.onTarget() && (steps < stepLimit)) {
+                int choices = board.getMoves();
+                if (choices == 0) {
+                    deadlock = Math.max(steps, 1);
+                    break;
+                }
+                steps++;
+                Direction dir = player.move(choices);
+                if (board.move(dir) && !board.onTarget()
+                    && (matcher.isDeadlocked(board, board.neighbour(board.getActor(), dir))
+                        || (h.estimate(board) == Heuristic.DEADLOCK))) {
+                    deadlock = steps;
+                    break;
+                }
+            }
+            stats.playouts++;
+            stats.steps    += steps;
+            stats.onTarget += board.numOnTarget();
+            if (board.onTarget())
+                stats.wins++;
+            if (deadlock > 0) {
+                stats.deadlocks++;
+                stats.depths[31 - Integer.numberOfLeadingZeros(deadlock)]++;
+            }
+        }
+        stats.boxes = board.numBoxes();
+        return stats;
+    }
+
+    /**
+     * The totals over a run of playouts
+     */
+    public static class Statistics {
+        /**
+         * Gets the number of playouts
+         *
+         * @return the number of playouts
+         */
+        public long getPlayouts() {
+            return playouts;
+        }
+
+        /**
+         * Gets the fraction of playouts that got every box on target
+         *
+         * @return the win rate (0 to 1)
+         */
+        public double getWinRate() {
+            return (playouts == 0) ? 0 : (double) wins / playouts;
+        }
+
+        /**
+         * Gets the average number of boxes on target at the end of a playout
+         *
+         * @return the average number of boxes on target
+         */
+        public double getAverageOnTarget() {
+            return (playouts == 0) ? 0 : (double) onTarget / playouts;
+        }
+
+        /**
+         * Gets the fraction of playouts that ended deadlocked
+         *
+         * @return the deadlock rate (0 to 1)
+         */
+        public double getDeadlockRate() {
+            return (playouts == 0) ? 0 : (double) deadlocks / playouts;
+        }
+
+        /**
+         * Gets the distribution of the step at which playouts became deadlocked,
+         * in buckets of powers of two: bucket k counts depths from 2^k to 2^(k+1)-1
+         *
+         * @return a copy of the buckets
+         */
+        public long[] getDeadlockDepths() {
+            return depths.clone();
+        }
+
+        /**
+         * Gets the total number of moves made
+         *
+         * @return the number of moves
+         */
+        public long getSteps() {
+            return steps;
+        }
+
+        /**
+         * Gets the time taken by the run
+         *
+         * @return the time in milliseconds
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * Gets the number of moves made per second over the run
+         *
+         * @return the moves per second
+         */
+        public double getStepsPerSecond() {
+            return 1000.0 * steps / Math.max(millis, 1);
+        }
+
+        /**
+         * Add another set of totals to these
+         */
+        void add(Statistics other) {
+            playouts  += other.playouts;
+            wins      += other.wins;
+            deadlocks += other.deadlocks;
+            steps     += other.steps;
+            onTarget  += other.onTarget;
+            boxes      = other.boxes;
+            for (int i=0; i<depths.length; i++)
+                depths[i] += other.depths[i];
+        }
+
+        /**
+         * A String representation of the statistics
+         *
+         * @return the String representation
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("playouts=%d wins=%.4f onTarget=%.2f/%d deadlocked=%.4f steps=%d ms=%d steps/s=%.0f",
+                                    playouts, getWinRate(), getAverageOnTarget(), boxes, getDeadlockRate(),
+                                    steps, millis, getStepsPerSecond()));
+            sb.append(" depths=[");
+            String sep = "";
+            for (int k=0; k<depths.length; k++) {
+                if (depths[k] == 0)
+                    continue;
+                sb.append(sep).append(1L << k).append('-').append((2L << k) - 1).append(':').append(depths[k]);
+                sep = " ";
+            }
+            return sb.append(']').toString();
+        }
+
+        private long   playouts  = 0;
+        private long   wins      = 0;
+        private long   deadlocks = 0;
+        private long   steps     = 0;
+        private long   onTarget  = 0;
+        private int    boxes     = 0;
+        private long   millis    = 0;
+        private long[] depths    = new long[32];
+    }
+
+    /**
+     * Run playouts on every level of a directory or collection and report their statistics
+     *
+     * @param args the directory or file, then optionally the number of playouts per level (default 10000),
+     *             the step limit (default 1000) and the number of threads (default: the number of processors)
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.out.println("usage: java PlayoutSimulator directory-or-file [playouts [steps [threads]]]");
+            return;
+        }
+        long playouts = (args.length > 1) ? Long.parseLong(args[1]) : 10000;
+        int  steps    = (args.length > 2) ? Integer.parseInt(args[2]) : 1000;
+        int  threads  = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        for (BatchSolver.Screen screen : BatchSolver.read(new File(args[0]))) {
+            PlayoutSimulator simulator = new PlayoutSimulator(new Board(screen.text));
+            simulator.setStepLimit(steps);
+            simulator.setThreads(threads);
+            System.out.println(screen.name+": "+simulator.run(playouts));
+        }
+    }
+
+    private static final long SEED_STRIDE = 0x9E3779B97F4A7C15L;
+
+    private final Board      start;
+    private DeadlockPatterns patterns  = new DeadlockPatterns();
+    private int              threads   = Runtime.getRuntime().availableProcessors();
+    private int              stepLimit = 1000;
+    private long             seed      = System.nanoTime();
+}
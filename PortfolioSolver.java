@@ -0,0 +1,532 @@
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A portfolio of search strategies raced against each other on the same level.
+ *
+ * No one strategy is best on every level: the feature search solves levels with
+ * many boxes quickly but not push-optimally, A* finds push-optimal solutions but
+ * can drown in nodes, greedy best-first is fast but easily led astray,
+ * breadth-first search on pushes is steady on small levels, and the
+ * bidirectional search is often quickest on long ones. The portfolio starts
+ * them on threads of their own and takes the first conclusive answer: a
+ * solution, once it has been replayed on the level and found to solve it, or
+ * a proof that there is none. The other strategies are then cancelled (each
+ * stops at its next check, within about a thousand nodes) and waited for.
+ *
+ * Every race is scored for the strategy that won it. The strategies are started
+ * in order of wins, so with fewer threads than strategies the ones that have
+ * won most on the collection so far get to run first; the scores can be saved
+ * and loaded again, so the ordering carries over from one run to the next.
+ *
+ * solve() may be called from several threads at once (as BatchSolver does);
+ * each call runs its own race.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class PortfolioSolver {
+    /**
+     * The search strategies that can take part
+     */
+    public enum Strategy {
+        /** FeatureSolver: quick on levels with many boxes, not push-optimal */
+        FEATURES,
+        /** Solver's A*: push-optimal */
+        ASTAR,
+        /** Solver ordered by the heuristic alone (ties by pushes made) */
+        GREEDY,
+        /** Solver ordered by pushes made alone: breadth-first on pushes, with deadlock pruning */
+        BFS,
+        /** BidirectionalSolver */
+        BIDIRECTIONAL
+    }
+
+    /**
+     * Constructor for a portfolio of every strategy
+     */
+    public PortfolioSolver() {
+        this(Strategy.values());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param strategies the strategies to race, in their order before any wins are scored (at least one)
+     */
+    public PortfolioSolver(Strategy... strategies) {
+        if ((strategies == null) || (strategies.length == 0))
+            throw new IllegalArgumentException("there must be at least one strategy");
+        this.strategies = new ArrayList<>(new LinkedHashSet<>(Arrays.asList(strategies)));
+        this.threads    = Math.min(this.strategies.size(), Runtime.getRuntime().availableProcessors());
+        this.solvers    = this.strategies.size() - (this.strategies.contains(Strategy.BIDIRECTIONAL) ? 1 : 0)
+                                             - (this.strategies.contains(Strategy.FEATURES) ? 1 : 0);
+    }
+
+    /**
+     * Set how many strategies run at once (the others start, in ranking order, as they finish)
+     *
+     * @param threads the number of threads per race (default: one per strategy, at most one per processor)
+     */
+    public void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive");
+        this.threads = threads;
+    }
+
+    /**
+     * Limit the time taken by each strategy
+     *
+     * @param timeLimit the maximum time in milliseconds (0 for no limit)
+     */
+    public void setTimeLimit(long timeLimit) {
+        if (timeLimit < 0)
+            throw new IllegalArgumentException("timeLimit cannot be negative");
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * Limit the number of nodes expanded by each strategy
+     *
+     * @param nodeLimit the maximum number of nodes (0 for no limit)
+     */
+    public void setNodeLimit(long nodeLimit) {
+        if (nodeLimit < 0)
+            throw new IllegalArgumentException("nodeLimit cannot be negative");
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Keep the nodes of the Solver strategies off the heap (see Solver.setTableBudget).
+     * The budget is split evenly between them, so a race never uses more than it.
+     * GREEDY's weight is then lowered to fit the off-heap open list.
+     *
+     * @param tableBudget the number of bytes for all the strategies' tables (0 to keep the nodes on the heap)
+     */
+    public void setTableBudget(long tableBudget) {
+        if (tableBudget < 0)
+            throw new IllegalArgumentException("tableBudget cannot be negative");
+        this.tableBudget = tableBudget;
+    }
+
+    /**
+     * Make macro pushes in the Solver and FeatureSolver strategies (see
+     * Solver.setMacroPushes; on by default). A strategy running out of pushes is
+     * then no longer proof that there is no solution, so only a solution ends the
+     * race early.
+     *
+     * @param macroPushes use macro pushes?
+     */
+    public void setMacroPushes(boolean macroPushes) {
+        this.macroPushes = macroPushes;
+    }
+
+    /**
+     * Share a deadlock pattern store between the Solver and FeatureSolver strategies
+     * (by default the portfolio has a store of its own, kept from one race to the next)
+     *
+     * @param patterns the pattern store (null for none)
+     */
+    public void setDeadlockPatterns(DeadlockPatterns patterns) {
+        this.patterns = patterns;
+    }
+
+    /**
+     * Ask every running race (on any thread) to stop as soon as possible
+     */
+    public void cancel() {
+        for (Race race : races)
+            race.end();
+    }
+
+    /**
+     * Gets the number of races a strategy has won
+     *
+     * @param strategy the strategy
+     * @return the number of wins
+     */
+    public long getWins(Strategy strategy) {
+        return wins.get(strategy.ordinal());
+    }
+
+    /**
+     * Gets the strategy that won the last race to finish
+     *
+     * @return the strategy (null if no race has been won)
+     */
+    public Strategy getWinner() {
+        return winner;
+    }
+
+    /**
+     * Gets the strategies in the order they are started: most wins first, ties in their original order
+     *
+     * @return the strategies
+     */
+    public List<Strategy> getRanking() {
+        ArrayList<Strategy> ranking = new ArrayList<>(strategies);
+        ranking.sort((a, b) -> Long.compare(getWins(b), getWins(a)));
+        return ranking;
+    }
+
+    /**
+     * Solve a Sokoban puzzle from its current position (the puzzle is not changed)
+     *
+     * @param puzzle the puzzle (cannot be null)
+     * @return the solution
+     */
+    public Solution solve(Sokoban puzzle) {
+        if (puzzle == null)
+            throw new IllegalArgumentException("puzzle cannot be null");
+        return solve(puzzle.fork());
+    }
+
+    /**
+     * Solve a board from its current position by racing the strategies (the board is not changed).
+     * The solution's node count is the total over every strategy and its time is the time of the race.
+     *
+     * @param start the board (cannot be null)
+     * @return the solution
+     */
+    public Solution solve(Board start) {
+        if (start == null)
+            throw new IllegalArgumentException("start cannot be null");
+        long started = System.currentTimeMillis();
+        List<Strategy> ranking = getRanking();
+        Race race = new Race(ranking.size());
+        races.add(race);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, ranking.size()));
+        try {
+            for (int i=0; i<ranking.size(); i++) {
+                Strategy strategy = ranking.get(i);
+                Board    board    = start.fork(); // each strategy gets a board of its own
+                int      slot     = i;
+                pool.execute(() -> {
+                    try {
+                        race.finish(new Entry(strategy, run(strategy, board, race, slot), null));
+                    } catch (RuntimeException e) {
+                        race.finish(new Entry(strategy, null, e));
+                    }
+                });
+            }
+            Entry            first    = null;
+            long             nodes    = 0;
+            boolean          limit    = false;
+            RuntimeException error    = null;
+            for (int i=0; i<ranking.size(); i++) {
+                Entry entry = race.next();
+                if (entry.error != null) {
+                    Sokoban.trace("portfolio: "+entry.strategy+" failed: "+entry.error);
+                    if (error == null)
+                        error = new IllegalStateException("portfolio strategy "+entry.strategy+" failed: "+entry.error, entry.error);
+                    continue;
+                }
+                Solution s = entry.solution;
+                nodes += s.getNodes();
+                Sokoban.trace("portfolio: "+entry.strategy+" "+s);
+                if (s.getStatus() == Solution.Status.LIMIT)
+                    limit = true;
+                if ((first == null) && isConclusive(start, s)) {
+                    first = entry;
+                    race.end();
+                }
+            }
+            long millis = System.currentTimeMillis() - started;
+            if (first != null) {
+                wins.incrementAndGet(first.strategy.ordinal());
+                winner = first.strategy;
+                Solution s = first.solution;
+                return new Solution(s.getStatus(), s.getMoves(), s.getNumPushes(), nodes, millis);
+            }
+            if ((error != null) && !race.isOver())
+                throw error;  // an answer may have been missed, so say why
+            Solution.Status status = race.isOver() ? Solution.Status.CANCELLED
+                                   : limit         ? Solution.Status.LIMIT
+                                   :                 Solution.Status.UNSOLVABLE;
+            return new Solution(status, null, 0, nodes, millis);
+        } catch (InterruptedException e) {
+            race.end();
+            Thread.currentThread().interrupt();
+            return new Solution(Solution.Status.CANCELLED, null, 0, 0, System.currentTimeMillis() - started);
+        } finally {
+            races.remove(race);
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Run one strategy, unless the race is already over
+     *
+     * @param strategy the strategy
+     * @param board the starting position (this strategy's own)
+     * @param race the race
+     * @param slot the strategy's place in the race
+     * @return the strategy's solution
+     */
+    private Solution run(Strategy strategy, Board board, Race race, int slot) {
+        if (strategy == Strategy.BIDIRECTIONAL) {
+            BidirectionalSolver solver = new BidirectionalSolver();
+            solver.setTimeLimit(timeLimit);
+            solver.setNodeLimit(nodeLimit);
+            if (!race.enter(slot, solver::cancel))
+                return new Solution(Solution.Status.CANCELLED, null, 0, 0, 0);
+            return solver.solve(board);
+        }
+        if (strategy == Strategy.FEATURES) {
+            FeatureSolver solver = new FeatureSolver();
+            solver.setTimeLimit(timeLimit);
+            solver.setNodeLimit(nodeLimit);
+            solver.setMacroPushes(macroPushes);
+            solver.setDeadlockPatterns(patterns);
+            if (!race.enter(slot, solver::cancel))
+                return new Solution(Solution.Status.CANCELLED, null, 0, 0, 0);
+            return solver.solve(board);
+        }
+        Solver solver = new Solver();
+        solver.setOptimal(true);
+        solver.setTimeLimit(timeLimit);
+        solver.setNodeLimit(nodeLimit);
+        solver.setTableBudget(tableBudget / solvers);
+        solver.setMacroPushes(macroPushes);
+        solver.setDeadlockPatterns(patterns);
+        if (strategy != Strategy.ASTAR) {
+            Heuristic h = new MatchingHeuristic(board);
+            solver.setHeuristic(new Weighted(h, (strategy == Strategy.GREEDY) ? greedyWeight(h, board) : 0));
+        }
+        if (!race.enter(slot, solver::cancel))
+            return new Solution(Solution.Status.CANCELLED, null, 0, 0, 0);
+        return solver.solve(board);
+    }
+
+    /**
+     * The weight of the GREEDY strategy's heuristic. On the heap it is large
+     * enough to order nodes by the estimate alone. Off the heap, f = g + weight * h
+     * must fit the open list (Solver.MAX_OPEN_F), so the weight is cut to leave
+     * room for twice the starting estimate: still greedy, if not purely so.
+     *
+     * @param h the heuristic
+     * @param board the starting position
+     * @return the weight
+     */
+    private int greedyWeight(Heuristic h, Board board) {
+        if (tableBudget == 0)
+            return GREEDY_WEIGHT;
+        int rootH = h.estimate(board);
+        if ((rootH == Heuristic.DEADLOCK) || (rootH == 0))
+            return GREEDY_WEIGHT;
+        return Math.max(1, Math.min(GREEDY_WEIGHT, Solver.MAX_OPEN_F / (2*rootH)));
+    }
+
+    /**
+     * Does a strategy's answer settle the race: a solution that really solves
+     * the level, or (without macro pushes) an exhausted search?
+     */
+    private boolean isConclusive(Board start, Solution s) {
+        if (s.isSolved()) {
+            if (verify(start, s.getMoves()))
+                return true;
+            Sokoban.trace("portfolio: rejected a solution that does not solve the level");
+            return false;
+        }
+        return (s.getStatus() == Solution.Status.UNSOLVABLE) && !macroPushes;
+    }
+
+    /**
+     * Check a solution by replaying it
+     *
+     * @param start the starting position (not changed)
+     * @param moves the moves
+     * @return are all the moves legal, and are all the boxes on target at the end?
+     */
+    public static boolean verify(Board start, List<Direction> moves) {
+        Board board = start.fork();
+        for (Direction dir : moves) {
+            if (!board.canMove(dir))
+                return false;
+            board.move(dir);
+        }
+        return board.onTarget();
+    }
+
+    /**
+     * Add the wins saved in a file to the scores
+     *
+     * @param file the file (one strategy per line: name and wins)
+     */
+    public void load(File file) {
+        if (file == null)
+            throw new IllegalArgumentException("file cannot be null");
+        Scanner fscnr = null;
+        try {
+            fscnr = new Scanner(file);
+            while (fscnr.hasNextLine()) {
+                String line = fscnr.nextLine().trim();
+                if ((line.length() == 0) || (line.charAt(0) == '#'))
+                    continue;
+                String[] fields = line.split("\\s+");
+                if (fields.length != 2)
+                    throw new SokobanException("invalid wins line \""+line+"\"");
+                wins.addAndGet(Strategy.valueOf(fields[0]).ordinal(), Long.parseLong(fields[1]));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            throw new SokobanException(""+e);
+        } finally {
+            if (fscnr != null)
+                fscnr.close();
+        }
+    }
+
+    /**
+     * Save the scores to a file
+     *
+     * @param file the file
+     */
+    public void save(File file) {
+        if (file == null)
+            throw new IllegalArgumentException("file cannot be null");
+        try (PrintStream print = new PrintStream(file)) {
+            print.println("# Sokoban portfolio: races won by each strategy");
+            for (Strategy strategy : Strategy.values())
+                print.println(strategy+" "+getWins(strategy));
+        }
+        catch (IOException e) {
+            throw new SokobanException(""+e);
+        }
+    }
+
+    /**
+     * Race the strategies on a screen and report the winner
+     *
+     * @param args the screen file, then optionally the time limit in seconds (default 60)
+     *             and a file of wins (loaded if present, saved at the end)
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("usage: java PortfolioSolver screen-file [seconds [wins-file]]");
+            return;
+        }
+        long seconds = (args.length > 1) ? Long.parseLong(args[1]) : 60;
+        File file    = (args.length > 2) ? new File(args[2]) : null;
+        PortfolioSolver portfolio = new PortfolioSolver();
+        portfolio.setTimeLimit(seconds*1000);
+        if ((file != null) && file.exists())
+            portfolio.load(file);
+        Solution solution = portfolio.solve(new Sokoban(new File(args[0])));
+        System.out.println(solution+" winner="+portfolio.getWinner());
+        System.out.println("ranking: "+portfolio.getRanking());
+        if (file != null)
+            portfolio.save(file);
+    }
+
+    /**
+     * One race: the strategies taking part register how to cancel them, and
+     * ending the race cancels them all, including any that register later.
+     * Results are handed back through a plain monitor rather than a blocking
+     * queue, so that a race run inside a ForkJoinPool (as BatchSolver does) does
+     * not make the pool start spare threads, and more levels, while it waits.
+     */
+    private static class Race {
+        Race(int size) {
+            cancels = new Runnable[size];
+        }
+
+        /**
+         * Hand back a strategy's result
+         */
+        synchronized void finish(Entry entry) {
+            results.add(entry);
+            notifyAll();
+        }
+
+        /**
+         * Wait for the next strategy to finish
+         */
+        synchronized Entry next() throws InterruptedException {
+            while (results.isEmpty())
+                wait();
+            return results.remove();
+        }
+
+        /**
+         * Register a strategy about to start
+         *
+         * @return false if the race is already over (the strategy should not start)
+         */
+        synchronized boolean enter(int slot, Runnable cancel) {
+            if (over)
+                return false;
+            cancels[slot] = cancel;
+            return true;
+        }
+
+        /**
+         * End the race, cancelling every strategy still running
+         */
+        synchronized void end() {
+            over = true;
+            for (Runnable cancel : cancels)
+                if (cancel != null)
+                    cancel.run();
+        }
+
+        synchronized boolean isOver() {
+            return over;
+        }
+
+        private final Runnable[]        cancels;
+        private final ArrayDeque<Entry> results = new ArrayDeque<>();
+        private boolean                 over    = false;
+    }
+
+    /**
+     * A strategy's result
+     */
+    private static class Entry {
+        Entry(Strategy strategy, Solution solution, RuntimeException error) {
+            this.strategy = strategy;
+            this.solution = solution;
+            this.error    = error;
+        }
+
+        final Strategy         strategy;
+        final Solution         solution; // null if the strategy failed
+        final RuntimeException error;
+    }
+
+    /**
+     * A heuristic scaled by a constant weight: a large weight orders the search by
+     * the estimate alone, and zero by the pushes made alone (deadlocks are still pruned)
+     */
+    private static class Weighted implements Heuristic {
+        Weighted(Heuristic heuristic, int weight) {
+            this.heuristic = heuristic;
+            this.weight    = weight;
+        }
+
+        @Override
+        public int estimate(Board board) {
+            int h = heuristic.estimate(board);
+            return (h == DEADLOCK) ? DEADLOCK : h * weight;
+        }
+
+        private final Heuristic heuristic;
+        private final int       weight;
+    }
+
+    private static final int GREEDY_WEIGHT = 1 << 10;
+
+    private final List<Strategy>     strategies;
+    private final int                solvers;       // the strategies that are Solvers, sharing the table budget
+    private int                      threads;
+    private long                     timeLimit   = 0;
+    private long                     nodeLimit   = 0;
+    private long                     tableBudget = 0;
+    private boolean                  macroPushes = true;
+    private DeadlockPatterns         patterns    = new DeadlockPatterns();
+    private final AtomicLongArray    wins        = new AtomicLongArray(Strategy.values().length);
+    private final Set<Race>          races       = ConcurrentHashMap.newKeySet();
+    private volatile Strategy        winner      = null;
+}
@@ -8,7 +8,7 @@ import java.util.*;
  * @version September 2021
  * 
  */
-public class RandomPlayer implements Player {
+public class RandomPlayer implements Player, FastPlayer {
     /**
      * Default constructor
      */
@@ -16,6 +16,15 @@ public class RandomPlayer implements Player {
         rnd = new Random();
     }
 
+    /**
+     * Constructor for a repeatable sequence of choices
+     * 
+     * @param seed the seed for the random choices
+     */
+    public RandomPlayer(long seed) {
+        rnd = new Random(seed);
+    }
+
     /**
      * Select a random direction from the vector of choices.
      * 
@@ -33,5 +42,24 @@ public class RandomPlayer implements Player {
         return choices.get(idx);
     }
 
+    /**
+     * Select a random direction from a mask of choices (allocating nothing)
+     * 
+     * @param choices possible directions, one bit per Direction ordinal
+     * @return a random direction
+     */
+    @Override
+    public Direction move(int choices) {
+        if ((choices & 15) == 0)
+            throw new IllegalArgumentException("cannot have empty choices");
+        choices &= 15;
+        // clear all but the k-th set bit, for a random k
+        for (int k = rnd.nextInt(Integer.bitCount(choices)); k > 0; k--)
+            choices &= choices - 1;
+        return DIRECTIONS[Integer.numberOfTrailingZeros(choices)];
+    }
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
     private Random rnd = null;
 }
@@ -9,8 +9,7 @@ import java.util.*;
 * @version September 2021
 *
 */
-@SuppressWarnings("deprecation")
-public class Sokoban extends Observable {
+public class Sokoban {
     /**
      * Construct a Sokoban puzzle from a standard Sokoban screen file
      * 
@@ -28,33 +27,19 @@ public class Sokoban extends Observable {
     public Sokoban(String screen) {
         if (screen == null)
             throw new IllegalArgumentException("screen cannot be null");
-        startScreen            = screen;
-        Scanner           scnr = null;
-        ArrayList<String> lines = new ArrayList<>();
-        scnr = new Scanner(screen);
-        while (scnr.hasNextLine()) {
-            String line = scnr.nextLine();
-            if (line.length() > 0) {
-                lines.add(line);
-                numRows++;
-                if (line.length() > numCols)
-                {
-                    numCols = line.length();
-
-                }   
-            }
-        }
-        scnr.close();
-        cells = new Cell[numRows][numCols];
-        for (int row=0; row<numRows; row++) {
-            String line = lines.get(row);
-            for (int col=0; col<numCols; col++) {
-                char display = (col < line.length()) ? line.charAt(col) : Sokoban.EMPTY;
-                cells[row][col] = new Cell(display, this, row, col);
-                if (display == ACTOR || display == TARGET_ACTOR)
-                    actorCell = cells[row][col];
-            }
-        }
+        startScreen = screen;
+        board       = new Board(screen);
+        numRows     = board.getNumRows();
+        numCols     = board.getNumCols();
+        cells       = new Cell[numRows][numCols];
+        for (int row=0; row<numRows; row++)
+            for (int col=0; col<numCols; col++)
+                cells[row][col] = new Cell(board.getDisplay(board.index(row, col)), this, row, col);
+        boxesBefore = new long[board.getNumWords()];
+        boxesAfter  = new long[board.getNumWords()];
+        spareBoxes  = new Occupant[board.numBoxes()];
+        pending     = new int[board.getNumSquares()];
+        pendingBits = new long[board.getNumWords()];
         checkValid();
     }
 
@@ -64,7 +49,7 @@ public class Sokoban extends Observable {
     private void checkValid() {
         assert numBoxes() == numTargets() : "number of boxes and targets must be equal";
         assert numActors() == 1 : "must be exactly one actor";
-        assert actorCell.hasActor() : "actorCell must be valid";
+        assert getActorCell().hasActor() : "actorCell must be valid";
     }
 
     /**
@@ -73,30 +58,89 @@ public class Sokoban extends Observable {
     public void clear() {
         if (startScreen == null)
             throw new IllegalStateException("startScreen cannot be null");
-        Scanner           scnr = null;
-        ArrayList<String> lines = new ArrayList<>();
-        scnr = new Scanner(startScreen);
-        while (scnr.hasNextLine()) {
-            String line = scnr.nextLine();
-            if (line.length() > 0)
-                lines.add(line);
-        }
-        scnr.close();
-        for (int row=0; row<numRows; row++) {
-            String line = lines.get(row);
-            for (int col=0; col<numCols; col++) {
-                char display = (col < line.length()) ? line.charAt(col) : Sokoban.EMPTY;
-                if (cells[row][col].getDisplay() != display) {
-                    cells[row][col].setDisplay(display);
-                    if (display == ACTOR || display == TARGET_ACTOR)
-                        actorCell = cells[row][col];
-                    trace("clear: changing display in ("+row+","+col+")");
-                    setChanged();
-                    notifyObservers(cells[row][col]);
-                }
+        int oldActor = board.getActor();
+        board.copyBoxes(boxesBefore);
+        board.reset();
+        journal.clear();
+        resync(oldActor);
+        fire(ChangeSet.Kind.RESET);
+    }
+
+    /**
+     * Take a snapshot of the current position (boxes and actor only, as a small primitive array)
+     * 
+     * @return the snapshot
+     */
+    public long[] snapshot() {
+        return board.snapshot();
+    }
+
+    /**
+     * Return to a position taken by snapshot(), updating only the cells that differ.
+     * The undo journal is cleared.
+     * 
+     * @param snapshot the snapshot (cannot be null)
+     */
+    public void restore(long[] snapshot) {
+        int oldActor = board.getActor();
+        board.copyBoxes(boxesBefore);
+        board.restore(snapshot);
+        journal.clear();
+        resync(oldActor);
+        fire(ChangeSet.Kind.RESTORE);
+    }
 
+    /**
+     * A headless copy of the current position for search and what-if analysis.
+     * The fork shares the wall and target layout and copies only the box and actor state;
+     * moves on it do not affect this puzzle.
+     * 
+     * @return the forked board
+     */
+    public Board fork() {
+        return board.fork();
+    }
+
+    /**
+     * Bring the cell view into line with the board after it has jumped to another position.
+     * Boxes are lifted off squares that lost a box and reused on squares that gained one,
+     * so no occupants are created, and only changed cells are notified.
+     * 
+     * @param oldActor the actor square before the jump (boxesBefore holds the boxes before it)
+     */
+    private void resync(int oldActor) {
+        board.copyBoxes(boxesAfter);
+        // lift the boxes that are out of place, keeping them for reuse
+        int spare = 0;
+        for (int w=0; w<boxesBefore.length; w++) {
+            for (long bits = boxesBefore[w] & ~boxesAfter[w]; bits != 0L; bits &= bits - 1) {
+                Cell cell = cellAt((w << 6) + Long.numberOfTrailingZeros(bits));
+                spareBoxes[spare++] = cell.getOccupant();
+                cell.setOccupant(null);
+            }
+        }
+        int newActor = board.getActor();
+        if (newActor != oldActor)
+            shift(cellAt(oldActor), cellAt(newActor));
+        // and put them back where they belong
+        for (int w=0; w<boxesBefore.length; w++) {
+            for (long bits = boxesAfter[w] & ~boxesBefore[w]; bits != 0L; bits &= bits - 1) {
+                Cell cell = cellAt((w << 6) + Long.numberOfTrailingZeros(bits));
+                cell.setOccupant(spareBoxes[--spare]);
+                spareBoxes[spare] = null;
             }
         }
+        for (int w=0; w<boxesBefore.length; w++) {
+            for (long bits = boxesBefore[w] ^ boxesAfter[w]; bits != 0L; bits &= bits - 1) {
+                Cell cell = cellAt((w << 6) + Long.numberOfTrailingZeros(bits));
+                trace("resync: changing display in ("+cell.getRow()+","+cell.getCol()+")");
+                changed(cell);
+            }
+        }
+        if (newActor != oldActor) {
+            changed(cellAt(oldActor));
+            changed(cellAt(newActor));
+        }
         checkValid();
     }
 
@@ -131,69 +175,68 @@ public class Sokoban extends Observable {
         return cells[row][col];
     }
 
+    /**
+     * Get the cell for a board square
+     * 
+     * @param sq the square index
+     * @return the cell
+     */
+    private Cell cellAt(int sq) {
+        return cells[sq / numCols][sq % numCols];
+    }
+
     /**
      * Get the actor cell from the Sokoban puzzle
      * 
      * @return the requested cell
      */
     Cell getActorCell() {
-        return actorCell;
+        return cellAt(board.getActor());
+    }
+
+    /**
+     * Get the bitboard game state behind the Sokoban puzzle
+     * 
+     * @return the board
+     */
+    Board getBoard() {
+        return board;
     }
 
     /**
-     * Count the number of targets in the Sokoban puzzle
+     * Gets the number of targets in the Sokoban puzzle
      * 
      * @return the number of targets
      */
     public int numTargets() {
-        int num = 0;
-        for (int row=0; row<numRows; row++)
-            for (int col=0; col<numCols; col++)
-                if (cells[row][col].isTarget())
-                    num++;
-        return num;
+        return board.numTargets();
     }
 
     /**
-     * Count the number of boxes in the Sokoban puzzle
+     * Gets the number of boxes in the Sokoban puzzle
      * 
      * @return the number of boxes
      */
     public int numBoxes() {
-        int num = 0;
-        for (int row=0; row<numRows; row++)
-            for (int col=0; col<numCols; col++)
-                if (cells[row][col].hasBox())
-                    num++;
-        return num;
+        return board.numBoxes();
     }
 
     /**
-     * Count the number of actors in the Sokoban puzzle (should be one)
+     * Gets the number of actors in the Sokoban puzzle (should be one)
      * 
      * @return the number of actors
      */
     public int numActors() {
-        int num = 0;
-        for (int row=0; row<numRows; row++)
-            for (int col=0; col<numCols; col++)
-                if (cells[row][col].hasActor())
-                    num++;
-        return num;
+        return board.numActors();
     }
 
     /**
-     * Count the number of boxes on target cells in the Sokoban puzzle
+     * Gets the number of boxes on target cells in the Sokoban puzzle (kept up to date on every move)
      * 
      * @return the number of boxes on target cells
      */
     public int numOnTarget() {
-        int num = 0;
-        for (int row=0; row<numRows; row++)
-            for (int col=0; col<numCols; col++)
-                if (cells[row][col].onTarget())
-                    num++;
-        return num;
+        return board.numOnTarget();
     }
 
     /**
@@ -202,7 +245,28 @@ public class Sokoban extends Observable {
      * @return are all the boxes on target?
      */
     public boolean onTarget() {
-        return numOnTarget() == numTargets();
+        return board.onTarget();
+    }
+
+    /**
+     * A 64-bit Zobrist key for the current position (boxes plus the actor's reachable region),
+     * suitable for transposition tables and duplicate detection. The first call after
+     * a push costs a flood fill of the region (see Board.hash).
+     * 
+     * @return the position hash
+     */
+    public long hash() {
+        return board.hash();
+    }
+
+    /**
+     * A 64-bit Zobrist key for the exact position (boxes plus the actor's own square),
+     * always O(1)
+     * 
+     * @return the exact position hash
+     */
+    public long exactHash() {
+        return board.exactHash();
     }
 
     /**
@@ -212,7 +276,7 @@ public class Sokoban extends Observable {
      * @return can the actor move to the next cell in a given direction?
      */
     public boolean canMove(Direction dir) {
-        return actorCell.canMove(dir);
+        return board.canMove(dir);
     }
 
     /**
@@ -221,12 +285,16 @@ public class Sokoban extends Observable {
      * @return a vector of available directions
      */
     public Vector<Direction> canMove() {
-        Vector<Direction> dirs = new Vector<>();
-        for (Direction dir : Direction.values()) {
-            if (canMove(dir))
-                dirs.add(dir);
-        }
-        return dirs;
+        return PlayerAdapter.toVector(getMoves());
+    }
+
+    /**
+     * In which directions can the actor move? (as a mask, which allocates nothing; see FastPlayer)
+     * 
+     * @return a mask of the available directions, bit d set for the Direction with ordinal d
+     */
+    public int getMoves() {
+        return board.getMoves();
     }
 
     /**
@@ -237,20 +305,198 @@ public class Sokoban extends Observable {
     public void move(Direction dir) {
         if (!canMove(dir))
             throw new IllegalArgumentException("cannot move "+dir);
-        Cell oldActorCell = actorCell;
-        actorCell.move(dir);
-        actorCell = actorCell.getCell(dir);
-        Cell next = actorCell.getCell(dir);
+        int  from         = board.getActor();
+        Cell oldActorCell = getActorCell();
+        Cell actorCell    = oldActorCell.getCell(dir);
+        Cell next         = actorCell.getCell(dir);
+        boolean pushed    = board.move(dir);
+        // keep the cell view in step with the board
+        if (pushed) {
+            journal.record(from, actorCell.getIndex(), actorCell.getIndex(), next.getIndex());
+            shift(actorCell, next);
+        } else
+            journal.record(from, actorCell.getIndex(), -1, -1);
+        shift(oldActorCell, actorCell);
         if (!actorCell.hasActor())
             throw new IllegalStateException("actorCell must have Actor");
-        setChanged();
-        notifyObservers(oldActorCell); // where actor was
-        setChanged();
-        notifyObservers(actorCell);    // where actor is now
-        if (next != null) {
-            setChanged();
-            notifyObservers(next); // to where box may have been pushed
+        changed(oldActorCell); // where actor was
+        changed(actorCell);    // where actor is now
+        if (pushed)
+            changed(next);     // to where box has been pushed
+        fire(ChangeSet.Kind.MOVE);
+    }
+
+    /**
+     * Is there a move to undo?
+     * 
+     * @return is there a move to undo?
+     */
+    public boolean canUndo() {
+        return journal.canUndo();
+    }
+
+    /**
+     * Is there an undone move to redo?
+     * 
+     * @return is there a move to redo?
+     */
+    public boolean canRedo() {
+        return journal.canRedo();
+    }
+
+    /**
+     * Undo the last move (in constant time, notifying only the cells affected)
+     * 
+     * @return the direction of the move undone
+     */
+    public Direction undo() {
+        journal.undo();
+        int entry = journal.getNumMoves();
+        int from  = journal.getActorFrom(entry);
+        int to    = journal.getActorTo(entry);
+        int box   = journal.getBoxTo(entry);
+        apply(to, from);
+        if (box >= 0)
+            apply(box, to);
+        fire(ChangeSet.Kind.UNDO);
+        return board.direction(from, to);
+    }
+
+    /**
+     * Redo the last undone move (in constant time, notifying only the cells affected)
+     * 
+     * @return the direction of the move redone
+     */
+    public Direction redo() {
+        int entry = journal.getNumMoves();
+        journal.redo();
+        int from  = journal.getActorFrom(entry);
+        int to    = journal.getActorTo(entry);
+        int box   = journal.getBoxTo(entry);
+        if (box >= 0)
+            apply(to, box);
+        apply(from, to);
+        fire(ChangeSet.Kind.REDO);
+        return board.direction(from, to);
+    }
+
+    /**
+     * Move the occupant of one square to another in both the board and the cell view, and note the changed cells
+     * 
+     * @param from the occupied square
+     * @param to the square to move it to
+     */
+    private void apply(int from, int to) {
+        Cell fromCell = cellAt(from);
+        Cell toCell   = cellAt(to);
+        board.relocate(from, to);
+        shift(fromCell, toCell);
+        changed(fromCell);
+        changed(toCell);
+    }
+
+    /**
+     * Move the occupant of one cell to another in the cell view only
+     * 
+     * @param from the occupied cell
+     * @param to the cell to move it to
+     */
+    private void shift(Cell from, Cell to) {
+        to.setOccupant(from.getOccupant());
+        from.setOccupant(null);
+    }
+
+    /**
+     * Make a sequence of moves as one operation: listeners get a single REPLAY
+     * change set at the end instead of one per move
+     * 
+     * @param moves the moves to make (cannot be null)
+     */
+    public void replay(List<Direction> moves) {
+        if (moves == null)
+            throw new IllegalArgumentException("moves cannot be null");
+        beginBatch();
+        try {
+            for (Direction dir : moves)
+                move(dir);
+        } finally {
+            endBatch(ChangeSet.Kind.REPLAY);
+        }
+    }
+
+    /**
+     * Start suppressing notifications: changes are collected until the matching endBatch().
+     * Batches may be nested.
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * End a batch started by beginBatch(); the outermost end notifies listeners once
+     * with every cell changed during the batch
+     * 
+     * @param kind the kind of operation to report
+     */
+    public void endBatch(ChangeSet.Kind kind) {
+        if (batchDepth == 0)
+            throw new IllegalStateException("endBatch without beginBatch");
+        batchDepth--;
+        fire(kind);
+    }
+
+    /**
+     * Add a listener for changes to the puzzle
+     * 
+     * @param listener the listener (cannot be null)
+     */
+    public void addListener(SokobanListener listener) {
+        if (listener == null)
+            throw new IllegalArgumentException("listener cannot be null");
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener for changes to the puzzle
+     * 
+     * @param listener the listener
+     */
+    public void removeListener(SokobanListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Note that a cell has changed (nothing is collected if there are no listeners)
+     * 
+     * @param cell the changed cell
+     */
+    private void changed(Cell cell) {
+        if (listeners.isEmpty())
+            return;
+        int sq = cell.getIndex();
+        if (Board.get(pendingBits, sq))
+            return;
+        Board.set(pendingBits, sq);
+        pending[numPending++] = sq;
+    }
+
+    /**
+     * Notify listeners of the changes collected so far, unless inside a batch
+     * 
+     * @param kind the kind of operation to report
+     */
+    private void fire(ChangeSet.Kind kind) {
+        if ((batchDepth > 0) || (numPending == 0))
+            return;
+        Cell[] changedCells = new Cell[numPending];
+        for (int i=0; i<numPending; i++) {
+            changedCells[i] = cellAt(pending[i]);
+            Board.clear(pendingBits, pending[i]);
         }
+        numPending = 0;
+        ChangeSet changes = new ChangeSet(kind, changedCells);
+        for (SokobanListener listener : new ArrayList<>(listeners))
+            listener.changed(this, changes);
     }
 
     /**
@@ -322,11 +568,20 @@ public class Sokoban extends Observable {
     public static final char TARGET_BOX   = '*';
     public static final char TARGET_ACTOR = '+';
 
-    private int      numRows     = 0;
-    private int      numCols     = 0;
-    private Cell     actorCell   = null;
-    private Cell[][] cells       = null;
-    private String   startScreen = null;
+    private int        numRows     = 0;
+    private int        numCols     = 0;
+    private Board      board       = null;
+    private Journal    journal     = new Journal();
+    private Cell[][]   cells       = null;
+    private String     startScreen = null;
+    private long[]     boxesBefore = null; // scratch for clear() and restore()
+    private long[]     boxesAfter  = null;
+    private Occupant[] spareBoxes  = null;
+    private ArrayList<SokobanListener> listeners = new ArrayList<>();
+    private int[]      pending     = null; // cells changed since the last notification
+    private long[]     pendingBits = null;
+    private int        numPending  = 0;
+    private int        batchDepth  = 0;
 
     private static boolean traceOn = false; // for debugging
 }
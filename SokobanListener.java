@@ -0,0 +1,16 @@
+
+/**
+ * A listener for changes to a Sokoban puzzle.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public interface SokobanListener {
+    /**
+     * Called once per logical operation with every cell it changed
+     *
+     * @param puzzle the puzzle that changed
+     * @param changes the changed cells
+     */
+    public void changed(Sokoban puzzle, ChangeSet changes);
+}
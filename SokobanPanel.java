@@ -11,7 +11,7 @@ import java.util.*;
  * @version January 2022
  */
 
-public class SokobanPanel extends JPanel implements Observer, ActionListener 
+public class SokobanPanel extends JPanel implements SokobanListener, HintListener, ActionListener 
 {
 
     private PanelCell[][] cells         = null;
@@ -19,11 +19,14 @@ public class SokobanPanel extends JPanel implements Observer, ActionListener
     private Sokoban       puzzle        = null;
     private JButton       clear         = null;
     private JButton       undo          = null;
+    private JButton       redo          = null;
     private JButton       save          = null;
     private JButton       load          = null;
     private JButton       exit          = null;
     private JButton       section       = null;
     private JTextArea     status        = null;
+    private String        message       = "";
+    private HintEngine    hints         = null;
     private Level level;
     private ArrayList<Direction>  recordMoves       = null;
     private static String  FILENAME                 = "screens/screen.1";
@@ -41,7 +44,7 @@ public class SokobanPanel extends JPanel implements Observer, ActionListener
     {   
 
         puzzle = new Sokoban(new File(FILENAME));
-        puzzle.addObserver(this);
+        puzzle.addListener(this);
         recordMoves = new ArrayList<Direction>();
 
         // set up main puzzle grid
@@ -59,13 +62,16 @@ public class SokobanPanel extends JPanel implements Observer, ActionListener
 
         setLayout(new BorderLayout());
         add(grid, BorderLayout.NORTH);
-        JPanel center = new JPanel(new GridLayout(1,5));
+        JPanel center = new JPanel(new GridLayout(1,7));
         clear = new JButton("Clear");
         clear.addActionListener(this);
         clear.setFocusable(false); // After pressing the buttons to keep focusing on grid
         undo = new JButton("Undo");
         undo.addActionListener(this);
         undo.setFocusable(false);
+        redo = new JButton("Redo");
+        redo.addActionListener(this);
+        redo.setFocusable(false);
         save = new JButton("Save");
         save.addActionListener(this);
         save.setFocusable(false);
@@ -80,6 +86,7 @@ public class SokobanPanel extends JPanel implements Observer, ActionListener
         section.setFocusable(false);
         center.add(clear);
         center.add(undo);
+        center.add(redo);
         center.add(save);
         center.add(load);
         center.add(section);
@@ -89,6 +96,8 @@ public class SokobanPanel extends JPanel implements Observer, ActionListener
         status = new JTextArea();
         add(new JScrollPane(status), BorderLayout.SOUTH);
         status.setFocusable(false);
+        hints = new HintEngine(puzzle, this);
+        hints.update(puzzle);
     }
 
     /**
@@ -111,21 +120,32 @@ public class SokobanPanel extends JPanel implements Observer, ActionListener
     }
 
     /**
-     * Updates the PanelCells when the underlying model cells are assigned
+     * Updates the PanelCells once per model operation, for just the cells it changed
      * 
-     * @param o the observable
-     * @param arg the cell that was assigned
+     * @param p the puzzle that changed
+     * @param changes the cells that changed
      */
     @Override
-    public void update(Observable o, Object arg) {
-        if (arg == null)
-            throw new SokobanException("arg is null");
-        Cell c = (Cell) arg;
-        cells[c.getRow()][c.getCol()].addIcon(c.getDisplay());
+    public void changed(Sokoban p, ChangeSet changes) {
+        if (changes == null)
+            throw new SokobanException("changes is null");
+        for (Cell c : changes.getCells())
+            cells[c.getRow()][c.getCol()].addIcon(c.getDisplay());
+        hints.update(p); // returns at once: the search runs on the hint engine's thread
     }
 
     /**
-     * Action event: handle the button presses (clear, undo, save, load and exit)
+     * Shows the hint engine's latest verdict under the status message
+     * 
+     * @param engine the engine with the new hint
+     */
+    @Override
+    public void hintChanged(HintEngine engine) {
+        setStatus(message);
+    }
+
+    /**
+     * Action event: handle the button presses (clear, undo, redo, save, load and exit)
      * 
      * @param ae the ActionEvent
      */
@@ -136,6 +156,8 @@ public class SokobanPanel extends JPanel implements Observer, ActionListener
             clear();
         else if (ae.getSource() == undo)
             undo();
+        else if (ae.getSource() == redo)
+            redo();
         else if (ae.getSource() == save)
             save();
         else if (ae.getSource() == load)
@@ -154,6 +176,7 @@ public class SokobanPanel extends JPanel implements Observer, ActionListener
         else
             return;
         recordMoves.removeAll(recordMoves);
+        hints.shutdown();
         frame.dispose();
         frame = new JFrame("Sokoban");
         SokobanPanel panel = new SokobanPanel();
@@ -170,8 +193,10 @@ public class SokobanPanel extends JPanel implements Observer, ActionListener
         int input = JOptionPane.showConfirmDialog(null, 
                 "Are you sure?", "Exit",JOptionPane.YES_NO_OPTION);
 
-        if (input == JOptionPane.YES_OPTION)
+        if (input == JOptionPane.YES_OPTION) {
+            hints.shutdown();
             frame.dispose();
+        }
     }
 
     /**
@@ -181,7 +206,8 @@ public class SokobanPanel extends JPanel implements Observer, ActionListener
         recordMoves.removeAll(recordMoves);
         puzzle = new Sokoban(new File(FILENAME));
         updatePanel();
-        puzzle.addObserver(this);
+        puzzle.addListener(this);
+        hints.update(puzzle);
         setStatus("game has been reset");
     }
 
@@ -189,16 +215,25 @@ public class SokobanPanel extends JPanel implements Observer, ActionListener
      * Undo the last user move
      */
     private void undo(){
-        puzzle.clear();
-        if(recordMoves.size() > 0)
-        {
-            recordMoves.remove(recordMoves.size()-1); // clear the last move
-            trace("recordMoves: " + recordMoves);
-            for(Direction oneDirection:recordMoves)
-            {
-                puzzle.move(oneDirection);
-            }
+        if (!puzzle.canUndo()) {
+            setStatus("nothing to undo");
+            return;
         }
+        puzzle.undo();
+        recordMoves.remove(recordMoves.size()-1); // clear the last move
+        trace("recordMoves: " + recordMoves);
+    }
+
+    /**
+     * Redo the last undone user move
+     */
+    private void redo(){
+        if (!puzzle.canRedo()) {
+            setStatus("nothing to redo");
+            return;
+        }
+        recordMoves.add(puzzle.redo());
+        onTarget();
     }
 
     /**
@@ -216,36 +251,46 @@ public class SokobanPanel extends JPanel implements Observer, ActionListener
         {
             puzzle = new Sokoban(new File(FILENAME));
             recordMoves.removeAll(recordMoves);
-            puzzle.addObserver(this);
+            puzzle.addListener(this);
         }
         else
         {
             setStatus("the saved file is not suitable for this screen/section");
             return;
         }
+        String status = "game loaded from file";
         try {
 
             fscnr = new Scanner(new File(SAVEFILE));
+            ArrayList<Direction> moves = new ArrayList<Direction>();
             while (fscnr.hasNextLine())
             {
                 sb.append(fscnr.nextLine());
                 trace(sb.toString());
-                Direction d = Direction.fromString(sb.toString());
-                puzzle.move(d);
-                recordMoves.add(d); 
+                Direction dir = Direction.fromString(sb.toString());
+                if (dir == null)
+                    throw new SokobanException("invalid saved move \""+sb+"\"");
+                moves.add(dir);
                 sb.setLength(0); // clears the buffer to add one by one
 
             }
+            puzzle.replay(moves); // one notification for the whole replay
+            recordMoves.addAll(moves);
         } catch(IOException e) {
-            setStatus("an i/o error occurred");
+            status = "an i/o error occurred";
+        } catch(SokobanException | IllegalArgumentException e) {
+            // a corrupt or illegal move: drop the partial replay so undo and save match the board
+            puzzle.clear();
+            recordMoves.clear();
+            status = "the saved moves are not valid for this screen ("+e.getMessage()+")";
         } finally {
             if (fscnr != null)
                 fscnr.close();
         }
-        fscnr.close();
         trace("row: " + row + "col: " + col + "rowS: " + rowS + "cols: " + colS);
         updatePanel();
-        setStatus("game loaded from file");
+        hints.update(puzzle);
+        setStatus(status);
 
     }
 
@@ -275,12 +320,14 @@ public class SokobanPanel extends JPanel implements Observer, ActionListener
     }
 
     /**
-     * Sets the status bar to a given string
+     * Sets the status bar to a given string, followed by the current hint
      * 
      * @param s the new status
      */
     void setStatus(String s) {
-        status.setText(s);
+        message = s;
+        String hint = (hints == null) ? "" : hints.toString();
+        status.setText(hint.isEmpty() ? s : s + "\n" + hint);
     }
 
     /**
@@ -0,0 +1,283 @@
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Runnable regression checks for the game model and the solvers, for use
+ * without a test framework: run from the project directory (so that screens/
+ * can be found) with
+ *
+ *   java SokobanTests
+ *
+ * Each check prints ok or FAILED with the reason, and the exit status is the
+ * number of checks that failed. The random checks are seeded, so a failure
+ * can be repeated.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class SokobanTests {
+    /**
+     * A check that fails by throwing
+     */
+    private interface Check {
+        void run() throws Exception;
+    }
+
+    /**
+     * Run every check and report the results
+     *
+     * @param args ignored
+     */
+    public static void main(String[] args) {
+        int failed = 0;
+        failed += check("solver solves screen 1 push-optimally", SokobanTests::solverOptimal);
+        failed += check("solver solves off the heap", SokobanTests::solverOffHeap);
+        failed += check("solver solves every screen within seconds", SokobanTests::solverScreens);
+        failed += check("solver plays as a Player after deviations", SokobanTests::solverPlayer);
+        failed += check("off-heap table keeps expanded nodes", SokobanTests::offHeapKeepsParents);
+        failed += check("undo and redo match a replay", SokobanTests::undoRedo);
+        failed += check("snapshot, restore and fork", SokobanTests::snapshotRestore);
+        failed += check("matching heuristic is consistent and admissible", SokobanTests::matchingHeuristic);
+        failed += check("optimizer keeps solutions valid and no longer", SokobanTests::optimizer);
+        failed += check("playouts are repeatable and add up", SokobanTests::playouts);
+        failed += check("portfolio solves off the heap", SokobanTests::portfolio);
+        System.out.println((failed == 0) ? "all checks passed" : failed+" checks FAILED");
+        System.exit(failed);
+    }
+
+    /**
+     * Run one check
+     *
+     * @return 1 if it failed, otherwise 0
+     */
+    private static int check(String name, Check check) {
+        long started = System.currentTimeMillis();
+        try {
+            check.run();
+            System.out.println("ok      "+name+" ("+(System.currentTimeMillis() - started)+" ms)");
+            return 0;
+        } catch (Exception | AssertionError e) {
+            System.out.println("FAILED  "+name+": "+e);
+            return 1;
+        }
+    }
+
+    private static void expect(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    private static Sokoban screen(int n) {
+        return new Sokoban(new File("screens/screen."+n));
+    }
+
+    /**
+     * Does a solution really solve the puzzle it was found for?
+     */
+    private static void expectSolves(Sokoban puzzle, Solution solution) {
+        expect(solution.isSolved(), "not solved: "+solution);
+        expect(PortfolioSolver.verify(puzzle.fork(), solution.getMoves()), "the moves do not solve the level: "+solution);
+    }
+
+    private static void solverOptimal() {
+        Sokoban  puzzle   = screen(1);
+        Solver   solver   = new Solver();
+        solver.setOptimal(true);
+        Solution solution = solver.solve(puzzle);
+        expectSolves(puzzle, solution);
+        expect(solution.getNumPushes() == SCREEN1_PUSHES, "expected "+SCREEN1_PUSHES+" pushes: "+solution);
+        Solution twoBoxes = solver.solve(new Sokoban(TINY));
+        expectSolves(new Sokoban(TINY), twoBoxes);
+        expect(twoBoxes.getNumPushes() == TINY_PUSHES, "expected "+TINY_PUSHES+" pushes: "+twoBoxes);
+    }
+
+    private static void solverOffHeap() {
+        Sokoban puzzle = screen(1);
+        Solver  solver = new Solver();
+        solver.setOptimal(true);
+        solver.setTableBudget(64L << 20);
+        Solution solution = solver.solve(puzzle);
+        expectSolves(puzzle, solution);
+        expect(solution.getNumPushes() == SCREEN1_PUSHES, "expected "+SCREEN1_PUSHES+" pushes: "+solution);
+        // a weighted heuristic reopens nodes, which must leave the path back intact
+        Heuristic matching = new MatchingHeuristic(puzzle.fork());
+        solver.setHeuristic(b -> {
+            int h = matching.estimate(b);
+            return (h == Heuristic.DEADLOCK) ? h : 3*h;
+        });
+        solver.setTableBudget(1L << 20);
+        Solution weighted = solver.solve(puzzle);
+        if (weighted.isSolved())
+            expectSolves(puzzle, weighted);
+    }
+
+    private static void solverScreens() {
+        Solver solver = new Solver();
+        solver.setTimeLimit(SCREEN_SECONDS*1000);
+        for (int level=1; level<=10; level++) {
+            Sokoban  puzzle   = screen(level);
+            Solution solution = solver.solve(puzzle);
+            expect(solution.isSolved(), "screen "+level+" not solved: "+solution);
+            expectSolves(puzzle, solution);
+        }
+    }
+
+    private static void solverPlayer() {
+        Sokoban puzzle = new Sokoban(TINY);
+        Solver  solver = new Solver(puzzle);
+        puzzle.move(Direction.SOUTH);  // leave the start before the first plan
+        for (int n=0; (n < 100) && !puzzle.onTarget(); n++) {
+            puzzle.move(solver.move(puzzle.getMoves()));
+            if (n == 3)
+                puzzle.move(puzzle.canMove().firstElement());  // and again part way through
+        }
+        expect(puzzle.onTarget(), "the Solver did not finish the level");
+    }
+
+    private static void offHeapKeepsParents() {
+        Board board = new Board(TINY);
+        int   len   = board.getSnapshotLength();
+        OffHeapTranspositionTable table = new OffHeapTranspositionTable((32L + 8*len)*OffHeapTranspositionTable.PROBE_WINDOW, len);
+        long parent = 1000;
+        table.close(table.put(parent, 0, 5, 100, 0, board));
+        table.put(parent, 0, 2, 100, 0, board);  // reached again more cheaply: reopened, worst f
+        expect(!table.isClosed(table.find(parent)), "a node reached more cheaply was not reopened");
+        for (long child=1; child<OffHeapTranspositionTable.PROBE_WINDOW; child++)
+            table.put(child, parent, 6, 1, 0, board);
+        table.put(99, 0, 1, 1, 0, board);  // the window is full, so a node must go
+        expect(table.find(parent) >= 0, "an expanded node with children was evicted");
+    }
+
+    private static void undoRedo() {
+        for (int level=1; level<=10; level++) {
+            Random  rnd    = new Random(level);
+            Sokoban puzzle = screen(level);
+            ArrayList<Direction> done   = new ArrayList<>();
+            ArrayList<Direction> undone = new ArrayList<>();
+            for (int i=0; i<2000; i++) {
+                int k = rnd.nextInt(10);
+                if ((k < 2) && puzzle.canUndo()) {
+                    Direction dir = puzzle.undo();
+                    expect(dir == done.remove(done.size()-1), "undo returned the wrong move");
+                    undone.add(dir);
+                } else if ((k < 3) && puzzle.canRedo()) {
+                    Direction dir = puzzle.redo();
+                    expect(dir == undone.remove(undone.size()-1), "redo returned the wrong move");
+                    done.add(dir);
+                } else {
+                    Vector<Direction> choices = puzzle.canMove();
+                    if (choices.isEmpty())
+                        continue;
+                    Direction dir = choices.get(rnd.nextInt(choices.size()));
+                    puzzle.move(dir);
+                    done.add(dir);
+                    undone.clear();
+                    expect(!puzzle.canRedo(), "redo still possible after a move");
+                }
+                if (i % 100 == 0) {
+                    Sokoban replay = screen(level);
+                    for (Direction dir : done)
+                        replay.move(dir);
+                    expect(replay.toString().equals(puzzle.toString()) && (replay.numOnTarget() == puzzle.numOnTarget())
+                           && replay.canMove().equals(puzzle.canMove()), "screen "+level+" differs from a replay at step "+i);
+                }
+            }
+        }
+    }
+
+    private static void snapshotRestore() {
+        for (int level=1; level<=10; level++) {
+            Random  rnd    = new Random(level);
+            Sokoban puzzle = screen(level);
+            ArrayList<long[]> snapshots = new ArrayList<>();
+            ArrayList<String> views     = new ArrayList<>();
+            ArrayList<Long>   hashes    = new ArrayList<>();
+            for (int i=0; i<5000; i++) {
+                Vector<Direction> choices = puzzle.canMove();
+                if (!choices.isEmpty())
+                    puzzle.move(choices.get(rnd.nextInt(choices.size())));
+                if (i % 500 == 0) {
+                    snapshots.add(puzzle.snapshot());
+                    views.add(puzzle.toString());
+                    hashes.add(puzzle.hash());
+                    String before = puzzle.toString();
+                    Board  fork   = puzzle.fork();
+                    expect(fork.toString().equals(before) && (fork.hash() == puzzle.hash()), "a fork differs from its puzzle");
+                    for (int k=0; (k < 500) && (fork.getMoves() != 0); k++)
+                        fork.move(new RandomPlayer(k).move(fork.getMoves()));
+                    expect(puzzle.toString().equals(before), "moving a fork changed its puzzle");
+                    expect(fork.hash() == new Board(fork.toString()).hash(), "a fork's hash differs from a fresh board's");
+                }
+                if ((i % 1700 == 0) && !snapshots.isEmpty()) {
+                    int k = rnd.nextInt(snapshots.size());
+                    puzzle.restore(snapshots.get(k));
+                    expect(puzzle.toString().equals(views.get(k)) && (puzzle.hash() == hashes.get(k)), "restore did not bring back the snapshot");
+                }
+            }
+        }
+    }
+
+    private static void matchingHeuristic() {
+        Random rnd = new Random(1);
+        for (int level=1; level<=10; level++) {
+            Board             start       = screen(level).fork();
+            MatchingHeuristic incremental = new MatchingHeuristic(start);
+            DistanceHeuristic distance    = new DistanceHeuristic(start);
+            for (int game=0; game<20; game++) {
+                Board board = start.fork();
+                for (int step=0; (step < 200) && (board.getMoves() != 0); step++) {
+                    board.move(new RandomPlayer(rnd.nextLong()).move(board.getMoves()));
+                    int h = incremental.estimate(board);
+                    expect(h == new MatchingHeuristic(start).estimate(board), "incremental and fresh estimates differ on screen "+level);
+                    expect((h == Heuristic.DEADLOCK) || (h >= distance.estimate(board)), "matching estimate below the distance estimate");
+                }
+            }
+        }
+        expect(new MatchingHeuristic(new Board(TINY)).estimate(new Board(TINY)) <= TINY_PUSHES, "estimate above the optimal pushes");
+    }
+
+    private static void optimizer() {
+        Sokoban  puzzle   = screen(1);
+        Solution solution = new BidirectionalSolver().solve(puzzle);
+        expectSolves(puzzle, solution);
+        SolutionOptimizer optimizer = new SolutionOptimizer();
+        List<Direction>   better    = optimizer.optimize(puzzle, solution.getMoves());
+        expect(PortfolioSolver.verify(puzzle.fork(), better), "the optimised moves do not solve the level");
+        expect(better.size() <= solution.getNumMoves(), "the optimised solution is longer");
+        expect(optimizer.getPushesAfter() <= optimizer.getPushesBefore(), "the optimised solution has more pushes");
+    }
+
+    private static void playouts() throws InterruptedException {
+        PlayoutSimulator simulator = new PlayoutSimulator(new Board(TINY));
+        simulator.setThreads(2);
+        simulator.setStepLimit(200);
+        simulator.setSeed(42);
+        PlayoutSimulator.Statistics first  = simulator.run(2000);
+        PlayoutSimulator.Statistics second = simulator.run(2000);
+        expect(first.getPlayouts() == 2000, "wrong number of playouts: "+first);
+        expect((first.getSteps() == second.getSteps()) && (first.getWinRate() == second.getWinRate()), "seeded runs differ");
+        expect(first.getWinRate() + first.getDeadlockRate() <= 1, "more wins and deadlocks than playouts: "+first);
+        long deadlocks = 0;
+        for (long bucket : first.getDeadlockDepths())
+            deadlocks += bucket;
+        expect(deadlocks == Math.round(first.getDeadlockRate() * first.getPlayouts()), "the depth buckets do not add up: "+first);
+        expect(first.getWinRate() > 0, "no playout solved the two-box level: "+first);
+    }
+
+    private static void portfolio() {
+        Sokoban         puzzle    = screen(1);
+        PortfolioSolver portfolio = new PortfolioSolver(PortfolioSolver.Strategy.GREEDY);
+        portfolio.setTableBudget(64L << 20);
+        portfolio.setTimeLimit(30000);
+        expectSolves(puzzle, portfolio.solve(puzzle));
+        expect(portfolio.getWinner() == PortfolioSolver.Strategy.GREEDY, "GREEDY did not win on its own");
+    }
+
+    /** A small level with two boxes, solved in TINY_PUSHES pushes */
+    private static final String TINY = "########\n#. $ @ #\n#  $   #\n#.     #\n########\n";
+
+    private static final int TINY_PUSHES    = 5;
+    private static final int SCREEN1_PUSHES = 97;
+    private static final int SCREEN_SECONDS = 10;
+}
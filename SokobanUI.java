@@ -19,6 +19,7 @@ public class SokobanUI {
         scnr   = new Scanner(System.in);
         puzzle = new Sokoban(new File(FILENAME));
         player = new RandomPlayer();
+        solver = new Solver(puzzle);
         recordMoves = new ArrayList<Direction>();
     }
 
@@ -51,7 +52,9 @@ public class SokobanUI {
         System.out.println("   Move East          [E]");
         System.out.println("   Move West          [W]");
         System.out.println("   Player move        [P]");
+        System.out.println("   Solver move        [A]");
         System.out.println("   Undo move          [U]");
+        System.out.println("   Redo move          [R]");
         System.out.println("   Restart puzzle [Clear]");
         System.out.println("   Save to file    [Save]");
         System.out.println("   Load from file  [Load]");
@@ -87,8 +90,12 @@ public class SokobanUI {
             west();
         } else if (command.equalsIgnoreCase("P")) {
             playerMove();
+        } else if (command.equalsIgnoreCase("A")) {
+            solverMove();
         } else if (command.equalsIgnoreCase("U")) {
             undo();
+        } else if (command.equalsIgnoreCase("R")) {
+            redo();
         } else if (command.equalsIgnoreCase("Clear")) {
             clear();
         } else if (command.equalsIgnoreCase("Save")) {
@@ -132,15 +139,25 @@ public class SokobanUI {
      * Undo the last user move
      */
     private void undo(){
-        puzzle.clear();
-        if(recordMoves.size() > 0)
-        {
-            recordMoves.remove(recordMoves.size()-1);
-            for(Direction oneDirection:recordMoves)
-            {
-                puzzle.move(oneDirection);
-            }
+        if (!puzzle.canUndo()) {
+            System.out.println("nothing to undo");
+            return;
         }
+        puzzle.undo();
+        recordMoves.remove(recordMoves.size()-1);
+    }
+
+    /**
+     * Redo the last undone user move
+     */
+    private void redo(){
+        if (!puzzle.canRedo()) {
+            System.out.println("nothing to redo");
+            return;
+        }
+        recordMoves.add(puzzle.redo());
+        if (puzzle.onTarget())
+            System.out.println("game won!");
     }
 
     /**
@@ -149,6 +166,7 @@ public class SokobanUI {
     private void clear(){
         recordMoves.removeAll(recordMoves);
         puzzle = new Sokoban(new File(FILENAME));
+        solver = new Solver(puzzle);
     }
 
     /**
@@ -175,6 +193,7 @@ public class SokobanUI {
         StringBuffer sb    = new StringBuffer();
         recordMoves.removeAll(recordMoves); 
         puzzle = new Sokoban(new File(FILENAME));
+        solver = new Solver(puzzle);
         try{
             fscnr = new Scanner(new File(saveFile));
 
@@ -199,11 +218,21 @@ public class SokobanUI {
      * Move the actor according to the computer player's choice
      */
     private void playerMove() {
-        Vector<Direction> choices = puzzle.canMove();
-        Direction         choice  = player.move(choices);
-        move(choice);
+        move(player.move(puzzle.getMoves()));
     }  
 
+    /**
+     * Move the actor along a solution found by the solver
+     */
+    private void solverMove() {
+        int choices = puzzle.getMoves();
+        if (choices == 0) {
+            System.out.println("no moves possible");
+            return;
+        }
+        move(solver.move(choices));
+    }
+
     /**
      * If it is safe, move the actor to the next cell in a given direction
      * 
@@ -239,7 +268,8 @@ public class SokobanUI {
 
     private Scanner scnr                        = null;
     private Sokoban puzzle                      = null;
-    private Player  player                      = null;
+    private FastPlayer player                   = null;
+    private FastPlayer solver                   = null;
     private ArrayList<Direction>  recordMoves   = null;
     private String  saveFile                    = "save.txt";
     private static String  FILENAME = "screens/screen.1";
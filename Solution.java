@@ -0,0 +1,123 @@
+
+import java.util.*;
+
+/**
+ * The result of running a Solver on a Sokoban position: the moves found (if any)
+ * and what the search cost.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class Solution {
+    /**
+     * How a search ended
+     */
+    public enum Status {
+        /** a solution was found */
+        SOLVED,
+        /** the whole search space was exhausted: the position cannot be solved */
+        UNSOLVABLE,
+        /** a node, time or memory limit was reached first */
+        LIMIT,
+        /** the search was cancelled */
+        CANCELLED
+    }
+
+    /**
+     * Constructor
+     *
+     * @param status how the search ended (cannot be null)
+     * @param moves the moves that solve the position (empty unless solved)
+     * @param pushes the number of those moves that push a box
+     * @param nodes the number of nodes expanded
+     * @param millis the time taken in milliseconds
+     */
+    public Solution(Status status, List<Direction> moves, int pushes, long nodes, long millis) {
+        if (status == null)
+            throw new IllegalArgumentException("status cannot be null");
+        this.status = status;
+        this.moves  = (moves == null) ? Collections.<Direction>emptyList() : Collections.unmodifiableList(new ArrayList<Direction>(moves));
+        this.pushes = pushes;
+        this.nodes  = nodes;
+        this.millis = millis;
+    }
+
+    /**
+     * Was a solution found?
+     *
+     * @return was a solution found?
+     */
+    public boolean isSolved() {
+        return status == Status.SOLVED;
+    }
+
+    /**
+     * Gets how the search ended
+     *
+     * @return the status
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Gets the moves that solve the position
+     *
+     * @return an unmodifiable list of moves (empty unless solved)
+     */
+    public List<Direction> getMoves() {
+        return moves;
+    }
+
+    /**
+     * Gets the number of moves in the solution
+     *
+     * @return the number of moves
+     */
+    public int getNumMoves() {
+        return moves.size();
+    }
+
+    /**
+     * Gets the number of moves in the solution that push a box
+     *
+     * @return the number of pushes
+     */
+    public int getNumPushes() {
+        return pushes;
+    }
+
+    /**
+     * Gets the number of nodes expanded by the search
+     *
+     * @return the number of nodes expanded
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Gets the time taken by the search
+     *
+     * @return the time in milliseconds
+     */
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * A String representation of the solution
+     *
+     * @return the String representation
+     */
+    @Override
+    public String toString() {
+        return status+" moves="+moves.size()+" pushes="+pushes+" nodes="+nodes+" ms="+millis;
+    }
+
+    private final Status          status;
+    private final List<Direction> moves;
+    private final int             pushes;
+    private final long            nodes;
+    private final long            millis;
+}
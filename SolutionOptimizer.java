@@ -0,0 +1,377 @@
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Shortens an existing solution (or any legal move sequence) of a level.
+ *
+ * The moves are replayed to find the pushes they make. Then every run of up
+ * to window pushes is searched again, from the exact position before it to
+ * the same boxes after it, with the actor able to walk on to the push that
+ * follows. The search is an A* ordered first by pushes and then by moves, so a
+ * run is replaced when there is a way with fewer pushes, or as many pushes and
+ * fewer moves. Passes are repeated until no run improves. Finally the actor's
+ * walks are rebuilt as shortest paths, and any walking after the last push is
+ * dropped.
+ *
+ * The result is never longer than the input and reaches the same boxes, but it
+ * is only locally optimal: improvements needing more than window pushes to
+ * see are not found.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class SolutionOptimizer {
+    /**
+     * Set the longest run of pushes searched again at once (default 8)
+     *
+     * @param window the number of pushes (at least 2)
+     */
+    public void setWindow(int window) {
+        if (window < 2)
+            throw new IllegalArgumentException("window must be at least 2");
+        this.window = window;
+    }
+
+    /**
+     * Limit the number of nodes expanded in searching one run
+     *
+     * @param nodeLimit the maximum number of nodes (at least 1)
+     */
+    public void setNodeLimit(int nodeLimit) {
+        if (nodeLimit < 1)
+            throw new IllegalArgumentException("nodeLimit must be at least 1");
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Shorten the moves of a puzzle from its current position (the puzzle is not changed)
+     *
+     * @param puzzle the puzzle (cannot be null)
+     * @param moves the moves (cannot be null, and must be legal)
+     * @return the shortened moves
+     */
+    public List<Direction> optimize(Sokoban puzzle, List<Direction> moves) {
+        if (puzzle == null)
+            throw new IllegalArgumentException("puzzle cannot be null");
+        return optimize(puzzle.fork(), moves);
+    }
+
+    /**
+     * Shorten the moves from a position (the board is not changed)
+     *
+     * @param start the position (cannot be null)
+     * @param moves the moves (cannot be null, and must be legal)
+     * @return the shortened moves
+     */
+    public List<Direction> optimize(Board start, List<Direction> moves) {
+        if ((start == null) || (moves == null))
+            throw new IllegalArgumentException("start and moves cannot be null");
+        ArrayList<Integer> pushes = new ArrayList<>();
+        Board board = start.fork();
+        for (int i=0; i<moves.size(); i++) {
+            Direction dir = moves.get(i);
+            if (!board.canMove(dir))
+                throw new IllegalArgumentException("move "+i+" ("+dir+") is not legal");
+            int at = board.getActor();
+            if (board.move(dir))
+                pushes.add(board.neighbour(at, dir)*4 + dir.ordinal());
+        }
+        movesBefore  = moves.size();
+        pushesBefore = pushes.size();
+        searched     = 0;
+
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            // positions[k] is the exact position before push k
+            ArrayList<long[]> positions = replay(start, pushes);
+            for (int i=0; i+1 < pushes.size(); i++) {
+                int j = Math.min(pushes.size(), i+window);
+                List<Integer> better = search(positions.get(i), positions.get(j), start,
+                                              pushes.subList(i, j), (j < pushes.size()) ? pushes.get(j) : -1);
+                if (better != null) {
+                    pushes.subList(i, j).clear();
+                    pushes.addAll(i, better);
+                    positions = replay(start, pushes);
+                    improved  = true;
+                }
+            }
+        }
+
+        int[]       boxes = new int[pushes.size()];
+        Direction[] dirs  = new Direction[pushes.size()];
+        for (int i=0; i<boxes.length; i++) {
+            boxes[i] = pushes.get(i) >> 2;
+            dirs[i]  = DIRECTIONS[pushes.get(i) & 3];
+        }
+        List<Direction> result = Solver.steps(start, boxes, dirs);
+        movesAfter  = result.size();
+        pushesAfter = boxes.length;
+        return result;
+    }
+
+    /**
+     * Gets the number of moves before the last optimisation
+     *
+     * @return the number of moves given
+     */
+    public int getMovesBefore() {
+        return movesBefore;
+    }
+
+    /**
+     * Gets the number of pushes before the last optimisation
+     *
+     * @return the number of pushes given
+     */
+    public int getPushesBefore() {
+        return pushesBefore;
+    }
+
+    /**
+     * Gets the number of moves after the last optimisation
+     *
+     * @return the number of moves returned
+     */
+    public int getMovesAfter() {
+        return movesAfter;
+    }
+
+    /**
+     * Gets the number of pushes after the last optimisation
+     *
+     * @return the number of pushes returned
+     */
+    public int getPushesAfter() {
+        return pushesAfter;
+    }
+
+    /**
+     * Gets the number of nodes expanded by the last optimisation
+     *
+     * @return the number of nodes
+     */
+    public long getNodes() {
+        return searched;
+    }
+
+    /**
+     * A report of the last optimisation
+     *
+     * @return the moves and pushes before and after
+     */
+    @Override
+    public String toString() {
+        return "moves "+movesBefore+" -> "+movesAfter+", pushes "+pushesBefore+" -> "+pushesAfter;
+    }
+
+    /**
+     * The exact position (actor where the last push left it) before each push, and after the last
+     */
+    private static ArrayList<long[]> replay(Board start, List<Integer> pushes) {
+        ArrayList<long[]> positions = new ArrayList<>();
+        Board board = start.fork();
+        positions.add(board.snapshot());
+        for (int push : pushes) {
+            int b = push >> 2;
+            board.relocate(board.getActor(), b);  // actor first: it may stand where the box is going
+            board.relocate(b, board.neighbour(b, DIRECTIONS[push & 3]));
+            positions.add(board.snapshot());
+        }
+        return positions;
+    }
+
+    /**
+     * Search for a better way through a run of pushes: A* on (pushes, moves), from the
+     * position before the run to its boxes after it, the moves counting the walk to
+     * the push that follows the run
+     *
+     * @param from the exact position before the run
+     * @param to the position after it
+     * @param start any board of the level, to fork
+     * @param run the pushes of the run
+     * @param next the push after the run (or -1 if it is the last)
+     * @return the better run (or null if none was found)
+     */
+    private List<Integer> search(long[] from, long[] to, Board start, List<Integer> run, int next) {
+        Board board = start.fork();
+        board.restore(to);
+        int   numSquares = board.getNumSquares();
+        int[] goal       = new int[board.numBoxes()];
+        long[] goalBoxes = new long[board.getNumWords()];
+        board.copyBoxes(goalBoxes);
+        int k = 0;
+        for (int b = board.nextBox(0); b >= 0; b = board.nextBox(b+1))
+            goal[k++] = b;
+        int beyond = (next < 0) ? -1 : board.neighbour(next >> 2, DIRECTIONS[next & 3].reverse());
+
+        // the run as it is, costed the same way
+        board.restore(from);
+        int[] dist  = new int[numSquares];
+        int[] queue = new int[numSquares];
+        int   moves = 0;
+        for (int push : run) {
+            distances(board, dist, queue);
+            moves += dist[board.neighbour(push >> 2, DIRECTIONS[push & 3].reverse())] + 1;
+            board.relocate(board.getActor(), push >> 2);
+            board.relocate(push >> 2, board.neighbour(push >> 2, DIRECTIONS[push & 3]));
+        }
+        if (beyond >= 0) {
+            distances(board, dist, queue);
+            moves += dist[beyond];
+        }
+        int bestPushes = run.size();
+        int bestMoves  = moves;
+
+        board.restore(from);
+        ArrayList<long[]> states = new ArrayList<>();
+        ArrayList<int[]>  info   = new ArrayList<>();   // parent, push, pushes, moves, finished, estimate
+        TranspositionTable table = new TranspositionTable();
+        PriorityQueue<Integer> open = new PriorityQueue<>((a, b) -> {
+            int[] x = info.get(a);
+            int[] y = info.get(b);
+            int fx = x[2] + x[5];
+            int fy = y[2] + y[5];
+            return (fx != fy) ? Integer.compare(fx, fy) : Integer.compare(x[3], y[3]);
+        });
+        states.add(board.snapshot());
+        info.add(new int[] { -1, -1, 0, 0, 0, estimate(board, goal) });
+        table.put(board.exactHash(), 0);
+        open.add(0);
+        int[]  candidates = new int[board.numBoxes()*4];
+        long[] scratch    = new long[goalBoxes.length];
+        int    expanded   = 0;
+        while (!open.isEmpty() && (expanded < nodeLimit)) {
+            int   node = open.poll();
+            int[] n    = info.get(node);
+            int   f    = n[2] + n[5];
+            if ((f > bestPushes) || ((f == bestPushes) && (n[3] >= bestMoves)))
+                break;  // nothing left can beat the run as it is
+            if (n[4] == 1) {
+                // a finished run, the best there is
+                ArrayList<Integer> better = new ArrayList<>();
+                for (int m = n[0]; info.get(m)[0] >= 0; m = info.get(m)[0])
+                    better.add(0, info.get(m)[1]);
+                return better;
+            }
+            board.restore(states.get(node));
+            expanded++;
+            searched++;
+            distances(board, dist, queue);
+            if (sameBoxes(board, goalBoxes, scratch) && ((beyond < 0) || (dist[beyond] >= 0))) {
+                int finish = info.size();
+                states.add(null);
+                info.add(new int[] { node, -1, n[2], n[3] + ((beyond < 0) ? 0 : dist[beyond]), 1, 0 });
+                open.add(finish);
+            }
+            if (n[2] + 1 > bestPushes)
+                continue;
+            int numPushes = Solver.listPushes(board, candidates);
+            for (int i=0; i<numPushes; i++) {
+                int b      = candidates[i] >> 2;
+                int walk   = dist[board.neighbour(b, DIRECTIONS[candidates[i] & 3].reverse())];
+                board.relocate(board.getActor(), b);
+                board.relocate(b, board.neighbour(b, DIRECTIONS[candidates[i] & 3]));
+                long key   = board.exactHash();
+                int  other = table.get(key);
+                int  p     = n[2] + 1;
+                int  m     = n[3] + walk + 1;
+                if ((other < 0) || (info.get(other)[2] > p) || ((info.get(other)[2] == p) && (info.get(other)[3] > m))) {
+                    int h = estimate(board, goal);
+                    if (p + h <= bestPushes) {
+                        int child = info.size();
+                        states.add(board.snapshot());
+                        info.add(new int[] { node, candidates[i], p, m, 0, h });
+                        table.put(key, child);
+                        open.add(child);
+                    }
+                }
+                board.restore(states.get(node));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A lower bound on the pushes still needed: each box must move at least as far as
+     * the nearest goal square
+     */
+    private static int estimate(Board board, int[] goal) {
+        int sum  = 0;
+        int cols = board.getNumCols();
+        for (int b = board.nextBox(0); b >= 0; b = board.nextBox(b+1)) {
+            int best = Integer.MAX_VALUE;
+            for (int g : goal)
+                best = Math.min(best, Math.abs(b / cols - g / cols) + Math.abs(b % cols - g % cols));
+            sum += best;
+        }
+        return sum;
+    }
+
+    private static boolean sameBoxes(Board board, long[] boxes, long[] scratch) {
+        board.copyBoxes(scratch);
+        return Arrays.equals(scratch, boxes);
+    }
+
+    /**
+     * Walking distances from the actor to every square (-1 where it cannot walk)
+     */
+    private static void distances(Board board, int[] dist, int[] queue) {
+        Arrays.fill(dist, -1);
+        int head = 0;
+        int tail = 0;
+        dist[board.getActor()] = 0;
+        queue[tail++] = board.getActor();
+        while (head < tail) {
+            int sq = queue[head++];
+            for (Direction dir : DIRECTIONS) {
+                int next = board.neighbour(sq, dir);
+                if ((next >= 0) && (dist[next] < 0) && !board.isWall(next) && !board.hasBox(next)) {
+                    dist[next]    = dist[sq] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    /**
+     * Shorten a saved move list (one direction per line, as SokobanPanel saves them)
+     *
+     * @param args the screen file, the moves file, and optionally the file to write the shortened moves to
+     */
+    public static void main(String[] args) throws FileNotFoundException {
+        if (args.length < 2) {
+            System.out.println("usage: java SolutionOptimizer screen-file moves-file [output-file]");
+            return;
+        }
+        Sokoban puzzle = new Sokoban(new File(args[0]));
+        ArrayList<Direction> moves = new ArrayList<>();
+        Scanner fscnr = new Scanner(new File(args[1]));
+        while (fscnr.hasNextLine()) {
+            String line = fscnr.nextLine().trim();
+            if (line.length() > 0)
+                moves.add(Direction.fromString(line));
+        }
+        fscnr.close();
+        SolutionOptimizer optimizer = new SolutionOptimizer();
+        List<Direction> shorter = optimizer.optimize(puzzle, moves);
+        System.out.println(optimizer);
+        if (args.length > 2) {
+            PrintStream print = new PrintStream(new File(args[2]));
+            for (Direction dir : shorter)
+                print.println(dir);
+            print.close();
+        }
+    }
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private int  window       = 8;
+    private int  nodeLimit    = 20000;
+    private int  movesBefore  = 0;
+    private int  pushesBefore = 0;
+    private int  movesAfter   = 0;
+    private int  pushesAfter  = 0;
+    private long searched     = 0;
+}
@@ -0,0 +1,782 @@
+
+import java.nio.*;
+import java.util.*;
+
+/**
+ * A solver for Sokoban puzzles.
+ *
+ * By default solve() hands the level to a FeatureSolver, which finds solutions
+ * to levels with many boxes within seconds but not push-optimal ones, with
+ * macro pushes, a pattern store of the solver's own and corral pruning. With
+ * setOptimal(true) it runs the A* search described here instead.
+ *
+ * A* searches box pushes on a Board using the same rules as the game: each node
+ * is the position just after a push, and its children are every legal push of
+ * any box the actor can walk round to. The cost of a node is the number of
+ * pushes made and a Heuristic gives an admissible lower bound on the rest, so
+ * the solutions found are push-optimal (given no goal-room macros, see
+ * setMacroPushes); the walks between pushes are filled in as shortest paths
+ * once a solution is found.
+ *
+ * Every node's actor is normalised to the top-left square of its region, so
+ * positions that differ only in where the actor stands are one node. They are
+ * deduplicated through a TranspositionTable keyed by Zobrist hash, and every
+ * node lives in primitive arrays, so the search itself creates no objects per
+ * node. Each node costs one flood fill to expand and one per child to normalise.
+ * The pushes of a node are cut down to the fence of a PI-corral when it has one,
+ * which keeps the solutions push-optimal (see CorralPruner).
+ *
+ * It can be used headlessly through solve(), or as a Player that plans a
+ * solution for its puzzle and then plays it one move at a time.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class Solver implements Player, FastPlayer {
+    /**
+     * Constructor for headless use
+     */
+    public Solver() {
+        this(null);
+    }
+
+    /**
+     * Constructor for use as a Player of a given puzzle. A Player's searches are
+     * limited to PLAYER_TIME_LIMIT milliseconds unless setTimeLimit() says otherwise.
+     *
+     * @param puzzle the puzzle to play (may be null for headless use)
+     */
+    public Solver(Sokoban puzzle) {
+        this.puzzle    = puzzle;
+        this.timeLimit = (puzzle != null) ? PLAYER_TIME_LIMIT : 0;
+    }
+
+    /**
+     * Search for a push-optimal solution with A*, rather than handing the level to
+     * a FeatureSolver (the default). The heuristic and table budget are only used
+     * by A*, and the solutions are only push-optimal with an admissible heuristic
+     * and without goal-room macros.
+     *
+     * @param optimal use A*?
+     */
+    public void setOptimal(boolean optimal) {
+        this.optimal = optimal;
+    }
+
+    /**
+     * Use a particular heuristic for A* (by default a MatchingHeuristic is built for each board solved)
+     *
+     * @param heuristic the heuristic (null for the default)
+     */
+    public void setHeuristic(Heuristic heuristic) {
+        this.heuristic = heuristic;
+    }
+
+    /**
+     * Limit the number of nodes expanded by each search
+     *
+     * @param nodeLimit the maximum number of nodes (0 for no limit)
+     */
+    public void setNodeLimit(long nodeLimit) {
+        if (nodeLimit < 0)
+            throw new IllegalArgumentException("nodeLimit cannot be negative");
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * Limit the time taken by each search
+     *
+     * @param timeLimit the maximum time in milliseconds (0 for no limit; a Player's default is PLAYER_TIME_LIMIT)
+     */
+    public void setTimeLimit(long timeLimit) {
+        if (timeLimit < 0)
+            throw new IllegalArgumentException("timeLimit cannot be negative");
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * Keep the search nodes in an OffHeapTranspositionTable of a fixed size rather
+     * than on the Java heap. The open list is off the heap as well, with room for
+     * one 8-byte entry per slot of the table, and both come out of the budget, so
+     * a search can use far more than the heap and never more than the budget.
+     * When the table is full, open nodes are replaced, after which a solution is
+     * no longer guaranteed to be push-optimal and running out of nodes means
+     * LIMIT rather than UNSOLVABLE. Only A* uses the table (see setOptimal).
+     *
+     * @param tableBudget the number of bytes for the table and its open list (0 to keep the nodes on the heap)
+     */
+    public void setTableBudget(long tableBudget) {
+        if (tableBudget < 0)
+            throw new IllegalArgumentException("tableBudget cannot be negative");
+        this.tableBudget = tableBudget;
+    }
+
+    /**
+     * Make macro pushes: carry on pushing a box through a tunnel, and take a box
+     * entering a goal room straight to its next target (see LevelAnalysis; on by
+     * default). Tunnel macros keep solutions push-optimal; goal-room macros may not.
+     *
+     * @param macroPushes use macro pushes?
+     */
+    public void setMacroPushes(boolean macroPushes) {
+        this.macroPushes = macroPushes;
+    }
+
+    /**
+     * Prune pushes that complete a known deadlock pattern, learning new patterns as
+     * the search goes (the store may be shared with other searches and threads; by
+     * default the solver has a store of its own, kept from one solve to the next)
+     *
+     * @param patterns the pattern store (null for none)
+     */
+    public void setDeadlockPatterns(DeadlockPatterns patterns) {
+        this.patterns = patterns;
+    }
+
+    /**
+     * Ask a running search (on any thread) to stop as soon as possible. A search
+     * that has not started yet stops as soon as it starts, so a cancel cannot be
+     * lost by arriving just before solve() is called.
+     */
+    public void cancel() {
+        cancelled = true;
+        FeatureSolver solver = features;
+        if (solver != null)
+            solver.cancel();
+    }
+
+    /**
+     * Solve a Sokoban puzzle from its current position (the puzzle is not changed)
+     *
+     * @param puzzle the puzzle (cannot be null)
+     * @return the solution
+     */
+    public Solution solve(Sokoban puzzle) {
+        if (puzzle == null)
+            throw new IllegalArgumentException("puzzle cannot be null");
+        return solve(puzzle.fork());
+    }
+
+    /**
+     * Solve a board from its current position (the board is not changed)
+     *
+     * @param start the board (cannot be null)
+     * @return the solution
+     */
+    public Solution solve(Board start) {
+        if (start == null)
+            throw new IllegalArgumentException("start cannot be null");
+        try {
+            return optimal ? search(start) : features(start);
+        } finally {
+            cancelled = false;
+        }
+    }
+
+    /**
+     * The feature search of solve(), by a FeatureSolver with this solver's limits,
+     * macro pushes and patterns
+     *
+     * @param start the board (not changed)
+     * @return the solution
+     */
+    private Solution features(Board start) {
+        FeatureSolver solver = new FeatureSolver();
+        solver.setTimeLimit(timeLimit);
+        solver.setNodeLimit(nodeLimit);
+        solver.setMacroPushes(macroPushes);
+        solver.setDeadlockPatterns(patterns);
+        features = solver;
+        try {
+            if (cancelled)
+                solver.cancel();   // cancelled before it was there to be told
+            return solver.solve(start);
+        } finally {
+            features = null;
+        }
+    }
+
+    /**
+     * The A* search of solve()
+     *
+     * @param start the board (not changed)
+     * @return the solution
+     */
+    private Solution search(Board start) {
+        long started = System.currentTimeMillis();
+        long deadline = (timeLimit > 0) ? started + timeLimit : Long.MAX_VALUE;
+        Heuristic h = (heuristic != null) ? heuristic : new MatchingHeuristic(start);
+        Board board = start.fork();
+        board.normalize();
+        candidates = new int[board.numBoxes()*4];
+        matcher    = (patterns != null) ? patterns.matcher(start) : null;
+        corrals    = new CorralPruner(start);
+        analysis   = macroPushes ? new LevelAnalysis(start) : null;
+        macro      = macroPushes ? new int[analysis.getMaxMacroLength()] : null;
+        if (tableBudget > 0)
+            return solveOffHeap(start, board, h, started, deadline);
+        init(board.getSnapshotLength());
+
+        int rootH = h.estimate(board);
+        if (rootH == Heuristic.DEADLOCK)
+            return new Solution(Solution.Status.UNSOLVABLE, null, 0, 0, System.currentTimeMillis() - started);
+        int root = addNode(board, -1, -1, -1, 0, rootH);
+        table.put(board.exactHash(), root);
+        heapPush(root);
+
+        long expanded = 0;
+        Solution.Status status = Solution.Status.UNSOLVABLE;
+        int goal = -1;
+        while (heapSize > 0) {
+            int node = heapPop();
+            board.restore(states, node*stride);
+            if (table.get(board.exactHash()) != node)
+                continue; // superseded by a cheaper path to the same position
+            if (board.onTarget()) {
+                status = Solution.Status.SOLVED;
+                goal   = node;
+                break;
+            }
+            if ((expanded & 1023) == 0) {
+                if (cancelled) {
+                    status = Solution.Status.CANCELLED;
+                    break;
+                }
+                if (((nodeLimit > 0) && (expanded >= nodeLimit)) || (System.currentTimeMillis() > deadline)) {
+                    status = Solution.Status.LIMIT;
+                    break;
+                }
+            }
+            expanded++;
+            int g = cost[node];
+            int numPushes = corrals.prune(board, candidates, listPushes(board, candidates));
+            for (int i=0; i<numPushes; i++) {
+                makePush(board, candidates[i]);
+                int  extra = extend(board, candidates[i]);
+                int  last  = (extra > 0) ? macro[extra-1] : candidates[i];
+                long key   = board.exactHash();
+                int  other = table.get(key);
+                if (((other < 0) || (cost[other] > g+1+extra)) && !isPatternDeadlock(board, last)) {
+                    int childH = h.estimate(board);
+                    if (childH != Heuristic.DEADLOCK) {
+                        int child = addNode(board, node, candidates[i] >> 2, candidates[i] & 3, g+1+extra, childH);
+                        table.put(key, child);
+                        heapPush(child);
+                    }
+                }
+                board.restore(states, node*stride);
+            }
+        }
+        long millis = System.currentTimeMillis() - started;
+        if (goal < 0)
+            return new Solution(status, null, 0, expanded, millis);
+        return new Solution(status, steps(start, goal), cost[goal], expanded, millis);
+    }
+
+    /**
+     * The A* search of solve(), with the nodes kept in an off-heap table. The open
+     * list is a binary heap of packed longs (f, then g descending, then the slot)
+     * in a direct buffer, so it sorts the same way as before(); an entry whose
+     * slot has since been closed, reopened or given to another node is stale and
+     * skipped. The heap has one entry per slot of the table: when it fills up the
+     * stale entries are swept out, and if that is not enough the deepest entries
+     * are dropped too, which like an eviction means nothing is proved.
+     *
+     * @param start the starting position (not changed)
+     * @param board a normalised fork of the start, used as the working board
+     * @param h the heuristic
+     * @param started when the search started
+     * @param deadline when it must stop
+     * @return the solution
+     */
+    private Solution solveOffHeap(Board start, Board board, Heuristic h, long started, long deadline) {
+        int  length    = board.getSnapshotLength();
+        long openBytes = 8*Math.min(tableBudget / (OffHeapTranspositionTable.entrySize(length) + 8), MAX_OPEN);
+        OffHeapTranspositionTable nodes = new OffHeapTranspositionTable(tableBudget - openBytes, length);
+        if (nodes.capacity() > MAX_SLOTS)
+            throw new IllegalArgumentException("tableBudget is too large for the open list's slot numbers");
+        long[] parentState = new long[length];
+        open      = ByteBuffer.allocateDirect((int) openBytes).order(ByteOrder.nativeOrder()).asLongBuffer();
+        openSize  = 0;
+        openNodes = nodes;
+        dropped   = false;
+
+        int rootH = h.estimate(board);
+        if (rootH == Heuristic.DEADLOCK)
+            return new Solution(Solution.Status.UNSOLVABLE, null, 0, 0, System.currentTimeMillis() - started);
+        openPush(packOpen(rootH, 0, nodes.put(board.exactHash(), 0L, 0, rootH, -1, board)));
+
+        long expanded = 0;
+        Solution.Status status = Solution.Status.UNSOLVABLE;
+        long goal = -1;
+        while (openSize > 0) {
+            long entry = openPop();
+            if (isStale(entry))
+                continue; // superseded, or the slot was given to another node
+            long slot  = entry & MAX_SLOTS;
+            int  g     = 0xFFFF - (int) ((entry >>> 32) & 0xFFFF);
+            nodes.restore(slot, board);
+            if (board.onTarget()) {
+                status = Solution.Status.SOLVED;
+                goal   = slot;
+                break;
+            }
+            if ((expanded & 1023) == 0) {
+                if (cancelled) {
+                    status = Solution.Status.CANCELLED;
+                    break;
+                }
+                if (((nodeLimit > 0) && (expanded >= nodeLimit)) || (System.currentTimeMillis() > deadline)) {
+                    status = Solution.Status.LIMIT;
+                    break;
+                }
+            }
+            expanded++;
+            nodes.close(slot);
+            long hash = nodes.getHash(slot);
+            board.snapshot(parentState, 0);
+            int numPushes = corrals.prune(board, candidates, listPushes(board, candidates));
+            for (int i=0; i<numPushes; i++) {
+                makePush(board, candidates[i]);
+                int  extra = extend(board, candidates[i]);
+                int  last  = (extra > 0) ? macro[extra-1] : candidates[i];
+                long key   = board.exactHash();
+                long other = nodes.find(key);
+                if (((other < 0) || (nodes.getG(other) > g+1+extra)) && !isPatternDeadlock(board, last)) {
+                    int childH = h.estimate(board);
+                    if (childH != Heuristic.DEADLOCK) {
+                        long child = nodes.put(key, hash, g+1+extra, childH, candidates[i], board);
+                        if (child >= 0)
+                            openPush(packOpen(g+1+extra+childH, g+1+extra, child));
+                        else
+                            status = Solution.Status.LIMIT;  // nowhere to put it
+                    }
+                }
+                board.restore(parentState, 0);
+            }
+        }
+        if ((goal < 0) && (status == Solution.Status.UNSOLVABLE) && ((nodes.getEvictions() > 0) || dropped))
+            status = Solution.Status.LIMIT;  // nodes were dropped, so nothing is proved
+        open      = null;
+        openNodes = null;
+        long millis = System.currentTimeMillis() - started;
+        Sokoban.trace("off-heap table: "+nodes.size()+" entries, "+nodes.getEvictions()+" evictions"+(dropped ? ", open nodes dropped" : ""));
+        if (goal < 0)
+            return new Solution(status, null, 0, expanded, millis);
+        // a node's g may have been lowered since its children were made, so the
+        // chain back to the root can be shorter than the goal's g says
+        ArrayList<Integer> path = new ArrayList<>();   // the pushes, last first
+        for (long n = goal; nodes.getPush(n) >= 0; ) {
+            int  push = nodes.getPush(n);
+            long up   = nodes.find(nodes.getParent(n));
+            if (up < 0)
+                throw new IllegalStateException("the path to the goal has been replaced in the off-heap table");
+            int extra = 0;
+            if (analysis != null) {
+                nodes.restore(up, board);
+                makePush(board, push);
+                extra = extend(board, push);
+            }
+            for (int j=extra-1; j>=0; j--)
+                path.add(macro[j]);
+            path.add(push);
+            n = up;
+        }
+        int[]       boxes = new int[path.size()];
+        Direction[] dirs  = new Direction[path.size()];
+        for (int i=0; i<boxes.length; i++) {
+            int push = path.get(boxes.length-1-i);
+            boxes[i] = push >> 2;
+            dirs[i]  = DIRECTIONS[push & 3];
+        }
+        return new Solution(status, steps(start, boxes, dirs), boxes.length, expanded, millis);
+    }
+
+    /**
+     * Pack an open list entry: lowest f first, then highest g, then the slot
+     */
+    private static long packOpen(int f, int g, long slot) {
+        if ((f > MAX_OPEN_F) || (g > 0xFFFF))
+            throw new IllegalStateException("search too deep for the open list");
+        return ((long) f << 48) | ((long) (0xFFFF - g) << 32) | slot;
+    }
+
+    /**
+     * Is an open list entry out of date: its node closed, reached again more
+     * cheaply, or its slot given to another node?
+     */
+    private boolean isStale(long entry) {
+        long slot = entry & MAX_SLOTS;
+        int  g    = 0xFFFF - (int) ((entry >>> 32) & 0xFFFF);
+        return (openNodes.getHash(slot) == 0L) || openNodes.isClosed(slot) || (openNodes.getG(slot) != g)
+               || ((int) (entry >>> 48) != g + openNodes.getH(slot));
+    }
+
+    private void openPush(long entry) {
+        if ((openSize == open.capacity()) && !openSweep())
+            return;
+        int i = openSize++;
+        while (i > 0) {
+            int  up     = (i - 1) >>> 1;
+            long parent = open.get(up);
+            if (parent <= entry)
+                break;
+            open.put(i, parent);
+            i = up;
+        }
+        open.put(i, entry);
+    }
+
+    private long openPop() {
+        long top = open.get(0);
+        openSize--;
+        if (openSize > 0)
+            siftDown(0, open.get(openSize));
+        return top;
+    }
+
+    /**
+     * Make room in a full open list: sweep out the stale entries and rebuild the
+     * heap, then, if it is still more than OPEN_FULL full, drop the entries at
+     * the end, which are leaves and so no better than their parents
+     *
+     * @return is there room for another entry?
+     */
+    private boolean openSweep() {
+        int kept = 0;
+        for (int i=0; i<openSize; i++) {
+            long entry = open.get(i);
+            if (!isStale(entry))
+                open.put(kept++, entry);
+        }
+        openSize = kept;
+        for (int i=openSize/2 - 1; i>=0; i--)
+            siftDown(i, open.get(i));
+        int full = (int) (open.capacity() * OPEN_FULL);
+        if (openSize > full) {
+            openSize = full;
+            dropped  = true;
+        }
+        return openSize < open.capacity();
+    }
+
+    /**
+     * Put an entry at a place in the open list and move it down to where it belongs
+     */
+    private void siftDown(int i, long entry) {
+        while (true) {
+            int child = 2*i + 1;
+            if (child >= openSize)
+                break;
+            long smaller = open.get(child);
+            if (child+1 < openSize) {
+                long right = open.get(child+1);
+                if (right < smaller) {
+                    smaller = right;
+                    child++;
+                }
+            }
+            if (smaller >= entry)
+                break;
+            open.put(i, smaller);
+            i = child;
+        }
+        open.put(i, entry);
+    }
+
+    /**
+     * List the legal pushes from a position. They are listed before any is made
+     * because each restore of the position would otherwise mean another flood fill.
+     *
+     * @param board the position
+     * @param candidates filled with box square * 4 + direction ordinal for each push (4 per box is enough)
+     * @return the number of pushes listed
+     */
+    static int listPushes(Board board, int[] candidates) {
+        int numPushes = 0;
+        for (int b = board.nextBox(0); b >= 0; b = board.nextBox(b+1))
+            for (Direction dir : DIRECTIONS)
+                if (board.canPushFrom(b, dir))
+                    candidates[numPushes++] = b*4 + dir.ordinal();
+        return numPushes;
+    }
+
+    /**
+     * Make the macro pushes forced after a push just made, leaving them in macro
+     *
+     * @param board the position after the push
+     * @param push box square * 4 + direction ordinal
+     * @return the number of further pushes made (0 without macro pushes)
+     */
+    private int extend(Board board, int push) {
+        return (analysis != null) ? analysis.extend(board, push, macro) : 0;
+    }
+
+    /**
+     * Does a push just made complete a deadlock pattern?
+     *
+     * @param board the position after the push
+     * @param push box square * 4 + direction ordinal
+     * @return is the position deadlocked by a pattern? (false with no pattern store)
+     */
+    private boolean isPatternDeadlock(Board board, int push) {
+        return (matcher != null) && matcher.isDeadlocked(board, board.neighbour(push >> 2, DIRECTIONS[push & 3]));
+    }
+
+    /**
+     * Make a push listed by listPushes() and normalise the actor. The push has
+     * already been checked, so it is made directly rather than refilling the region.
+     *
+     * @param board the position
+     * @param push box square * 4 + direction ordinal
+     */
+    static void makePush(Board board, int push) {
+        int b = push >> 2;
+        board.relocate(board.getActor(), b);  // actor first: it may stand where the box is going
+        board.relocate(b, board.neighbour(b, DIRECTIONS[push & 3]));
+        board.normalize();
+    }
+
+    /**
+     * Expand the pushes leading to a node into the actor steps that make them
+     *
+     * @param start the starting position (not changed)
+     * @param goal the last node
+     * @return the steps from the start to the node's position
+     */
+    private List<Direction> steps(Board start, int goal) {
+        int[]       boxes = new int[cost[goal]];
+        Direction[] dirs  = new Direction[cost[goal]];
+        Board       board = start.fork();
+        for (int n = goal, i = boxes.length; parent[n] >= 0; n = parent[n]) {
+            int extra = 0;
+            if (analysis != null) {
+                // macro pushes are not stored, but made again from the parent
+                board.restore(states, parent[n]*stride);
+                makePush(board, pushed[n]*4 + move[n]);
+                extra = extend(board, pushed[n]*4 + move[n]);
+            }
+            for (int j=extra-1; j>=0; j--) {
+                boxes[--i] = macro[j] >> 2;
+                dirs[i]    = DIRECTIONS[macro[j] & 3];
+            }
+            boxes[--i] = pushed[n];
+            dirs[i]    = DIRECTIONS[move[n]];
+        }
+        return steps(start, boxes, dirs);
+    }
+
+    /**
+     * Expand a sequence of pushes into the actor steps that make them, walking
+     * the actor by a shortest path to the square behind each box in turn
+     *
+     * @param start the starting position (not changed)
+     * @param boxes the square of the box moved by each push
+     * @param dirs the direction of each push
+     * @return the steps
+     */
+    public static List<Direction> steps(Board start, int[] boxes, Direction[] dirs) {
+        Board board = start.fork();
+        ArrayList<Direction> steps = new ArrayList<>();
+        for (int i=0; i<boxes.length; i++) {
+            steps.addAll(board.pathTo(board.neighbour(boxes[i], dirs[i].reverse())));
+            steps.add(dirs[i]);
+            board.push(boxes[i], dirs[i]);
+        }
+        return steps;
+    }
+
+    /**
+     * Choose the next move of a solution for the puzzle, planning one first if the
+     * puzzle has left the current plan. If no solution can be found the first
+     * choice is taken, and the position is remembered so that walking about it
+     * does not search it again.
+     *
+     * @param choices possible directions for the player to choose from
+     * @return the chosen direction
+     */
+    @Override
+    public Direction move(Vector<Direction> choices) {
+        if (choices == null)
+            throw new IllegalArgumentException("cannot have null choices");
+        return move(PlayerAdapter.toMask(choices));
+    }
+
+    /**
+     * Choose the next move of a solution from a mask of choices (see move(Vector))
+     *
+     * @param choices possible directions, one bit per Direction ordinal
+     * @return the chosen direction
+     */
+    @Override
+    public Direction move(int choices) {
+        if ((choices & 15) == 0)
+            throw new IllegalArgumentException("cannot have empty choices");
+        if (puzzle == null)
+            throw new IllegalStateException("no puzzle to play (use Solver(Sokoban))");
+        Board now = puzzle.fork();
+        if (((plan == null) || (planStep >= plan.size()) || (planHashes[planStep] != now.exactHash()))
+            && !failed.contains(now.hash())) {
+            Solution solution = solve(now);
+            Sokoban.trace("Solver: "+solution);
+            if (solution.getStatus() != Solution.Status.SOLVED) {
+                if (failed.size() >= MAX_FAILED)
+                    failed.clear();
+                failed.add(now.hash());
+            }
+            plan       = solution.getMoves();
+            planStep   = 0;
+            planHashes = new long[plan.size()];
+            for (int i=0; i<plan.size(); i++) {
+                planHashes[i] = now.exactHash();
+                now.move(plan.get(i));
+            }
+        }
+        if ((plan != null) && (planStep < plan.size()) && ((choices & (1 << plan.get(planStep).ordinal())) != 0))
+            return plan.get(planStep++);
+        plan = null;
+        return DIRECTIONS[Integer.numberOfTrailingZeros(choices & 15)];
+    }
+
+    /**
+     * Set up the node arrays for a new search
+     */
+    private void init(int snapshotLength) {
+        stride   = snapshotLength;
+        numNodes = 0;
+        heapSize = 0;
+        table    = new TranspositionTable();
+        if ((states == null) || (states.length < INITIAL_NODES*stride))
+            states = new long[INITIAL_NODES*stride];
+        if (parent == null) {
+            parent   = new int[INITIAL_NODES];
+            pushed   = new int[INITIAL_NODES];
+            move     = new byte[INITIAL_NODES];
+            cost     = new int[INITIAL_NODES];
+            estimate = new int[INITIAL_NODES];
+            heap     = new int[INITIAL_NODES];
+        }
+    }
+
+    /**
+     * Store a new node for the board's current position
+     *
+     * @return the node index
+     */
+    private int addNode(Board board, int parentNode, int box, int dir, int g, int h) {
+        if (numNodes == parent.length) {
+            int n = parent.length*2;
+            parent   = Arrays.copyOf(parent, n);
+            pushed   = Arrays.copyOf(pushed, n);
+            move     = Arrays.copyOf(move, n);
+            cost     = Arrays.copyOf(cost, n);
+            estimate = Arrays.copyOf(estimate, n);
+        }
+        if ((numNodes+1)*stride > states.length)
+            states = Arrays.copyOf(states, states.length*2);
+        int node = numNodes++;
+        board.snapshot(states, node*stride);
+        parent[node]   = parentNode;
+        pushed[node]   = box;
+        move[node]     = (byte) dir;
+        cost[node]     = g;
+        estimate[node] = h;
+        return node;
+    }
+
+    /**
+     * Does node a come out of the open list before node b?
+     * (lowest f = g + h first, ties broken towards the deeper node)
+     */
+    private boolean before(int a, int b) {
+        long fa = (long) cost[a] + estimate[a];
+        long fb = (long) cost[b] + estimate[b];
+        return (fa < fb) || ((fa == fb) && (cost[a] > cost[b]));
+    }
+
+    private void heapPush(int node) {
+        if (heapSize == heap.length)
+            heap = Arrays.copyOf(heap, heap.length*2);
+        int i = heapSize++;
+        while (i > 0) {
+            int up = (i - 1) >>> 1;
+            if (!before(node, heap[up]))
+                break;
+            heap[i] = heap[up];
+            i = up;
+        }
+        heap[i] = node;
+    }
+
+    private int heapPop() {
+        int top  = heap[0];
+        int last = heap[--heapSize];
+        int i    = 0;
+        while (true) {
+            int child = 2*i + 1;
+            if (child >= heapSize)
+                break;
+            if ((child+1 < heapSize) && before(heap[child+1], heap[child]))
+                child++;
+            if (!before(heap[child], last))
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top;
+    }
+
+    /** The time limit in milliseconds of each search made as a Player */
+    public static final long PLAYER_TIME_LIMIT = 10000;
+    /** The largest f = g + h the open list can hold when the nodes are off the heap */
+    static final int MAX_OPEN_F = 0x7FFF;
+
+    private static final Direction[] DIRECTIONS    = Direction.values();
+    private static final int         INITIAL_NODES = 1 << 12;
+    private static final long        MAX_SLOTS     = 0xFFFFFFFFL;
+    private static final long        MAX_OPEN      = Integer.MAX_VALUE / 8;   // entries in one direct buffer
+    private static final double      OPEN_FULL     = 0.875;   // how full a swept open list may stay
+    private static final int         MAX_FAILED    = 1 << 12;
+
+    private Sokoban            puzzle     = null;
+    private Heuristic          heuristic  = null;
+    private long               nodeLimit  = 0;
+    private long               timeLimit  = 0;
+    private long               tableBudget = 0;
+    private boolean            optimal    = false;
+    private DeadlockPatterns   patterns   = new DeadlockPatterns();
+    private DeadlockPatterns.Matcher matcher = null;
+    private boolean            macroPushes = true;
+    private LevelAnalysis      analysis   = null;
+    private int[]              macro      = null;     // the macro pushes made after a push
+    private CorralPruner       corrals    = null;
+    private volatile boolean   cancelled  = false;
+    private volatile FeatureSolver features = null;   // the feature search running, if any
+
+    // the plan being played as a Player
+    private List<Direction>    plan       = null;
+    private long[]             planHashes = null;
+    private int                planStep   = 0;
+    private HashSet<Long>      failed     = new HashSet<>();   // the hash() of positions no plan was found for
+
+    // the search nodes, one entry per node in each array
+    private TranspositionTable table      = null;
+    private int                stride     = 0;
+    private long[]             states     = null;
+    private int[]              parent     = null;
+    private int[]              pushed     = null;     // the square of the box pushed to reach the node
+    private byte[]             move       = null;     // the direction it was pushed
+    private int[]              cost       = null;
+    private int[]              estimate   = null;
+    private int                numNodes   = 0;
+    private int[]              heap       = null;
+    private int                heapSize   = 0;
+    private int[]              candidates = null;     // the pushes from the node being expanded
+
+    // the open list when the nodes are off the heap
+    private LongBuffer         open       = null;
+    private int                openSize   = 0;
+    private OffHeapTranspositionTable openNodes = null;   // the table its entries point into
+    private boolean            dropped    = false;    // open entries dropped for lack of room
+}
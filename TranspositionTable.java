@@ -0,0 +1,133 @@
+
+import java.util.*;
+
+/**
+ * A transposition table for searching Sokoban positions: an open-addressing
+ * hash map from 64-bit position hashes to int values, held in primitive arrays
+ * so that millions of entries cost no objects.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class TranspositionTable {
+    /**
+     * Default constructor
+     */
+    public TranspositionTable() {
+        this(1 << 16);
+    }
+
+    /**
+     * Constructor with an initial capacity
+     *
+     * @param capacity the expected number of entries
+     */
+    public TranspositionTable(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+        int slots = Integer.highestOneBit(Math.max(capacity*2, 16) - 1) << 1;
+        keys   = new long[slots];
+        values = new int[slots];
+    }
+
+    /**
+     * Look up a position
+     *
+     * @param key the position hash
+     * @return the value stored for the position (or -1 if there is none)
+     */
+    public int get(long key) {
+        key = nonZero(key);
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key)
+                return values[i];
+            if (k == 0L)
+                return -1;
+        }
+    }
+
+    /**
+     * Store a value for a position, replacing any previous value
+     *
+     * @param key the position hash
+     * @param value the value (must not be negative)
+     */
+    public void put(long key, int value) {
+        if (value < 0)
+            throw new IllegalArgumentException("value cannot be negative");
+        key = nonZero(key);
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                values[i] = value;
+                return;
+            }
+            if (k == 0L) {
+                keys[i]   = key;
+                values[i] = value;
+                if (++size*2 > keys.length)
+                    grow();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of positions stored
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove all entries
+     */
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        size = 0;
+    }
+
+    /**
+     * Double the number of slots and rehash
+     */
+    private void grow() {
+        long[] oldKeys   = keys;
+        int[]  oldValues = values;
+        keys   = new long[oldKeys.length*2];
+        values = new int[oldKeys.length*2];
+        int mask = keys.length - 1;
+        for (int j=0; j<oldKeys.length; j++) {
+            long k = oldKeys[j];
+            if (k == 0L)
+                continue;
+            int i = slot(k, mask);
+            while (keys[i] != 0L)
+                i = (i + 1) & mask;
+            keys[i]   = k;
+            values[i] = oldValues[j];
+        }
+    }
+
+    /**
+     * The home slot for a key (Zobrist keys are already well mixed, so folding the halves will do)
+     */
+    static int slot(long key, int mask) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    /**
+     * Zero marks an empty slot, so map a zero key to another fixed value
+     */
+    static long nonZero(long key) {
+        return (key == 0L) ? 0x9E3779B97F4A7C15L : key;
+    }
+
+    private long[] keys   = null;
+    private int[]  values = null;
+    private int    size   = 0;
+}
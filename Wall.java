@@ -8,12 +8,28 @@
  */
 public class Wall extends Occupant {
 	/**
-	 * Constructor with cell currently occupied
+	 * Private constructor: walls carry no state, so one shared instance serves every wall cell
+	 */
+	private Wall() {
+		super();
+	}
+
+	/**
+	 * Gets the shared wall
 	 * 
-	 * @param cell the cell occupied by this wall (Occupant constructor checks for null)
+	 * @return the one Wall instance
 	 */
-	public Wall(Cell cell) {
-		super(cell);
+	public static Wall getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Walls never move, so the shared instance does not track a cell
+	 * 
+	 * @param cell the cell occupied by this wall (ignored)
+	 */
+	@Override
+	void setCell(Cell cell) {
 	}
 
 	/**
@@ -35,4 +51,6 @@ public class Wall extends Occupant {
 	public char getDisplay() {
 		return Sokoban.WALL;
 	}
+
+	private static final Wall INSTANCE = new Wall();
 }
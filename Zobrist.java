@@ -0,0 +1,66 @@
+
+/**
+ * Zobrist keys for hashing Sokoban positions.
+ *
+ * Every (square, piece) pair gets a fixed pseudo-random 64-bit key, and a
+ * position's hash is the XOR of the keys of its pieces. The keys are derived
+ * from the square index alone, so they are the same on every run and for every
+ * board size, which makes hashes safe to store in files and caches.
+ *
+ * @author Turgut Guvercin
+ * @version October 2026
+ */
+public class Zobrist {
+    /**
+     * No instances, only static keys
+     */
+    private Zobrist() {
+    }
+
+    /**
+     * The key for a box on a square
+     *
+     * @param sq the square index
+     * @return the key
+     */
+    public static long boxKey(int sq) {
+        return mix(2L*sq + 1);
+    }
+
+    /**
+     * The key for the (normalised) actor on a square
+     *
+     * @param sq the square index
+     * @return the key
+     */
+    public static long actorKey(int sq) {
+        return mix(2L*sq + 2);
+    }
+
+    /**
+     * Build a table of keys for the first n squares
+     *
+     * @param n the number of squares
+     * @param box true for box keys, false for actor keys
+     * @return the table of keys
+     */
+    public static long[] table(int n, boolean box) {
+        long[] keys = new long[n];
+        for (int sq=0; sq<n; sq++)
+            keys[sq] = box ? boxKey(sq) : actorKey(sq);
+        return keys;
+    }
+
+    /**
+     * The SplitMix64 finaliser, spreading a counter into a well mixed 64-bit value
+     *
+     * @param x the counter
+     * @return the mixed value
+     */
+    private static long mix(long x) {
+        long z = x * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}